@@ -48,6 +48,10 @@ public class Constants
     public static final String FORWARDED_PROTOCOL_HTTP_HEADER = "X-Forwarded-Protocol";
 
     public static final String CONTENT_TYPE_HTTP_HEADER = "Content-Type";
+    public static final String RANGE_HTTP_HEADER = "Range";
+    public static final String IF_RANGE_HTTP_HEADER = "If-Range";
+    public static final String ACCEPT_RANGES_HTTP_HEADER = "Accept-Ranges";
+    public static final String CONTENT_RANGE_HTTP_HEADER = "Content-Range";
     public static final String APPLICATION_NAME_HTTP_HEADER = "X-RSB-Application-Name";
     public static final String RSB_META_HEADER_HTTP_PREFIX = "X-RSB-Meta-";
     public static final String JOB_FILES_MULTIPART_NAME = "X-RSB-JobFile[]";
@@ -63,8 +67,12 @@ public class Constants
     public static final String SOURCE_MESSAGE_HEADER = "source";
     public static final String APPLICATION_NAME_MESSAGE_HEADER = "applicationName";
     public static final String JOB_ID_MESSAGE_HEADER = "jobId";
+    public static final String WORK_ITEM_TYPE_MESSAGE_HEADER = "workItemType";
+    public static final String CLAIM_CHECK_ID_MESSAGE_HEADER = "claimCheckId";
 
     public static final String MULTIPLE_FILES_JOB_CONFIGURATION = "configuration.txt";
+    public static final String JOB_FILES_ARCHIVE = "rsb-job-files.zip";
+    public static final String RESULT_FILES_ARCHIVE = "rsb-result-files.zip";
     public static final String R_SCRIPT_FILE_EXTENSION = "R";
     public static final String R_SCRIPT_CONFIGURATION_KEY = "rScript";
     public static final String SWEAVE_FILE_CONFIGURATION_KEY = "sweaveFile";
@@ -32,11 +32,14 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 import javax.activation.MimeType;
 import javax.activation.MimeTypeParseException;
@@ -56,6 +59,7 @@ import org.eclipse.statet.jcommons.status.StatusException;
 import org.eclipse.statet.rj.data.RObject;
 import org.eclipse.statet.rj.servi.RServi;
 import org.eclipse.statet.rj.services.FunctionCall;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.STGroup;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -146,6 +150,18 @@ public abstract class Util
         return result != null ? result : DEFAULT_FILE_EXTENSION;
     }
 
+    /**
+     * Returns all the resource types {@link #getResourceType(MimeType)} can return.
+     * 
+     * @return
+     */
+    public static Set<String> getResourceTypes()
+    {
+        final Set<String> resourceTypes = new HashSet<String>(DEFAULT_FILE_EXTENSIONS.values());
+        resourceTypes.add(DEFAULT_FILE_EXTENSION);
+        return resourceTypes;
+    }
+
     /**
      * Returns the must probable content type for a file.
      * 
@@ -518,4 +534,18 @@ public abstract class Util
         }
         return source.replaceAll("\\W", replacement);
     }
+
+    /**
+     * Creates a factory of daemon threads, for background tasks that must never prevent the JVM
+     * from stopping, like calls to remote RServi pools that can hang.
+     * 
+     * @param threadNamePrefix
+     * @return
+     */
+    public static ThreadFactory newDaemonThreadFactory(final String threadNamePrefix)
+    {
+        final CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.component;
+
+import javax.annotation.Resource;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.DestinationStatistics;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import eu.openanalytics.rsb.rservi.RmiRServiInstanceProvider;
+
+/**
+ * Periodically sizes the job workers shared by the applications and the RServi client pool, within
+ * the configured bounds, so the jobs pending in the queues can be processed within one control
+ * period at the recently observed job latency. All the job listeners are sized by the
+ * {@link FairJobScheduler} within its capacity, so each key of the RServi client pool is allowed as
+ * many instances as there are job workers, which can all use the same RServi pool URI.
+ *
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component("adaptiveJobCapacityController")
+public class AdaptiveJobCapacityController extends AbstractComponent
+{
+    private static final long CONTROL_PERIOD = 30000L;
+
+    private static final String JOB_QUEUES = "r.jobs.>";
+
+    @Resource(name = "amqBroker")
+    private BrokerService amqBroker;
+
+    @Resource
+    private RmiRServiInstanceProvider rServiInstanceProvider;
+
+    @Resource
+    private FairJobScheduler fairJobScheduler;
+
+    private boolean rServiClientPoolSized;
+
+    private long lastProcessedJobs;
+    private long lastProcessTime;
+    private long recentJobLatency;
+
+    // exposed for unit testing
+    void setAmqBroker(final BrokerService amqBroker)
+    {
+        this.amqBroker = amqBroker;
+    }
+
+    void setRServiInstanceProvider(final RmiRServiInstanceProvider rServiInstanceProvider)
+    {
+        this.rServiInstanceProvider = rServiInstanceProvider;
+    }
+
+    void setFairJobScheduler(final FairJobScheduler fairJobScheduler)
+    {
+        this.fairJobScheduler = fairJobScheduler;
+    }
+
+    @Scheduled(fixedDelay = CONTROL_PERIOD)
+    public void adjustCapacity()
+    {
+        final int maximumWorkers = getConfiguration().getAdaptiveJobWorkersMaximum();
+        if (maximumWorkers < 1)
+        {
+            return;
+        }
+
+        final int minimumWorkers = Math.max(1, Math.min(getConfiguration().getAdaptiveJobWorkersMinimum(),
+            maximumWorkers));
+
+        try
+        {
+            final int currentWorkers = fairJobScheduler.getCapacity();
+            final int targetWorkers = computeTargetWorkers(currentWorkers, minimumWorkers, maximumWorkers);
+
+            if (targetWorkers != currentWorkers)
+            {
+                // grow the pool before adding workers and shrink it after removing them
+                if (targetWorkers > currentWorkers)
+                {
+                    rServiInstanceProvider.resizeRServiClientPool(targetWorkers);
+                }
+
+                fairJobScheduler.setCapacity(targetWorkers);
+
+                if (targetWorkers < currentWorkers)
+                {
+                    rServiInstanceProvider.resizeRServiClientPool(targetWorkers);
+                }
+
+                getLogger().info(
+                    String.format("Resized job workers and RServi pool from %d to %d (recent job latency: %dms)",
+                        currentWorkers, targetWorkers, recentJobLatency));
+            }
+            else if (!rServiClientPoolSized)
+            {
+                // the RServi client pool is configured independently of the job workers
+                rServiInstanceProvider.resizeRServiClientPool(currentWorkers);
+            }
+
+            rServiClientPoolSized = true;
+        }
+        catch (final Exception e)
+        {
+            getLogger().error("Failed to adjust job capacity", e);
+        }
+    }
+
+    private int computeTargetWorkers(final int currentWorkers, final int minimumWorkers, final int maximumWorkers)
+        throws Exception
+    {
+        long pendingJobs = 0L;
+        long processedJobs = 0L;
+        long processTime = 0L;
+
+        for (final Destination jobQueue : amqBroker.getRegionBroker().getDestinations(
+            new ActiveMQQueue(JOB_QUEUES)))
+        {
+            final DestinationStatistics statistics = jobQueue.getDestinationStatistics();
+            pendingJobs += statistics.getMessages().getCount();
+            processedJobs += statistics.getProcessTime().getCount();
+            processTime += statistics.getProcessTime().getTotalTime();
+        }
+
+        // latency over the last control period, the previous value being kept if no job completed
+        if ((processedJobs > lastProcessedJobs) && (processTime >= lastProcessTime))
+        {
+            recentJobLatency = (processTime - lastProcessTime) / (processedJobs - lastProcessedJobs);
+        }
+        lastProcessedJobs = processedJobs;
+        lastProcessTime = processTime;
+
+        final long neededWorkers = recentJobLatency > 0L
+                                                        ? (pendingJobs * recentJobLatency + CONTROL_PERIOD - 1)
+                                                          / CONTROL_PERIOD
+                                                        : pendingJobs;
+
+        // scale up at once but down one worker at a time, to avoid oscillations
+        final int targetWorkers = neededWorkers >= currentWorkers
+                                                                 ? (int) Math.min(neededWorkers, maximumWorkers)
+                                                                 : currentWorkers - 1;
+
+        return Math.max(minimumWorkers, Math.min(targetWorkers, maximumWorkers));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.jms.ConnectionFactory;
+
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds the job listeners of each application, which consume both its asynchronous and synchronous
+ * job queues and are sized by the {@link FairJobScheduler}. The listeners pull jobs only when they
+ * are ready to process them, so stopped or surplus listeners never hold pending jobs.
+ *
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component("applicationJobListeners")
+public class ApplicationJobListeners extends AbstractComponent
+{
+    private static final String PULL_CONSUMER_OPTIONS = "?consumer.prefetchSize=0";
+
+    @Resource(name = "amqConnectionFactory")
+    private ConnectionFactory connectionFactory;
+
+    @Resource
+    private BatchingJobListener batchingJobListener;
+
+    private final Map<String, DefaultMessageListenerContainer> listenerContainers = new HashMap<String, DefaultMessageListenerContainer>();
+
+    private boolean stopped;
+
+    /**
+     * Sets the number of job workers of an application, stopping its job listeners if zero.
+     */
+    public synchronized void setJobWorkers(final String applicationName, final int jobWorkers)
+    {
+        if (stopped)
+        {
+            return;
+        }
+
+        DefaultMessageListenerContainer listenerContainer = listenerContainers.get(applicationName);
+
+        if (jobWorkers < 1)
+        {
+            if ((listenerContainer != null) && (listenerContainer.isRunning()))
+            {
+                // the listeners complete the jobs they are processing
+                listenerContainer.stop();
+            }
+            return;
+        }
+
+        if (listenerContainer == null)
+        {
+            listenerContainer = newListenerContainer(applicationName, jobWorkers);
+            listenerContainers.put(applicationName, listenerContainer);
+            getLogger().info("Created job listener container for: " + applicationName);
+        }
+        else if (listenerContainer.getMaxConcurrentConsumers() != jobWorkers)
+        {
+            // raising the concurrent consumers raises their maximum too
+            listenerContainer.setConcurrentConsumers(jobWorkers);
+            listenerContainer.setMaxConcurrentConsumers(jobWorkers);
+        }
+
+        if (!listenerContainer.isRunning())
+        {
+            listenerContainer.start();
+        }
+    }
+
+    private DefaultMessageListenerContainer newListenerContainer(final String applicationName, final int jobWorkers)
+    {
+        final DefaultMessageListenerContainer listenerContainer = new DefaultMessageListenerContainer();
+        listenerContainer.setBeanName("rsb-job-listener-" + applicationName);
+        listenerContainer.setConnectionFactory(connectionFactory);
+        // composite destination of the asynchronous and synchronous job queues of the application
+        listenerContainer.setDestinationName("r.jobs." + applicationName + ",r.jobs." + applicationName + ".sync"
+                                             + PULL_CONSUMER_OPTIONS);
+        listenerContainer.setMessageListener(batchingJobListener);
+        listenerContainer.setSessionTransacted(true);
+        listenerContainer.setConcurrentConsumers(jobWorkers);
+        listenerContainer.setMaxConcurrentConsumers(jobWorkers);
+        listenerContainer.afterPropertiesSet();
+        return listenerContainer;
+    }
+
+    @PreDestroy
+    public synchronized void stopListenerContainers()
+    {
+        stopped = true;
+
+        for (final DefaultMessageListenerContainer listenerContainer : listenerContainers.values())
+        {
+            listenerContainer.shutdown();
+            getLogger().info("Stopped job listener container: " + listenerContainer.getDestinationName());
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Resource;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.listener.SessionAwareMessageListener;
+import org.springframework.jms.listener.adapter.ListenerExecutionFailedException;
+import org.springframework.stereotype.Component;
+
+import eu.openanalytics.rsb.Constants;
+import eu.openanalytics.rsb.message.AbstractFunctionCallJob;
+import eu.openanalytics.rsb.message.AbstractJob;
+import eu.openanalytics.rsb.message.MultiFilesJob;
+
+/**
+ * Receives job messages and hands them to the {@link JobProcessor}. When batching is enabled, a
+ * received function call job is complemented with the function call jobs of the same application
+ * and type that are pending in the same queue, so they are all processed back-to-back on a single
+ * RServi instance. The batched messages are received in the transacted session of the listener so
+ * they are all rolled back together should processing fail. The batch consumers are kept as long as
+ * the session the listener container has cached for the listener thread, and pull messages only
+ * when asked to so they never hold pending jobs while idle.
+ *
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component("batchingJobListener")
+public class BatchingJobListener extends AbstractComponent implements SessionAwareMessageListener<Message>
+{
+    private static final String PULL_CONSUMER_OPTIONS = "?consumer.prefetchSize=0";
+
+    /**
+     * The batch consumers created in the session of a listener thread, by queue and job type.
+     */
+    private static final class BatchConsumers
+    {
+        private final Session session;
+        private final Map<String, MessageConsumer> consumers = new HashMap<String, MessageConsumer>();
+
+        BatchConsumers(final Session session)
+        {
+            this.session = session;
+        }
+    }
+
+    private final ThreadLocal<BatchConsumers> batchConsumers = new ThreadLocal<BatchConsumers>();
+
+    private final ConcurrentMap<String, AtomicInteger> busyJobWorkers = new ConcurrentHashMap<String, AtomicInteger>();
+
+    @Resource
+    private JobProcessor jobProcessor;
+
+    @Resource
+    private JmsTemplate jmsTemplate;
+
+    // exposed for unit testing
+    void setJobProcessor(final JobProcessor jobProcessor)
+    {
+        this.jobProcessor = jobProcessor;
+    }
+
+    void setJmsTemplate(final JmsTemplate jmsTemplate)
+    {
+        this.jmsTemplate = jmsTemplate;
+    }
+
+    /**
+     * @return the number of job workers processing jobs, by application.
+     */
+    public Map<String, Integer> getBusyJobWorkers()
+    {
+        final Map<String, Integer> busyApplicationJobWorkers = new HashMap<String, Integer>();
+        for (final Entry<String, AtomicInteger> jobWorkers : busyJobWorkers.entrySet())
+        {
+            if (jobWorkers.getValue().get() > 0)
+            {
+                busyApplicationJobWorkers.put(jobWorkers.getKey(), jobWorkers.getValue().get());
+            }
+        }
+        return busyApplicationJobWorkers;
+    }
+
+    @Override
+    public void onMessage(final Message message, final Session session) throws JMSException
+    {
+        final Object job = jmsTemplate.getMessageConverter().fromMessage(message);
+
+        if (!(job instanceof AbstractJob))
+        {
+            throw new IllegalArgumentException("Unsupported job: " + job);
+        }
+
+        final AtomicInteger applicationBusyJobWorkers = getBusyJobWorkers(((AbstractJob) job).getApplicationName());
+        applicationBusyJobWorkers.incrementAndGet();
+
+        try
+        {
+            if (job instanceof MultiFilesJob)
+            {
+                jobProcessor.process((MultiFilesJob) job);
+            }
+            else if (job instanceof AbstractFunctionCallJob)
+            {
+                processFunctionCallJob((AbstractFunctionCallJob) job, message, session);
+            }
+            else
+            {
+                // redelivering an unsupported job is pointless
+                rejectJob((AbstractJob) job);
+            }
+        }
+        catch (final JMSException | RuntimeException e)
+        {
+            throw e;
+        }
+        catch (final Exception e)
+        {
+            throw new ListenerExecutionFailedException("Failed to process job: " + job, e);
+        }
+        finally
+        {
+            applicationBusyJobWorkers.decrementAndGet();
+        }
+    }
+
+    private AtomicInteger getBusyJobWorkers(final String applicationName)
+    {
+        final AtomicInteger counter = busyJobWorkers.get(applicationName);
+        if (counter != null)
+        {
+            return counter;
+        }
+
+        final AtomicInteger newCounter = new AtomicInteger();
+        final AtomicInteger existingCounter = busyJobWorkers.putIfAbsent(applicationName, newCounter);
+        return existingCounter == null ? newCounter : existingCounter;
+    }
+
+    private void rejectJob(final AbstractJob job) throws IOException
+    {
+        getLogger().error("Rejecting unsupported job: " + job);
+
+        try
+        {
+            getMessageDispatcher().dispatch(
+                job.buildErrorResult(new IllegalArgumentException("Unsupported job: " + job), getMessages()));
+        }
+        finally
+        {
+            job.destroy();
+        }
+    }
+
+    private void processFunctionCallJob(final AbstractFunctionCallJob job,
+                                        final Message message,
+                                        final Session session) throws Exception
+    {
+        final int batchSize = getConfiguration().getFunctionCallJobsBatchSize();
+
+        if (batchSize < 2)
+        {
+            jobProcessor.process(job);
+            return;
+        }
+
+        final List<AbstractFunctionCallJob> jobs = new ArrayList<AbstractFunctionCallJob>(batchSize);
+        jobs.add(job);
+
+        final MessageConsumer batchConsumer = getBatchConsumer(session, (Queue) message.getJMSDestination(),
+            job.getClass().getSimpleName());
+
+        while (jobs.size() < batchSize)
+        {
+            // the broker answers a pull at once when the queue has run dry
+            final Message batchedMessage = batchConsumer.receiveNoWait();
+            if (batchedMessage == null)
+            {
+                break;
+            }
+            jobs.add((AbstractFunctionCallJob) jmsTemplate.getMessageConverter().fromMessage(batchedMessage));
+        }
+
+        if ((jobs.size() > 1) && (getLogger().isDebugEnabled()))
+        {
+            getLogger().debug(
+                String.format("Batching %d %s for %s", jobs.size(), job.getType(), job.getApplicationName()));
+        }
+
+        jobProcessor.process(jobs);
+    }
+
+    private MessageConsumer getBatchConsumer(final Session session, final Queue queue, final String jobType)
+        throws JMSException
+    {
+        // consumers die with their session, which the listener container may have replaced
+        BatchConsumers threadBatchConsumers = batchConsumers.get();
+        if ((threadBatchConsumers == null) || (threadBatchConsumers.session != session))
+        {
+            threadBatchConsumers = new BatchConsumers(session);
+            batchConsumers.set(threadBatchConsumers);
+        }
+
+        final String key = queue.getQueueName() + "/" + jobType;
+        final MessageConsumer existingBatchConsumer = threadBatchConsumers.consumers.get(key);
+        if (existingBatchConsumer != null)
+        {
+            return existingBatchConsumer;
+        }
+
+        // the job queue is specific to the application, so only the type needs selecting
+        final MessageConsumer batchConsumer = session.createConsumer(
+            session.createQueue(queue.getQueueName() + PULL_CONSUMER_OPTIONS),
+            Constants.WORK_ITEM_TYPE_MESSAGE_HEADER + " = '" + jobType + "'");
+        threadBatchConsumers.consumers.put(key, batchConsumer);
+        return batchConsumer;
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import eu.openanalytics.rsb.Util;
+
+/**
+ * Allocates the job workers to the applications in proportion of their weights, so an application
+ * flooding its job queue can not starve the others. Each application has its own job listeners,
+ * which this scheduler periodically sizes from the jobs pending in the queues of the applications:
+ * the applications with pending jobs first get one job worker each, then the job workers go one by
+ * one to the application with pending jobs that uses the fewest relatively to its weight. The job
+ * workers left go to the applications that could use more, so their next jobs are picked up at once.
+ * Since listeners only receive a job when they have a job worker, no job is ever held waiting for
+ * one. The job workers taken from an application first complete the jobs they are processing: they
+ * are only given to another application once done, so there are never more jobs being processed
+ * than job workers, nor RServi instances borrowed, should the RServi client pool be sized to match.
+ *
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component("fairJobScheduler")
+public class FairJobScheduler extends AbstractComponent
+{
+    private static final long REBALANCE_PERIOD = 1000L;
+
+    private static final int DEFAULT_WEIGHT = 1;
+
+    private static final String JOB_QUEUES = "r.jobs.>";
+    private static final String JOB_QUEUE_PREFIX = "r.jobs.";
+
+    @Resource(name = "amqBroker")
+    private BrokerService amqBroker;
+
+    @Resource
+    private ApplicationJobListeners applicationJobListeners;
+
+    @Resource
+    private BatchingJobListener batchingJobListener;
+
+    // the rebalancing rounds in which the applications with pending jobs last got a job worker
+    private final Map<String, Long> lastServedRounds = new HashMap<String, Long>();
+
+    private long round;
+
+    private volatile int capacity;
+
+    // exposed for unit testing
+    void setAmqBroker(final BrokerService amqBroker)
+    {
+        this.amqBroker = amqBroker;
+    }
+
+    void setApplicationJobListeners(final ApplicationJobListeners applicationJobListeners)
+    {
+        this.applicationJobListeners = applicationJobListeners;
+    }
+
+    void setBatchingJobListener(final BatchingJobListener batchingJobListener)
+    {
+        this.batchingJobListener = batchingJobListener;
+    }
+
+    @PostConstruct
+    public void initialize()
+    {
+        setCapacity(getConfiguration().getNumberOfConcurrentJobWorkersPerQueue());
+    }
+
+    /**
+     * Sets the number of job workers to share between the applications, which is applied at the
+     * next rebalancing.
+     */
+    public void setCapacity(final int capacity)
+    {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    @Scheduled(fixedDelay = REBALANCE_PERIOD)
+    public synchronized void rebalance()
+    {
+        try
+        {
+            final Map<String, Integer> weights = getConfiguration().getApplicationJobWorkerWeights();
+            final Map<String, Long> pendingJobs = getApplicationPendingJobs();
+            if (weights != null)
+            {
+                // applications with a weight listen for jobs before any is queued on this node,
+                // which lets it take their jobs from the other nodes of a network of brokers
+                for (final String applicationName : weights.keySet())
+                {
+                    if (!pendingJobs.containsKey(applicationName))
+                    {
+                        pendingJobs.put(applicationName, 0L);
+                    }
+                }
+            }
+
+            round++;
+
+            // the least recently served applications come first, so they take turns should they
+            // outnumber the job workers
+            final List<String> applicationNames = new ArrayList<String>(pendingJobs.keySet());
+            Collections.sort(applicationNames, new Comparator<String>()
+            {
+                @Override
+                public int compare(final String applicationName1, final String applicationName2)
+                {
+                    return Long.compare(getLastServedRound(applicationName1),
+                        getLastServedRound(applicationName2));
+                }
+            });
+
+            final Map<String, Integer> allocation = allocate(capacity, applicationNames, pendingJobs,
+                batchingJobListener.getBusyJobWorkers(), weights);
+
+            for (final Entry<String, Integer> jobWorkers : allocation.entrySet())
+            {
+                final String applicationName = jobWorkers.getKey();
+                if (pendingJobs.get(applicationName) == 0L)
+                {
+                    lastServedRounds.remove(applicationName);
+                }
+                else if (jobWorkers.getValue() > 0)
+                {
+                    lastServedRounds.put(applicationName, round);
+                }
+
+                applicationJobListeners.setJobWorkers(applicationName, jobWorkers.getValue());
+            }
+        }
+        catch (final Exception e)
+        {
+            getLogger().error("Failed to rebalance the job workers", e);
+        }
+    }
+
+    /**
+     * Allocates job workers to the applications, without ever exceeding the capacity, even while
+     * the job workers taken from an application complete their jobs.
+     *
+     * @param applicationNames the applications, by decreasing priority for their first job worker.
+     * @param busyJobWorkers the number of job workers processing jobs, by application.
+     * @return the number of job workers of each application.
+     */
+    static Map<String, Integer> allocate(final int capacity,
+                                         final List<String> applicationNames,
+                                         final Map<String, Long> pendingJobs,
+                                         final Map<String, Integer> busyJobWorkers,
+                                         final Map<String, Integer> weights)
+    {
+        final Map<String, Integer> targetAllocation = allocate(capacity, applicationNames, pendingJobs, weights);
+
+        // applications keep their busy job workers up to their target, and only get more from the
+        // job workers that are not busy
+        final Map<String, Integer> allocation = new LinkedHashMap<String, Integer>();
+        final Map<String, Long> targetJobWorkers = new HashMap<String, Long>();
+        int availableJobWorkers = capacity;
+
+        for (final Entry<String, Integer> busyApplicationJobWorkers : busyJobWorkers.entrySet())
+        {
+            availableJobWorkers -= busyApplicationJobWorkers.getValue();
+        }
+
+        for (final Entry<String, Integer> target : targetAllocation.entrySet())
+        {
+            final String applicationName = target.getKey();
+            final Integer busyApplicationJobWorkers = busyJobWorkers.get(applicationName);
+            allocation.put(applicationName,
+                Math.min(target.getValue(), busyApplicationJobWorkers != null ? busyApplicationJobWorkers : 0));
+            targetJobWorkers.put(applicationName, target.getValue().longValue());
+        }
+
+        allocateByWeight(availableJobWorkers, allocation, targetJobWorkers, weights);
+
+        return allocation;
+    }
+
+    private static Map<String, Integer> allocate(final int capacity,
+                                                 final List<String> applicationNames,
+                                                 final Map<String, Long> pendingJobs,
+                                                 final Map<String, Integer> weights)
+    {
+        final Map<String, Integer> allocation = new LinkedHashMap<String, Integer>();
+        int availableJobWorkers = capacity;
+
+        for (final String applicationName : applicationNames)
+        {
+            final boolean served = (availableJobWorkers > 0) && (pendingJobs.get(applicationName) > 0L);
+            allocation.put(applicationName, served ? 1 : 0);
+            availableJobWorkers -= served ? 1 : 0;
+        }
+
+        availableJobWorkers = allocateByWeight(availableJobWorkers, allocation, pendingJobs, weights);
+        allocateByWeight(availableJobWorkers, allocation, null, weights);
+
+        return allocation;
+    }
+
+    /**
+     * Gives the available job workers one by one to the application that has the fewest relatively
+     * to its weight, not exceeding its limit unless the limits are null.
+     *
+     * @return the number of job workers left.
+     */
+    private static int allocateByWeight(final int availableJobWorkers,
+                                        final Map<String, Integer> allocation,
+                                        final Map<String, Long> limits,
+                                        final Map<String, Integer> weights)
+    {
+        int leftJobWorkers = availableJobWorkers;
+
+        while (leftJobWorkers > 0)
+        {
+            String mostDeservingApplicationName = null;
+
+            for (final Entry<String, Integer> jobWorkers : allocation.entrySet())
+            {
+                final String applicationName = jobWorkers.getKey();
+                if ((limits != null) && (jobWorkers.getValue() >= limits.get(applicationName)))
+                {
+                    continue;
+                }
+
+                if ((mostDeservingApplicationName == null)
+                    || (isLessServed(applicationName, mostDeservingApplicationName, allocation, weights)))
+                {
+                    mostDeservingApplicationName = applicationName;
+                }
+            }
+
+            if (mostDeservingApplicationName == null)
+            {
+                break;
+            }
+
+            allocation.put(mostDeservingApplicationName, allocation.get(mostDeservingApplicationName) + 1);
+            leftJobWorkers--;
+        }
+
+        return leftJobWorkers;
+    }
+
+    // compares the ratios of job workers to weights without dividing
+    private static boolean isLessServed(final String applicationName,
+                                        final String otherApplicationName,
+                                        final Map<String, Integer> allocation,
+                                        final Map<String, Integer> weights)
+    {
+        final long jobWorkers = allocation.get(applicationName);
+        final long otherJobWorkers = allocation.get(otherApplicationName);
+        return jobWorkers * getWeight(weights, otherApplicationName) < otherJobWorkers
+                                                                       * getWeight(weights, applicationName);
+    }
+
+    /**
+     * @return the number of jobs of each application that are pending or being processed on this
+     *         node.
+     */
+    private Map<String, Long> getApplicationPendingJobs() throws Exception
+    {
+        final Map<String, Long> pendingJobs = new HashMap<String, Long>();
+
+        for (final Destination jobQueue : amqBroker.getRegionBroker().getDestinations(
+            new ActiveMQQueue(JOB_QUEUES)))
+        {
+            // synchronous job queues are named r.jobs.<app>.sync
+            final String applicationName = StringUtils.substringBefore(
+                StringUtils.removeStart(jobQueue.getActiveMQDestination().getPhysicalName(), JOB_QUEUE_PREFIX),
+                ".");
+
+            // the application name ends up in the destination of its job listeners
+            if (Util.isValidApplicationName(applicationName))
+            {
+                final Long applicationPendingJobs = pendingJobs.get(applicationName);
+                pendingJobs.put(applicationName, (applicationPendingJobs != null ? applicationPendingJobs : 0L)
+                                                 + jobQueue.getDestinationStatistics().getMessages().getCount());
+            }
+        }
+
+        return pendingJobs;
+    }
+
+    private long getLastServedRound(final String applicationName)
+    {
+        final Long lastServedRound = lastServedRounds.get(applicationName);
+        return lastServedRound != null ? lastServedRound : 0L;
+    }
+
+    private static int getWeight(final Map<String, Integer> weights, final String applicationName)
+    {
+        final Integer weight = weights != null ? weights.get(applicationName) : null;
+        return weight != null ? weight : DEFAULT_WEIGHT;
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Resource;
+
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides if new REST jobs are admitted, based on the depth of the job queue of their application
+ * and on the number of jobs their user is waiting the result of, and estimates when rejected
+ * submissions are worth retrying from the recent job throughput of the application. Admitted jobs
+ * hold a pending slot of their application until they are in its queue, so concurrent submissions
+ * can not overshoot the pending jobs limit.
+ *
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component("jobAdmissionController")
+public class JobAdmissionController extends AbstractComponent
+{
+    private static final long THROUGHPUT_SAMPLING_PERIOD = 10000L;
+
+    // admissions whose result has been handled by another node are forgotten after that delay
+    private static final long MAXIMUM_ADMISSION_AGE = 3600000L;
+
+    static final long DEFAULT_RETRY_AFTER_SECONDS = 60L;
+    static final long MAXIMUM_RETRY_AFTER_SECONDS = 3600L;
+
+    private static final String JOB_QUEUES = "r.jobs.>";
+    private static final String JOB_QUEUE_PREFIX = "r.jobs.";
+
+    /**
+     * A job admitted for a user, which is in flight until its result is handled.
+     */
+    private static final class Admission
+    {
+        private final String userName;
+        private final long admissionTime;
+
+        Admission(final String userName)
+        {
+            this.userName = userName;
+            this.admissionTime = System.currentTimeMillis();
+        }
+    }
+
+    @Resource(name = "amqBroker")
+    private BrokerService amqBroker;
+
+    private final ConcurrentMap<UUID, Admission> admissions = new ConcurrentHashMap<UUID, Admission>();
+
+    private final ConcurrentMap<String, AtomicInteger> userInFlightJobs = new ConcurrentHashMap<String, AtomicInteger>();
+
+    // application names of the admitted jobs that are not in their queue yet
+    private final ConcurrentMap<UUID, String> reservations = new ConcurrentHashMap<UUID, String>();
+
+    private final ConcurrentMap<String, AtomicInteger> applicationReservedJobs = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private volatile Map<String, Long> lastApplicationDequeues = new HashMap<String, Long>();
+
+    // jobs per second
+    private volatile Map<String, Double> applicationThroughputs = new HashMap<String, Double>();
+
+    // exposed for unit testing
+    void setAmqBroker(final BrokerService amqBroker)
+    {
+        this.amqBroker = amqBroker;
+    }
+
+    void setApplicationThroughput(final String applicationName, final double throughput)
+    {
+        final Map<String, Double> newApplicationThroughputs = new HashMap<String, Double>(applicationThroughputs);
+        newApplicationThroughputs.put(applicationName, throughput);
+        applicationThroughputs = newApplicationThroughputs;
+    }
+
+    int getUserInFlightJobs(final String userName)
+    {
+        final AtomicInteger inFlightJobs = userInFlightJobs.get(userName);
+        return inFlightJobs == null ? 0 : inFlightJobs.get();
+    }
+
+    /**
+     * Admits a new job, which must be notified as enqueued once dispatched, and released once its
+     * result has been handled.
+     *
+     * @return 0 if the job is admitted, otherwise the number of seconds after which its submission
+     *         is worth retrying.
+     */
+    public long admit(final String applicationName, final String userName, final UUID jobId)
+    {
+        final int maximumPendingJobs = getConfiguration().getJobAdmissionMaximumPendingJobsPerApplication();
+        final int maximumInFlightJobs = getConfiguration().getJobAdmissionMaximumInFlightJobsPerUser();
+
+        long pendingJobs = 0L;
+        if (maximumPendingJobs > 0)
+        {
+            // reserving before reading the queue depth can count a job being enqueued twice, but
+            // never miss it
+            final AtomicInteger reservedJobs = getOrCreateCounter(applicationReservedJobs, applicationName);
+            final int reservedAndAdmittedJobs = reservedJobs.incrementAndGet();
+            pendingJobs = getPendingJobs(applicationName) + reservedAndAdmittedJobs - 1;
+
+            if (pendingJobs >= maximumPendingJobs)
+            {
+                reservedJobs.decrementAndGet();
+                getLogger().warn(
+                    String.format("Rejecting job %s for %s: %d jobs pending", jobId, applicationName, pendingJobs));
+                return estimateRetryAfterSeconds(applicationName, pendingJobs - maximumPendingJobs + 1);
+            }
+
+            reservations.put(jobId, applicationName);
+        }
+
+        if ((maximumInFlightJobs < 1) || (StringUtils.isBlank(userName)))
+        {
+            return 0L;
+        }
+
+        final AtomicInteger inFlightJobs = getOrCreateCounter(userInFlightJobs, userName);
+        if (inFlightJobs.incrementAndGet() > maximumInFlightJobs)
+        {
+            inFlightJobs.decrementAndGet();
+            release(jobId);
+            getLogger().warn(
+                String.format("Rejecting job %s for %s: user %s has %d jobs in flight", jobId, applicationName,
+                    userName, maximumInFlightJobs));
+            // one of the jobs of the user must go through the backlog before a new one is admitted
+            return estimateRetryAfterSeconds(applicationName, Math.max(pendingJobs, 1L));
+        }
+
+        admissions.put(jobId, new Admission(userName));
+        return 0L;
+    }
+
+    /**
+     * Frees the pending slot reserved for an admitted job, once it is in the queue of its
+     * application.
+     */
+    public void enqueued(final UUID jobId)
+    {
+        final String applicationName = reservations.remove(jobId);
+        if (applicationName != null)
+        {
+            getOrCreateCounter(applicationReservedJobs, applicationName).decrementAndGet();
+        }
+    }
+
+    /**
+     * Releases a job, once its result has been handled or if it could not be submitted after all.
+     */
+    public void release(final UUID jobId)
+    {
+        enqueued(jobId);
+
+        final Admission admission = admissions.remove(jobId);
+        if (admission != null)
+        {
+            getOrCreateCounter(userInFlightJobs, admission.userName).decrementAndGet();
+        }
+    }
+
+    @Scheduled(fixedDelay = THROUGHPUT_SAMPLING_PERIOD)
+    public void sampleThroughputs()
+    {
+        final Map<String, Long> applicationDequeues = new HashMap<String, Long>();
+
+        if (amqBroker != null)
+        {
+            try
+            {
+                for (final Destination jobQueue : amqBroker.getRegionBroker().getDestinations(
+                    new ActiveMQQueue(JOB_QUEUES)))
+                {
+                    final String applicationName = getApplicationName(jobQueue);
+                    final Long dequeues = applicationDequeues.get(applicationName);
+                    applicationDequeues.put(applicationName, (dequeues == null ? 0L : dequeues)
+                                                             + jobQueue.getDestinationStatistics()
+                                                                 .getDequeues()
+                                                                 .getCount());
+                }
+            }
+            catch (final Exception e)
+            {
+                getLogger().error("Failed to sample job throughputs", e);
+                return;
+            }
+        }
+
+        final Map<String, Double> newApplicationThroughputs = new HashMap<String, Double>();
+        for (final Entry<String, Long> applicationDequeue : applicationDequeues.entrySet())
+        {
+            final Long lastDequeues = lastApplicationDequeues.get(applicationDequeue.getKey());
+            if ((lastDequeues != null) && (applicationDequeue.getValue() >= lastDequeues))
+            {
+                newApplicationThroughputs.put(applicationDequeue.getKey(),
+                    (applicationDequeue.getValue() - lastDequeues) * 1000.0d / THROUGHPUT_SAMPLING_PERIOD);
+            }
+        }
+
+        lastApplicationDequeues = applicationDequeues;
+        applicationThroughputs = newApplicationThroughputs;
+
+        forgetStaleAdmissions();
+    }
+
+    private void forgetStaleAdmissions()
+    {
+        final long oldestAdmissionTime = System.currentTimeMillis() - MAXIMUM_ADMISSION_AGE;
+
+        for (final Entry<UUID, Admission> admission : admissions.entrySet())
+        {
+            if (admission.getValue().admissionTime < oldestAdmissionTime)
+            {
+                release(admission.getKey());
+            }
+        }
+    }
+
+    long estimateRetryAfterSeconds(final String applicationName, final long jobsToProcess)
+    {
+        final Double throughput = applicationThroughputs.get(applicationName);
+        if ((throughput == null) || (throughput <= 0.0d))
+        {
+            return DEFAULT_RETRY_AFTER_SECONDS;
+        }
+
+        final long retryAfterSeconds = (long) Math.ceil(jobsToProcess / throughput);
+        return Math.max(1L, Math.min(retryAfterSeconds, MAXIMUM_RETRY_AFTER_SECONDS));
+    }
+
+    private long getPendingJobs(final String applicationName)
+    {
+        if (amqBroker == null)
+        {
+            return 0L;
+        }
+
+        try
+        {
+            long pendingJobs = 0L;
+            for (final Destination jobQueue : amqBroker.getRegionBroker().getDestinations(
+                new ActiveMQQueue(JOB_QUEUE_PREFIX + applicationName)))
+            {
+                pendingJobs += jobQueue.getDestinationStatistics().getMessages().getCount();
+            }
+            return pendingJobs;
+        }
+        catch (final Exception e)
+        {
+            // admit jobs rather than rejecting them all should the broker not be queryable
+            getLogger().error("Failed to get the number of pending jobs for: " + applicationName, e);
+            return 0L;
+        }
+    }
+
+    private static String getApplicationName(final Destination jobQueue)
+    {
+        // synchronous job queues are named r.jobs.<app>.sync
+        return StringUtils.substringBefore(
+            StringUtils.removeStart(jobQueue.getActiveMQDestination().getPhysicalName(), JOB_QUEUE_PREFIX), ".");
+    }
+
+    private static AtomicInteger getOrCreateCounter(final ConcurrentMap<String, AtomicInteger> counters,
+                                                    final String key)
+    {
+        final AtomicInteger counter = counters.get(key);
+        if (counter != null)
+        {
+            return counter;
+        }
+
+        final AtomicInteger newCounter = new AtomicInteger();
+        final AtomicInteger existingCounter = counters.putIfAbsent(key, newCounter);
+        return existingCounter == null ? newCounter : existingCounter;
+    }
+}
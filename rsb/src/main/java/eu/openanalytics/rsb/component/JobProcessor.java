@@ -33,20 +33,35 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.URI;
+import java.rmi.RemoteException;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import javax.annotation.Resource;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.eclipse.statet.jcommons.status.StatusException;
 import org.eclipse.statet.rj.data.RDataUtils;
 import org.eclipse.statet.rj.data.RObject;
 import org.eclipse.statet.rj.data.UnexpectedRDataException;
+import org.eclipse.statet.rj.data.impl.RCharacter32Store;
+import org.eclipse.statet.rj.data.impl.RVectorImpl;
 import org.eclipse.statet.rj.servi.RServi;
 import org.eclipse.statet.rj.services.FunctionCall;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -60,9 +75,12 @@ import eu.openanalytics.rsb.message.Job;
 import eu.openanalytics.rsb.message.MultiFilesJob;
 import eu.openanalytics.rsb.message.MultiFilesResult;
 import eu.openanalytics.rsb.rservi.ErrorableRServi;
+import eu.openanalytics.rsb.rservi.FileCachingRServi;
+import eu.openanalytics.rsb.rservi.RServiCircuitBreaker;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider.PoolingStrategy;
 import eu.openanalytics.rsb.rservi.RServiUriSelector;
+import eu.openanalytics.rsb.stats.JobPhase;
 import eu.openanalytics.rsb.stats.JobStatisticsHandler;
 
 /**
@@ -75,9 +93,67 @@ public class JobProcessor extends AbstractComponentWithCatalog
 {
     private interface JobRunner
     {
-        AbstractResult<?> runOn(RServi rServi) throws Exception;
+        AbstractResult<?> runOn(RServi rServi, JobPhaseTimer jobPhaseTimer) throws Exception;
     }
 
+    /**
+     * Accumulates the time spent in each {@link JobPhase} of a job.
+     */
+    private static final class JobPhaseTimer
+    {
+        private final Map<JobPhase, Long> millisecondsSpentPerPhase = new EnumMap<JobPhase, Long>(
+            JobPhase.class);
+        private long phaseStartTime = System.currentTimeMillis();
+
+        void start()
+        {
+            phaseStartTime = System.currentTimeMillis();
+        }
+
+        void stop(final JobPhase jobPhase)
+        {
+            final long now = System.currentTimeMillis();
+            final Long previousTime = millisecondsSpentPerPhase.get(jobPhase);
+            millisecondsSpentPerPhase.put(jobPhase, (previousTime == null ? 0L : previousTime)
+                                                    + (now - phaseStartTime));
+            phaseStartTime = now;
+        }
+
+        void skip(final JobPhase jobPhase)
+        {
+            if (!millisecondsSpentPerPhase.containsKey(jobPhase))
+            {
+                millisecondsSpentPerPhase.put(jobPhase, 0L);
+            }
+        }
+
+        Map<JobPhase, Long> getMillisecondsSpentPerPhase()
+        {
+            return millisecondsSpentPerPhase;
+        }
+
+        @Override
+        public String toString()
+        {
+            final StringBuilder sb = new StringBuilder();
+            for (final Entry<JobPhase, Long> phase : millisecondsSpentPerPhase.entrySet())
+            {
+                if (sb.length() > 0)
+                {
+                    sb.append(", ");
+                }
+                sb.append(phase.getKey().getStatisticsName()).append('=').append(phase.getValue()).append("ms");
+            }
+            return sb.toString();
+        }
+    }
+
+    private static final String UNPACK_JOB_FILES_ARCHIVE_EXPRESSION = "local({utils::unzip('"
+                                                                      + Constants.JOB_FILES_ARCHIVE
+                                                                      + "', exdir = '.'); file.remove('"
+                                                                      + Constants.JOB_FILES_ARCHIVE
+                                                                      + "')})";
+
     @Resource
     private RServiInstanceProvider rServiInstanceProvider;
 
@@ -87,31 +163,91 @@ public class JobProcessor extends AbstractComponentWithCatalog
     @Resource
     private RServiUriSelector rServiUriSelector;
 
+    @Resource
+    private RServiCircuitBreaker rServiCircuitBreaker;
+
     @PreAuthorize("hasPermission(#job, 'APPLICATION_JOB')")
     public AbstractResult<?> processDirect(final AbstractFunctionCallJob job) throws Exception
     {
-        return process(job, new JobRunner()
-        {
-            @Override
-            public AbstractResult<String> runOn(final RServi rServi) throws StatusException, IOException
-            {
-                final String resultPayload = callFunctionOnR(rServi, job);
-                return job.buildSuccessResult(resultPayload);
-            }
-        }, true);
+        return process(job, newFunctionCallJobRunner(job), true, false);
     }
 
     public void process(final AbstractFunctionCallJob job) throws Exception
     {
-        process(job, new JobRunner()
+        process(job, newFunctionCallJobRunner(job), false, true);
+    }
+
+    /**
+     * Processes function call jobs of the same application back-to-back on a single RServi
+     * instance, each job getting its own result dispatched. Should the processing of a job fail,
+     * the remaining jobs are processed individually, as the RServi instance may be unusable. The
+     * batch is rolled back to be redelivered only if RServi can not be talked to before any of its
+     * jobs has been processed: past this point, a job failing to talk to RServi gets an error
+     * result, as redelivering it would also redeliver the jobs whose results are out already.
+     */
+    public void process(final List<? extends AbstractFunctionCallJob> jobs) throws Exception
+    {
+        if (jobs.isEmpty())
         {
-            @Override
-            public AbstractResult<String> runOn(final RServi rServi) throws StatusException, IOException
+            return;
+        }
+
+        final AbstractFunctionCallJob firstJob = jobs.get(0);
+        final URI rserviPoolAddress = rServiUriSelector.getUriForApplication(firstJob.getApplicationName());
+        JobPhaseTimer jobPhaseTimer = new JobPhaseTimer();
+        final long batchStartTime = System.currentTimeMillis();
+        long startTime = batchStartTime;
+
+        int processedJobs = 0;
+        int successfulJobs = 0;
+        rServiUriSelector.jobStarted(rserviPoolAddress);
+        try
+        {
+            // don't catch RServi pool here so the error is propagated and the jobs can be
+            // retried
+            final RServi rServi = borrowRServi(rserviPoolAddress, getPoolingStrategy(firstJob));
+
+            jobPhaseTimer.stop(JobPhase.RSERVI_BORROW);
+
+            try
             {
-                final String resultPayload = callFunctionOnR(rServi, job);
-                return job.buildSuccessResult(resultPayload);
+                for (final AbstractFunctionCallJob job : jobs)
+                {
+                    // redelivering a job of the batch would also redeliver the jobs before it, whose
+                    // results have been dispatched already: only the first job can be retried
+                    final boolean retryable = processedJobs == 0;
+                    processedJobs++;
+
+                    final AbstractResult<?> result = process(job, newFunctionCallJobRunner(job), false,
+                        retryable, rServi, false, rserviPoolAddress, startTime, jobPhaseTimer);
+
+                    if (!result.isSuccess())
+                    {
+                        break;
+                    }
+
+                    successfulJobs++;
+                    jobPhaseTimer = new JobPhaseTimer();
+                    startTime = System.currentTimeMillis();
+                }
+            }
+            finally
+            {
+                closeQuietly(rServi);
             }
-        }, false);
+        }
+        finally
+        {
+            // the batch counts as a single job in flight, whose latency is the average of its jobs
+            rServiUriSelector.jobCompleted(rserviPoolAddress, (System.currentTimeMillis() - batchStartTime)
+                                                              / Math.max(processedJobs, 1),
+                (processedJobs > 0) && (successfulJobs == processedJobs));
+        }
+
+        for (final AbstractFunctionCallJob job : jobs.subList(processedJobs, jobs.size()))
+        {
+            process(job, newFunctionCallJobRunner(job), false, false);
+        }
     }
 
     public void process(final MultiFilesJob job) throws Exception
@@ -119,14 +255,27 @@ public class JobProcessor extends AbstractComponentWithCatalog
         process(job, new JobRunner()
         {
             @Override
-            public AbstractResult<File[]> runOn(final RServi rServi) throws Exception
+            public AbstractResult<File[]> runOn(final RServi rServi, final JobPhaseTimer jobPhaseTimer)
+                throws Exception
             {
                 final Set<String> filesUploadedToR = new HashSet<String>();
 
+                // files are keyed by name so later ones supersede earlier ones, as they would
+                // when uploaded one by one
+                final Map<String, File> filesToUpload = new LinkedHashMap<String, File>();
+
+                // catalog files are worth caching on pooled RServi instances
+                final Set<File> catalogFiles = new HashSet<File>();
+
                 // locate and upload the R script
                 final File rScriptFile = getRScriptFile(job);
 
-                uploadFileToR(rServi, rScriptFile, filesUploadedToR);
+                filesToUpload.put(rScriptFile.getName(), rScriptFile);
+
+                if (!rScriptFile.equals(job.getRScriptFile()))
+                {
+                    catalogFiles.add(rScriptFile);
+                }
 
                 // optionally uploads a Sweave file
                 final String sweaveFileFromCatalog = (String) getUploadableJobMeta(job).get(
@@ -143,7 +292,8 @@ public class JobProcessor extends AbstractComponentWithCatalog
                                                            + job);
                     }
 
-                    uploadFileToR(rServi, sweaveFile, filesUploadedToR);
+                    filesToUpload.put(sweaveFile.getName(), sweaveFile);
+                    catalogFiles.add(sweaveFile);
                 }
 
                 // upload the job files (except the R Script which has already been
@@ -152,30 +302,73 @@ public class JobProcessor extends AbstractComponentWithCatalog
                 {
                     if (!jobFile.equals(rScriptFile))
                     {
-                        uploadFileToR(rServi, jobFile, filesUploadedToR);
+                        filesToUpload.put(jobFile.getName(), jobFile);
                     }
                 }
 
-                // upload the configuration file to R
-                uploadPropertiesToR(rServi, getUploadableJobMeta(job), filesUploadedToR);
+                final Map<String, String> catalogFilesToCache = restoreCachedCatalogFiles(rServi, catalogFiles,
+                    filesToUpload, filesUploadedToR);
+
+                final byte[] jobConfiguration = toJobConfiguration(getUploadableJobMeta(job));
+
+                if (getConfiguration().isArchivedJobFilesUpload())
+                {
+                    // upload the files and the configuration file to R in one go
+                    uploadArchiveToR(rServi, filesToUpload.values(), jobConfiguration, filesUploadedToR);
+                    cacheCatalogFiles(rServi, catalogFilesToCache);
+                    jobPhaseTimer.stop(JobPhase.FILE_UPLOAD);
+
+                    // the configuration file has been uploaded in the archive
+                    jobPhaseTimer.skip(JobPhase.PROPERTIES_UPLOAD);
+                }
+                else
+                {
+                    for (final File fileToUpload : filesToUpload.values())
+                    {
+                        uploadFileToR(rServi, fileToUpload, filesUploadedToR);
+                    }
+                    cacheCatalogFiles(rServi, catalogFilesToCache);
+                    jobPhaseTimer.stop(JobPhase.FILE_UPLOAD);
+
+                    // upload the configuration file to R
+                    uploadPropertiesToR(rServi, jobConfiguration, filesUploadedToR);
+                    jobPhaseTimer.stop(JobPhase.PROPERTIES_UPLOAD);
+                }
 
                 // hit R
                 executeScriptOnR(rServi, rScriptFile.getName());
+                jobPhaseTimer.stop(JobPhase.R_EVALUATION);
 
                 final MultiFilesResult result = job.buildSuccessResult();
 
                 // download the result files but not the uploaded ones nor the log
                 // file
                 final Set<String> filesToDownload = getFilesInRWorkspace(rServi);
+                jobPhaseTimer.stop(JobPhase.WORKSPACE_LISTING);
                 filesToDownload.removeAll(filesUploadedToR);
                 filesToDownload.remove(Constants.DEFAULT_R_LOG_FILE);
-                for (final String fileToDownload : filesToDownload)
+
+                // when the result will end up zipped anyway, try to have R zip it and download it
+                // in one go
+                if ((getConfiguration().isArchivedResultFilesDownload()) && (job.isZippedResult())
+                    && (!filesToDownload.isEmpty()) && (archiveResultFilesOnR(rServi, filesToDownload)))
                 {
-                    final File resultFile = result.createNewResultFile(fileToDownload);
-                    try(final FileOutputStream fos = new FileOutputStream(resultFile)) {
-                      rServi.downloadFile(fos, fileToDownload, 0, null);
+                    final File resultArchiveFile = result.createNewResultArchiveFile();
+                    try(final FileOutputStream fos = new FileOutputStream(resultArchiveFile)) {
+                      rServi.downloadFile(fos, Constants.RESULT_FILES_ARCHIVE, 0, null);
                     }
                 }
+                else
+                {
+                    for (final String fileToDownload : filesToDownload)
+                    {
+                        final File resultFile = result.createNewResultFile(fileToDownload);
+                        try(final FileOutputStream fos = new FileOutputStream(resultFile)) {
+                          rServi.downloadFile(fos, fileToDownload, 0, null);
+                        }
+                    }
+                }
+                jobPhaseTimer.stop(JobPhase.RESULT_DOWNLOAD);
 
                 return result;
             }
@@ -232,7 +425,7 @@ public class JobProcessor extends AbstractComponentWithCatalog
                     return job.getRScriptFile();
                 }
             }
-        }, false);
+        }, false, true);
     }
 
     // setters exposed for unit testing
@@ -251,39 +444,74 @@ public class JobProcessor extends AbstractComponentWithCatalog
         this.rServiUriSelector = rServiUriSelector;
     }
 
-    private AbstractResult<?> process(final AbstractJob job, final JobRunner jobRunner, final boolean direct)
-        throws Exception
+    void setRServiCircuitBreaker(final RServiCircuitBreaker rServiCircuitBreaker)
+    {
+        this.rServiCircuitBreaker = rServiCircuitBreaker;
+    }
+
+    private AbstractResult<?> process(final AbstractJob job,
+                                      final JobRunner jobRunner,
+                                      final boolean direct,
+                                      final boolean retryable) throws Exception
     {
-        AbstractResult<?> result = null;
         final long startTime = System.currentTimeMillis();
         final URI rserviPoolAddress = rServiUriSelector.getUriForApplication(job.getApplicationName());
 
-        // using instanceof of is not OO-friendly but defining pooling strategy is none of
-        // AbstractWorkItem business
-        final PoolingStrategy poolingStrategy = job instanceof AbstractFunctionCallJob
-                                                                                      ? PoolingStrategy.IF_POSSIBLE
-                                                                                      : PoolingStrategy.NEVER;
+        final PoolingStrategy poolingStrategy = getPoolingStrategy(job);
 
-        // don't catch RServi pool here so the error is propagated and the job can be
-        // retried
-        final RServi rServi = rServiInstanceProvider.getRServiInstance(rserviPoolAddress.toString(),
-            Constants.RSERVI_CLIENT_ID, poolingStrategy);
+        final JobPhaseTimer jobPhaseTimer = new JobPhaseTimer();
 
+        boolean successful = false;
+        rServiUriSelector.jobStarted(rserviPoolAddress);
         try
         {
-            result = jobRunner.runOn(rServi);
+            final RServi rServi;
+            try
+            {
+                rServi = borrowRServi(rserviPoolAddress, poolingStrategy);
+            }
+            catch (final Exception e)
+            {
+                // propagate the error so the job can be retried, unless it can not be redelivered
+                if (retryable)
+                {
+                    throw e;
+                }
+                return processBorrowFailure(job, direct, rserviPoolAddress, startTime, e);
+            }
 
-            final long processTime = System.currentTimeMillis() - startTime;
+            jobPhaseTimer.stop(JobPhase.RSERVI_BORROW);
 
-            jobStatisticsHandler.storeJobStatistics(job, new GregorianCalendar(), processTime,
-                rserviPoolAddress.toString());
+            final AbstractResult<?> result = process(job, jobRunner, direct, retryable, rServi, true,
+                rserviPoolAddress, startTime, jobPhaseTimer);
+            successful = (result != null) && (result.isSuccess());
+            return result;
+        }
+        finally
+        {
+            rServiUriSelector.jobCompleted(rserviPoolAddress, System.currentTimeMillis() - startTime,
+                successful);
+        }
+    }
 
-            if (getLogger().isInfoEnabled())
-            {
-                getLogger().info(
-                    String.format("Successfully processed %s %s for %s on %s in %dms", job.getType(),
-                        job.getJobId(), job.getApplicationName(), rserviPoolAddress, processTime));
-            }
+    private AbstractResult<?> process(final AbstractJob job,
+                                      final JobRunner jobRunner,
+                                      final boolean direct,
+                                      final boolean retryable,
+                                      final RServi rServi,
+                                      final boolean closeRServi,
+                                      final URI rserviPoolAddress,
+                                      final long startTime,
+                                      final JobPhaseTimer jobPhaseTimer) throws Exception
+    {
+        AbstractResult<?> result = null;
+        boolean success = false;
+        Exception retryableFailure = null;
+
+        try
+        {
+            result = jobRunner.runOn(rServi, jobPhaseTimer);
+            success = true;
         }
         // catch wide to prevent disrupting the main flow
         catch (final Throwable t)
@@ -293,39 +521,183 @@ public class JobProcessor extends AbstractComponentWithCatalog
                 ((ErrorableRServi) rServi).markError();
             }
 
+            // only failures to talk to RServi count against its pool, not errors raised by R
+            final boolean rServiFailure = ExceptionUtils.indexOfType(t, RemoteException.class) != -1;
+            if (rServiFailure)
+            {
+                rServiCircuitBreaker.recordFailure(rserviPoolAddress);
+            }
+
             final long processTime = System.currentTimeMillis() - startTime;
-            getLogger().error(
-                String.format("Failed to process %s %s for %s on %s in %dms", job.getType(), job.getJobId(),
-                    job.getApplicationName(), rserviPoolAddress, processTime), t);
-            result = job.buildErrorResult(t, getMessages());
+
+            // failures to talk to RServi are transient so the job is worth redelivering, whereas
+            // invalid jobs and errors raised by R would fail again and get an error result at once
+            if ((retryable) && (rServiFailure) && (t instanceof Exception))
+            {
+                getLogger().warn(
+                    String.format("Failed to process %s %s for %s on %s in %dms (%s), will retry", job.getType(),
+                        job.getJobId(), job.getApplicationName(), rserviPoolAddress, processTime, jobPhaseTimer),
+                    t);
+                retryableFailure = (Exception) t;
+            }
+            else
+            {
+                getLogger().error(
+                    String.format("Failed to process %s %s for %s on %s in %dms (%s)", job.getType(),
+                        job.getJobId(), job.getApplicationName(), rserviPoolAddress, processTime, jobPhaseTimer),
+                    t);
+                result = job.buildErrorResult(t, getMessages());
+            }
         }
         finally
         {
-            try
-            {
-                rServi.close();
-            }
-            catch (StatusException e)
+            if (closeRServi)
             {
-                getLogger().error(e.getMessage(), e);
+                closeQuietly(rServi);
             }
 
             try
             {
                 if ((!direct) && (result != null))
                 {
+                    jobPhaseTimer.start();
                     getMessageDispatcher().dispatch(result);
+                    jobPhaseTimer.stop(JobPhase.RESULT_DISPATCH);
                 }
             }
             finally
             {
-                job.destroy();
+                // the files of a job that is going to be redelivered must be kept
+                if (retryableFailure == null)
+                {
+                    destroyQuietly(job);
+                }
+            }
+        }
+
+        if (retryableFailure != null)
+        {
+            throw retryableFailure;
+        }
+
+        if (success)
+        {
+            rServiCircuitBreaker.recordSuccess(rserviPoolAddress);
+
+            final long processTime = System.currentTimeMillis() - startTime;
+
+            jobStatisticsHandler.storeJobStatistics(job, new GregorianCalendar(), processTime,
+                jobPhaseTimer.getMillisecondsSpentPerPhase(), rserviPoolAddress.toString());
+
+            if (getLogger().isInfoEnabled())
+            {
+                getLogger().info(
+                    String.format("Successfully processed %s %s for %s on %s in %dms (%s)", job.getType(),
+                        job.getJobId(), job.getApplicationName(), rserviPoolAddress, processTime,
+                        jobPhaseTimer));
             }
         }
 
         return result;
     }
 
+    private AbstractResult<?> processBorrowFailure(final AbstractJob job,
+                                                   final boolean direct,
+                                                   final URI rserviPoolAddress,
+                                                   final long startTime,
+                                                   final Exception e) throws Exception
+    {
+        getLogger().error(
+            String.format("Failed to borrow an RServi for %s %s for %s on %s in %dms", job.getType(),
+                job.getJobId(), job.getApplicationName(), rserviPoolAddress, System.currentTimeMillis()
+                                                                             - startTime), e);
+
+        try
+        {
+            final AbstractResult<?> result = job.buildErrorResult(e, getMessages());
+            if (!direct)
+            {
+                getMessageDispatcher().dispatch(result);
+            }
+            return result;
+        }
+        finally
+        {
+            destroyQuietly(job);
+        }
+    }
+
+    private RServi borrowRServi(final URI rserviPoolAddress, final PoolingStrategy poolingStrategy)
+        throws Exception
+    {
+        try
+        {
+            return rServiInstanceProvider.getRServiInstance(rserviPoolAddress.toString(),
+                Constants.RSERVI_CLIENT_ID, poolingStrategy);
+        }
+        catch (final Exception e)
+        {
+            rServiCircuitBreaker.recordFailure(rserviPoolAddress);
+            throw e;
+        }
+    }
+
+    private void destroyQuietly(final AbstractJob job)
+    {
+        // the job is done with, failing to clean it up must not get it redelivered
+        try
+        {
+            job.destroy();
+        }
+        catch (final RuntimeException re)
+        {
+            getLogger().error("Failed to destroy job: " + job, re);
+        }
+    }
+
+    private void closeQuietly(final RServi rServi)
+    {
+        try
+        {
+            rServi.close();
+        }
+        catch (final StatusException se)
+        {
+            getLogger().error(se.getMessage(), se);
+        }
+    }
+
+    private PoolingStrategy getPoolingStrategy(final AbstractJob job)
+    {
+        // using instanceof of is not OO-friendly but defining pooling strategy is none of
+        // AbstractWorkItem business
+        if (job instanceof AbstractFunctionCallJob)
+        {
+            return PoolingStrategy.IF_POSSIBLE;
+        }
+
+        // multi-files jobs leave files and objects behind them, hence the need for a workspace reset
+        // when pooled
+        return getConfiguration().isPooledMultiFilesJobs()
+                                                           ? PoolingStrategy.IF_POSSIBLE_WITH_RESET
+                                                           : PoolingStrategy.NEVER;
+    }
+
+    private JobRunner newFunctionCallJobRunner(final AbstractFunctionCallJob job)
+    {
+        return new JobRunner()
+        {
+            @Override
+            public AbstractResult<String> runOn(final RServi rServi, final JobPhaseTimer jobPhaseTimer)
+                throws StatusException, IOException
+            {
+                final String resultPayload = callFunctionOnR(rServi, job);
+                jobPhaseTimer.stop(JobPhase.R_EVALUATION);
+                return job.buildSuccessResult(resultPayload);
+            }
+        };
+    }
+
     private String callFunctionOnR(final RServi rServi, final AbstractFunctionCallJob job)
         throws StatusException
     {
@@ -347,6 +719,64 @@ public class JobProcessor extends AbstractComponentWithCatalog
         return result.getData().getChar(0);
     }
 
+    /**
+     * Restores the catalog files that are already cached on the RServi instance, removing them from
+     * the files to upload.
+     * 
+     * @return the content hashes of the catalog files that need caching, keyed by file name.
+     */
+    private static Map<String, String> restoreCachedCatalogFiles(final RServi rServi,
+                                                                 final Set<File> catalogFiles,
+                                                                 final Map<String, File> filesToUpload,
+                                                                 final Set<String> filesUploadedToR)
+        throws StatusException, IOException
+    {
+        if (!(rServi instanceof FileCachingRServi))
+        {
+            return Collections.emptyMap();
+        }
+
+        final FileCachingRServi fileCachingRServi = (FileCachingRServi) rServi;
+        final Map<String, String> catalogFilesToCache = new HashMap<String, String>();
+
+        for (final File catalogFile : catalogFiles)
+        {
+            final String fileName = catalogFile.getName();
+
+            // a job file with the same name supersedes the catalog file
+            if (!catalogFile.equals(filesToUpload.get(fileName)))
+            {
+                continue;
+            }
+
+            final String contentHash;
+            try(final FileInputStream fis = new FileInputStream(catalogFile)) {
+              contentHash = DigestUtils.sha1Hex(fis);
+            }
+
+            if (fileCachingRServi.restoreCachedFile(contentHash, fileName))
+            {
+                filesToUpload.remove(fileName);
+                filesUploadedToR.add(fileName);
+            }
+            else
+            {
+                catalogFilesToCache.put(fileName, contentHash);
+            }
+        }
+
+        return catalogFilesToCache;
+    }
+
+    private static void cacheCatalogFiles(final RServi rServi, final Map<String, String> catalogFilesToCache)
+        throws StatusException
+    {
+        for (final Entry<String, String> catalogFileToCache : catalogFilesToCache.entrySet())
+        {
+            ((FileCachingRServi) rServi).cacheFile(catalogFileToCache.getValue(), catalogFileToCache.getKey());
+        }
+    }
+
     private static void uploadFileToR(final RServi rServi, final File file, final Set<String> filesUploadedToR)
         throws StatusException, IOException
     {
@@ -357,9 +787,16 @@ public class JobProcessor extends AbstractComponentWithCatalog
     }
 
     private static void uploadPropertiesToR(final RServi rServi,
-                                            final Map<String, Serializable> metas,
+                                            final byte[] jobConfiguration,
                                             final Set<String> filesUploadedToR)
         throws StatusException, IOException
+    {
+        final ByteArrayInputStream bais = new ByteArrayInputStream(jobConfiguration);
+        rServi.uploadFile(bais, bais.available(), Constants.MULTIPLE_FILES_JOB_CONFIGURATION, 0, null);
+        filesUploadedToR.add(Constants.MULTIPLE_FILES_JOB_CONFIGURATION);
+    }
+
+    private static byte[] toJobConfiguration(final Map<String, Serializable> metas) throws IOException
     {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
         final Properties properties = new Properties();
@@ -368,9 +805,87 @@ public class JobProcessor extends AbstractComponentWithCatalog
             properties.setProperty(meta.getKey(), meta.getValue().toString());
         }
         properties.store(baos, null);
-        final ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-        rServi.uploadFile(bais, bais.available(), Constants.MULTIPLE_FILES_JOB_CONFIGURATION, 0, null);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Uploads files and the job configuration as a single Zip archive, which is then unpacked in
+     * the working directory of R and deleted.
+     */
+    private static void uploadArchiveToR(final RServi rServi,
+                                         final Collection<File> files,
+                                         final byte[] jobConfiguration,
+                                         final Set<String> filesUploadedToR)
+        throws StatusException, IOException
+    {
+        final File archiveFile = File.createTempFile("rsb_", "." + Constants.ZIP_MIME_TYPE.getSubType());
+
+        try
+        {
+            try(final ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archiveFile))) {
+              zos.setLevel(Deflater.BEST_SPEED);
+
+              for (final File file : files)
+              {
+                  zos.putNextEntry(new ZipEntry(file.getName()));
+                  try(final FileInputStream fis = new FileInputStream(file)) {
+                    IOUtils.copy(fis, zos);
+                  }
+                  zos.closeEntry();
+              }
+
+              zos.putNextEntry(new ZipEntry(Constants.MULTIPLE_FILES_JOB_CONFIGURATION));
+              zos.write(jobConfiguration);
+              zos.closeEntry();
+            }
+
+            try(final FileInputStream fis = new FileInputStream(archiveFile)) {
+              rServi.uploadFile(fis, archiveFile.length(), Constants.JOB_FILES_ARCHIVE, 0, null);
+            }
+        }
+        finally
+        {
+            FileUtils.deleteQuietly(archiveFile);
+        }
+
+        rServi.evalVoid(UNPACK_JOB_FILES_ARCHIVE_EXPRESSION, null);
+
+        for (final File file : files)
+        {
+            filesUploadedToR.add(file.getName());
+        }
         filesUploadedToR.add(Constants.MULTIPLE_FILES_JOB_CONFIGURATION);
+        filesUploadedToR.add(Constants.JOB_FILES_ARCHIVE);
+    }
+
+    /**
+     * Zips files in the working directory of R, which requires a zip command to be available to R.
+     * 
+     * @return true if the archive has been successfully created.
+     */
+    private boolean archiveResultFilesOnR(final RServi rServi, final Set<String> fileNames)
+    {
+        try
+        {
+            final FunctionCall zipCall = rServi.createFunctionCall("zip");
+            zipCall.addChar("zipfile", Constants.RESULT_FILES_ARCHIVE);
+            zipCall.add("files", new RVectorImpl<>(new RCharacter32Store(fileNames.toArray(new String[0]))));
+            zipCall.addChar("flags", "-rXq");
+            final RObject zipStatus = zipCall.evalData(null);
+
+            if ((zipStatus.getLength() == 1) && (zipStatus.getData().getInt(0) == 0))
+            {
+                return true;
+            }
+
+            getLogger().warn("Failed to zip result files on R, zip status: " + zipStatus);
+        }
+        catch (final StatusException se)
+        {
+            getLogger().warn("Failed to zip result files on R", se);
+        }
+
+        return false;
     }
 
     private static void executeScriptOnR(final RServi rServi, final String rScriptName) throws StatusException
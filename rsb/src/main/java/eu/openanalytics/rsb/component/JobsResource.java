@@ -36,6 +36,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.UUID;
 
+import javax.annotation.Resource;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -77,6 +78,15 @@ public class JobsResource extends AbstractResource
                           final GregorianCalendar submissionTime) throws IOException;
     }
 
+    @Resource
+    private JobAdmissionController jobAdmissionController;
+
+    // exposed for unit testing
+    void setJobAdmissionController(final JobAdmissionController jobAdmissionController)
+    {
+        this.jobAdmissionController = jobAdmissionController;
+    }
+
     /**
      * Handles a function call job with a JSON payload.
      * 
@@ -258,13 +268,36 @@ public class JobsResource extends AbstractResource
                                   final UriInfo uriInfo,
                                   final JobBuilder jobBuilder) throws IOException, URISyntaxException
     {
+        if (!Util.isValidApplicationName(applicationName))
+        {
+            throw new IllegalArgumentException("Invalid application name: " + applicationName);
+        }
 
         final UUID jobId = UUID.randomUUID();
-        final AbstractJob job = jobBuilder.build(applicationName, jobId,
-            (GregorianCalendar) GregorianCalendar.getInstance());
-        getMessageDispatcher().dispatch(job);
-        final JobToken jobToken = buildJobToken(uriInfo, httpHeaders, job);
-        return Response.status(Status.ACCEPTED).entity(jobToken).build();
+
+        // decide before building the job, which can be costly for file jobs
+        final long retryAfterSeconds = jobAdmissionController.admit(applicationName, getUserName(), jobId);
+        if (retryAfterSeconds > 0L)
+        {
+            return Response.status(Status.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds)
+                .build();
+        }
+
+        try
+        {
+            final AbstractJob job = jobBuilder.build(applicationName, jobId,
+                (GregorianCalendar) GregorianCalendar.getInstance());
+            getMessageDispatcher().dispatch(job);
+            jobAdmissionController.enqueued(jobId);
+            final JobToken jobToken = buildJobToken(uriInfo, httpHeaders, job);
+            return Response.status(Status.ACCEPTED).entity(jobToken).build();
+        }
+        catch (final IOException | RuntimeException e)
+        {
+            jobAdmissionController.release(jobId);
+            throw e;
+        }
     }
 
     private Map<String, Serializable> getJobMeta(final HttpHeaders httpHeaders)
@@ -54,12 +54,20 @@ public class RestResultProcessor extends AbstractComponent
     @Resource
     private SecureResultStore resultStore;
 
+    @Resource
+    private JobAdmissionController jobAdmissionController;
+
     // exposed for testing
     void setResultStore(final SecureResultStore resultStore)
     {
         this.resultStore = resultStore;
     }
 
+    void setJobAdmissionController(final JobAdmissionController jobAdmissionController)
+    {
+        this.jobAdmissionController = jobAdmissionController;
+    }
+
     public void process(final AbstractFunctionCallResult result) throws IOException
     {
         persistResult(result, result.getMimeType(), new ByteArrayInputStream(result.getPayload().getBytes()));
@@ -96,6 +104,7 @@ public class RestResultProcessor extends AbstractComponent
         };
 
         resultStore.store(persistedResult);
+        jobAdmissionController.release(result.getJobId());
         result.destroy();
     }
 }
@@ -24,18 +24,30 @@
 
 package eu.openanalytics.rsb.component;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Date;
 import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.annotation.Resource;
 import javax.ws.rs.GET;
 import javax.ws.rs.HEAD;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
@@ -43,6 +55,7 @@ import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.cxf.common.util.Base64Utility;
 import org.springframework.stereotype.Component;
 
@@ -62,6 +75,30 @@ import eu.openanalytics.rsb.data.SecureResultStore;
 @Path("/" + Constants.RESULT_PATH + "/{applicationName}/{resourceName}")
 public class ResultResource extends AbstractResource
 {
+    private static final String BYTES_RANGE_UNIT = "bytes";
+
+    private static final Pattern BYTE_RANGE_PATTERN = Pattern.compile("^\\s*bytes\\s*=\\s*(\\d*)\\s*-\\s*(\\d*)\\s*$");
+
+    /**
+     * A satisfiable range of bytes of a result, both ends included.
+     */
+    static final class ByteRange
+    {
+        final long first;
+        final long last;
+
+        ByteRange(final long first, final long last)
+        {
+            this.first = first;
+            this.last = last;
+        }
+
+        long getLength()
+        {
+            return last - first + 1L;
+        }
+    }
+
     @Resource
     private SecureResultStore resultStore;
 
@@ -72,29 +109,68 @@ public class ResultResource extends AbstractResource
     }
 
     /**
-     * Serves a single result file.
+     * Serves a single result file, or a single range of bytes of it, unless the conditions of the
+     * request are not met, like the file not having been modified since the client got it.
      * 
      * @param applicationName
      * @param resourceName
+     * @param range Optional HTTP range of bytes to serve: several ranges are not supported and lead
+     *            to serving the whole file.
+     * @param ifRange Optional entity tag the file must still have for the range to be served,
+     *            otherwise the whole file is served.
+     * @param request
      * @return
      * @throws IOException
      */
     @GET
     public Response getResult(@PathParam("applicationName") final String applicationName,
-                              @PathParam("resourceName") final String resourceName) throws IOException
+                              @PathParam("resourceName") final String resourceName,
+                              @HeaderParam(Constants.RANGE_HTTP_HEADER) final String range,
+                              @HeaderParam(Constants.IF_RANGE_HTTP_HEADER) final String ifRange,
+                              @Context final Request request) throws IOException
     {
 
         final PersistedResult persistedResult = getPersistedResultOrDie(applicationName, resourceName);
 
-        final ResponseBuilder rb = Response.ok();
+        final EntityTag entityTag = new EntityTag(getEtag(persistedResult));
+        final Date lastModified = getLastModified(persistedResult);
+
+        final Response unmetPreconditionsResponse = evaluatePreconditions(request, entityTag, lastModified);
+        if (unmetPreconditionsResponse != null)
+        {
+            return unmetPreconditionsResponse;
+        }
+
+        // dates are not supported in If-Range, as they are too coarse to be a strong validator
+        final String quotedEntityTag = "\"" + entityTag.getValue() + "\"";
+        final boolean rangeApplicable = (StringUtils.isNotBlank(range))
+                                        && ((StringUtils.isBlank(ifRange)) || (quotedEntityTag.equals(ifRange.trim())));
+
+        final ByteRange byteRange = rangeApplicable ? parseByteRange(range, persistedResult.getDataLength()) : null;
+
+        final ResponseBuilder rb;
+        if (byteRange == null)
+        {
+            rb = Response.ok();
+        }
+        else
+        {
+            rb = Response.status(Status.PARTIAL_CONTENT);
+            rb.header(Constants.CONTENT_RANGE_HTTP_HEADER, BYTES_RANGE_UNIT + " " + byteRange.first + "-"
+                                                           + byteRange.last + "/"
+                                                           + persistedResult.getDataLength());
+            rb.header(HttpHeaders.CONTENT_LENGTH, Long.toString(byteRange.getLength()));
+        }
+
+        addAcceptRangesHeader(rb);
         addContentTypeHeader(persistedResult, rb);
-        addEtagHeader(persistedResult, rb);
+        addValidatorHeaders(entityTag, lastModified, rb);
         rb.entity(new StreamingOutput()
         {
             public void write(final OutputStream output) throws IOException
             {
-                try(final InputStream data = persistedResult.getData(); final OutputStream autoCloseOutput = output) {
-                  IOUtils.copy(data, output);
+                try(final OutputStream autoCloseOutput = output) {
+                  writeData(persistedResult, byteRange, output);
                 }
             }
         });
@@ -102,27 +178,150 @@ public class ResultResource extends AbstractResource
     }
 
     /**
-     * Provides HTTP meta-information only for a single result file.
+     * Provides HTTP meta-information only for a single result file, unless the conditions of the
+     * request are not met.
      * 
      * @param applicationName
      * @param resourceName
+     * @param request
      * @return
      * @throws IOException
      */
     @HEAD
     public Response getResultMeta(@PathParam("applicationName") final String applicationName,
-                                  @PathParam("resourceName") final String resourceName) throws IOException
+                                  @PathParam("resourceName") final String resourceName,
+                                  @Context final Request request) throws IOException
     {
 
         final PersistedResult persistedResult = getPersistedResultOrDie(applicationName, resourceName);
 
+        final EntityTag entityTag = new EntityTag(getEtag(persistedResult));
+        final Date lastModified = getLastModified(persistedResult);
+
+        final Response unmetPreconditionsResponse = evaluatePreconditions(request, entityTag, lastModified);
+        if (unmetPreconditionsResponse != null)
+        {
+            return unmetPreconditionsResponse;
+        }
+
         final ResponseBuilder rb = Response.noContent();
+        addAcceptRangesHeader(rb);
         addContentLengthHeader(persistedResult, rb);
         addContentTypeHeader(persistedResult, rb);
-        addEtagHeader(persistedResult, rb);
+        addValidatorHeaders(entityTag, lastModified, rb);
         return rb.build();
     }
 
+    private static void writeData(final PersistedResult persistedResult,
+                                  final ByteRange byteRange,
+                                  final OutputStream output) throws IOException
+    {
+        final File dataFile = persistedResult.getDataFile();
+
+        if (dataFile == null)
+        {
+            try (final InputStream data = persistedResult.getData())
+            {
+                if (byteRange == null)
+                {
+                    IOUtils.copyLarge(data, output);
+                }
+                else
+                {
+                    IOUtils.copyLarge(data, output, byteRange.first, byteRange.getLength());
+                }
+            }
+            return;
+        }
+
+        // let the file channel move the bytes, which it does without copying them in the JVM heap
+        // if the output is backed by a channel
+        try (final FileInputStream fis = new FileInputStream(dataFile); final FileChannel fileChannel = fis.getChannel())
+        {
+            final WritableByteChannel outputChannel = (output instanceof WritableByteChannel)
+                ? (WritableByteChannel) output : Channels.newChannel(output);
+
+            long position = byteRange == null ? 0L : byteRange.first;
+            final long end = byteRange == null ? fileChannel.size() : byteRange.last + 1L;
+
+            while (position < end)
+            {
+                final long transferred = fileChannel.transferTo(position, end - position, outputChannel);
+                if (transferred < 1L)
+                {
+                    // the file has been truncated in the meantime
+                    break;
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    /**
+     * Parses a single HTTP range of bytes.
+     * 
+     * @return null if the range is malformed or made of several ranges, in which case the whole
+     *         data must be served.
+     * @throws WebApplicationException with a 416 status if the range can not be satisfied.
+     */
+    static ByteRange parseByteRange(final String range, final long dataLength)
+    {
+        final Matcher matcher = BYTE_RANGE_PATTERN.matcher(range);
+        if (!matcher.matches())
+        {
+            return null;
+        }
+
+        final String firstBytePosition = matcher.group(1);
+        final String lastBytePosition = matcher.group(2);
+        long first;
+        long last;
+
+        try
+        {
+            if (firstBytePosition.isEmpty())
+            {
+                if (lastBytePosition.isEmpty())
+                {
+                    return null;
+                }
+
+                // suffix range, ie. the last bytes of the data
+                first = Math.max(0L, dataLength - Long.parseLong(lastBytePosition));
+                last = dataLength - 1L;
+            }
+            else
+            {
+                first = Long.parseLong(firstBytePosition);
+                last = lastBytePosition.isEmpty() ? dataLength - 1L : Long.parseLong(lastBytePosition);
+
+                if (last < first)
+                {
+                    return null;
+                }
+                last = Math.min(last, dataLength - 1L);
+            }
+        }
+        catch (final NumberFormatException nfe)
+        {
+            return null;
+        }
+
+        if (first > last)
+        {
+            throw new WebApplicationException(Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(Constants.CONTENT_RANGE_HTTP_HEADER, BYTES_RANGE_UNIT + " */" + dataLength)
+                .build());
+        }
+
+        return new ByteRange(first, last);
+    }
+
+    private void addAcceptRangesHeader(final ResponseBuilder rb)
+    {
+        rb.header(Constants.ACCEPT_RANGES_HTTP_HEADER, BYTES_RANGE_UNIT);
+    }
+
     private void addContentTypeHeader(final PersistedResult persistedResult, final ResponseBuilder rb)
     {
         String contentType = "application/octet-stream";
@@ -133,9 +332,22 @@ public class ResultResource extends AbstractResource
         rb.header(HttpHeaders.CONTENT_TYPE, contentType);
     }
     
-    private void addEtagHeader(final PersistedResult persistedResult, final ResponseBuilder rb)
+    /**
+     * @return a response if the conditions of the request are not met, like a 304 if the result
+     *         has not been modified, otherwise null.
+     */
+    private static Response evaluatePreconditions(final Request request,
+                                                  final EntityTag entityTag,
+                                                  final Date lastModified)
     {
-        rb.header(HttpHeaders.ETAG, getEtag(persistedResult));
+        final ResponseBuilder rb = request.evaluatePreconditions(lastModified, entityTag);
+        return rb == null ? null : rb.tag(entityTag).lastModified(lastModified).build();
+    }
+
+    private void addValidatorHeaders(final EntityTag entityTag, final Date lastModified, final ResponseBuilder rb)
+    {
+        rb.tag(entityTag);
+        rb.lastModified(lastModified);
     }
 
     private void addContentLengthHeader(final PersistedResult persistedResult, final ResponseBuilder rb)
@@ -165,8 +377,24 @@ public class ResultResource extends AbstractResource
     }
 
     // exposed for unit testing
-    static String getEtag(final PersistedResult persistedResult)
+    static String getEtag(final PersistedResult persistedResult) throws IOException
+    {
+        // the size and modification time make the tag change if the result is rewritten
+        return Base64Utility.encode((persistedResult.getApplicationName() + "/" + persistedResult.getJobId()
+                                     + "/" + persistedResult.getDataLength() + "/" + getLastModifiedMillis(persistedResult)).getBytes());
+    }
+
+    private static Date getLastModified(final PersistedResult persistedResult)
+    {
+        // HTTP dates have a precision of one second
+        return new Date(getLastModifiedMillis(persistedResult) / 1000L * 1000L);
+    }
+
+    private static long getLastModifiedMillis(final PersistedResult persistedResult)
     {
-        return Base64Utility.encode((persistedResult.getApplicationName() + "/" + persistedResult.getJobId()).getBytes());
+        // the file is checked rather than the result time, which may have been taken before the
+        // file was rewritten
+        final File dataFile = persistedResult.getDataFile();
+        return dataFile != null ? dataFile.lastModified() : persistedResult.getResultTime().getTimeInMillis();
     }
 }
@@ -0,0 +1,155 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+
+package eu.openanalytics.rsb.component;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Resource;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import eu.openanalytics.rsb.config.Configuration.ResultRetentionConfiguration;
+import eu.openanalytics.rsb.data.ExpiringResultStore;
+import eu.openanalytics.rsb.data.IndexedResultStore;
+import eu.openanalytics.rsb.data.ReclaimedSpace;
+import eu.openanalytics.rsb.data.SecureResultStore;
+
+/**
+ * Periodically deletes the results that break the retention rules of their application. Each
+ * sweep deletes a bounded number of results, so a backlog of expired results is worked down over
+ * several sweeps instead of holding the result store for long. Also periodically refreshes the index
+ * of the result store, so the results other nodes store or delete are revealed without listing
+ * result directories while serving requests.
+ * 
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component("resultRetentionSweeper")
+public class ResultRetentionSweeper extends AbstractComponent
+{
+    private static final long SWEEP_PERIOD = 60000L;
+
+    private static final long INDEX_REFRESH_PERIOD = 30000L;
+
+    static final int MAXIMUM_DELETIONS_PER_SWEEP = 1000;
+
+    @Resource
+    private SecureResultStore resultStore;
+
+    private final AtomicLong reclaimedFiles = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+
+    // exposed for unit testing
+    void setResultStore(final SecureResultStore resultStore)
+    {
+        this.resultStore = resultStore;
+    }
+
+    /**
+     * @return the number of result files deleted since startup.
+     */
+    public long getReclaimedFiles()
+    {
+        return reclaimedFiles.get();
+    }
+
+    /**
+     * @return the number of bytes of result files deleted since startup.
+     */
+    public long getReclaimedBytes()
+    {
+        return reclaimedBytes.get();
+    }
+
+    @Scheduled(fixedDelay = INDEX_REFRESH_PERIOD)
+    public void refreshResultIndexes()
+    {
+        if (!(resultStore instanceof IndexedResultStore))
+        {
+            return;
+        }
+
+        try
+        {
+            ((IndexedResultStore) resultStore).refreshIndexes();
+        }
+        catch (final Exception e)
+        {
+            getLogger().error("Failed to refresh the result indexes", e);
+        }
+    }
+
+    @Scheduled(fixedDelay = SWEEP_PERIOD)
+    public void sweepExpiredResults()
+    {
+        final Map<String, ResultRetentionConfiguration> applicationResultRetentionConfiguration = getConfiguration().getApplicationResultRetentionConfiguration();
+        if ((applicationResultRetentionConfiguration == null) || (applicationResultRetentionConfiguration.isEmpty()))
+        {
+            return;
+        }
+
+        if (!(resultStore instanceof ExpiringResultStore))
+        {
+            getLogger().warn("Result retention rules are configured but not supported by: " + resultStore);
+            return;
+        }
+
+        int remainingDeletions = MAXIMUM_DELETIONS_PER_SWEEP;
+
+        for (final Entry<String, ResultRetentionConfiguration> applicationResultRetention : applicationResultRetentionConfiguration.entrySet())
+        {
+            if (remainingDeletions < 1)
+            {
+                return;
+            }
+
+            final String applicationName = applicationResultRetention.getKey();
+
+            try
+            {
+                final ReclaimedSpace reclaimedSpace = ((ExpiringResultStore) resultStore).deleteExpiredResults(
+                    applicationName, applicationResultRetention.getValue(), remainingDeletions);
+
+                if (reclaimedSpace.getFiles() > 0)
+                {
+                    remainingDeletions -= reclaimedSpace.getFiles();
+                    reclaimedFiles.addAndGet(reclaimedSpace.getFiles());
+                    reclaimedBytes.addAndGet(reclaimedSpace.getBytes());
+
+                    getLogger().info(
+                        String.format("Reclaimed %s of expired results of %s (%d files, %d bytes since startup)",
+                            reclaimedSpace, applicationName, reclaimedFiles.get(), reclaimedBytes.get()));
+                }
+            }
+            catch (final Exception e)
+            {
+                getLogger().error("Failed to delete the expired results of: " + applicationName, e);
+            }
+        }
+    }
+}
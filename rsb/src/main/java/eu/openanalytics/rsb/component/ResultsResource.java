@@ -27,6 +27,8 @@ package eu.openanalytics.rsb.component;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Calendar;
+import java.util.List;
 import java.util.UUID;
 
 import javax.annotation.Resource;
@@ -36,11 +38,13 @@ import javax.ws.rs.NotFoundException;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
+import javax.xml.bind.DatatypeConverter;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
@@ -48,6 +52,7 @@ import org.springframework.stereotype.Component;
 import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.Util;
 import eu.openanalytics.rsb.data.PersistedResult;
+import eu.openanalytics.rsb.data.ResultCursor;
 import eu.openanalytics.rsb.data.SecureResultStore;
 import eu.openanalytics.rsb.rest.types.Result;
 import eu.openanalytics.rsb.rest.types.Results;
@@ -71,22 +76,53 @@ public class ResultsResource extends AbstractResource
         this.resultStore = resultStore;
     }
 
+    /**
+     * Lists the results of an application, from the most recent to the oldest, optionally one page
+     * at a time.
+     *
+     * @param since Only lists the results more recent than this ISO-8601 date time, if provided.
+     * @param cursor Only lists the results after this cursor, which is the next cursor of the
+     *            previous page, if provided.
+     * @param limit Maximum number of results to list, if provided: the next cursor is set if more
+     *            results are available.
+     */
     @GET
     public Results getAllResults(@PathParam("applicationName") final String applicationName,
+                                 @QueryParam("since") final String since,
+                                 @QueryParam("cursor") final String cursor,
+                                 @QueryParam("limit") final Integer limit,
                                  @Context final HttpHeaders httpHeaders,
                                  @Context final UriInfo uriInfo) throws URISyntaxException
     {
         validateApplicationName(applicationName);
 
+        if ((limit != null) && (limit < 1))
+        {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+
+        final Calendar sinceTime = StringUtils.isBlank(since) ? null : parseDateTime(since);
+        final ResultCursor resultCursor = StringUtils.isBlank(cursor) ? null : ResultCursor.valueOf(cursor);
+        final int pageSize = limit == null ? Integer.MAX_VALUE - 1 : Math.min(limit, Integer.MAX_VALUE - 1);
+
+        // one more result is found to know if there is a next page
+        final List<PersistedResult> persistedResults = resultStore.findByApplicationName(applicationName,
+            getUserName(), sinceTime, resultCursor, pageSize + 1);
+
         final Results results = Util.REST_OBJECT_FACTORY.createResults();
 
-        for (final PersistedResult persistedResult : resultStore.findByApplicationName(applicationName,
-            getUserName()))
+        for (final PersistedResult persistedResult : persistedResults.subList(0,
+            Math.min(pageSize, persistedResults.size())))
         {
             final Result result = buildResult(applicationName, httpHeaders, uriInfo, persistedResult);
             results.getContents().add(result);
         }
 
+        if (persistedResults.size() > pageSize)
+        {
+            results.setNextCursor(new ResultCursor(persistedResults.get(pageSize - 1)).toString());
+        }
+
         return results;
     }
 
@@ -165,6 +201,18 @@ public class ResultsResource extends AbstractResource
         }
     }
 
+    private static Calendar parseDateTime(final String dateTime)
+    {
+        try
+        {
+            return DatatypeConverter.parseDateTime(dateTime);
+        }
+        catch (final IllegalArgumentException iae)
+        {
+            throw new IllegalArgumentException("Invalid date time: " + dateTime, iae);
+        }
+    }
+
     private void validateJobId(final String jobId)
     {
         if (StringUtils.isEmpty(jobId))
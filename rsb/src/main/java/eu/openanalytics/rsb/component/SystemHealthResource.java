@@ -29,12 +29,22 @@ import java.lang.management.OperatingSystemMXBean;
 import java.lang.management.RuntimeMXBean;
 import java.net.URI;
 import java.rmi.ConnectException;
+import java.util.GregorianCalendar;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import javax.servlet.ServletContext;
 import javax.ws.rs.GET;
@@ -53,11 +63,15 @@ import org.springframework.stereotype.Component;
 import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.Util;
 import eu.openanalytics.rsb.rest.types.NodeInformation;
+import eu.openanalytics.rsb.rest.types.RServiPoolHealthType;
+import eu.openanalytics.rsb.rest.types.RServiPoolsHealth;
+import eu.openanalytics.rsb.rservi.RServiCircuitBreaker;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider.PoolingStrategy;
 
 /**
- * Handles health check requests.
+ * Handles health check requests. The RServi pools are checked in the background, each check
+ * recording its own outcome, so the scheduler thread never waits for an RMI call that may hang.
  * 
  * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
  */
@@ -67,11 +81,45 @@ public class SystemHealthResource extends AbstractResource
 {
     private static final long CHECK_DELAY = 60000L;
 
+    private static final long URI_CHECK_TIMEOUT = 20000L;
+
+    private static final class RServiPoolHealth
+    {
+        private final boolean healthy;
+        private final GregorianCalendar checkTime = (GregorianCalendar) GregorianCalendar.getInstance();
+
+        RServiPoolHealth(final boolean healthy)
+        {
+            this.healthy = healthy;
+        }
+
+        boolean isHealthy()
+        {
+            return healthy;
+        }
+
+        GregorianCalendar getCheckTime()
+        {
+            return checkTime;
+        }
+    }
+
     @Resource
     private RServiInstanceProvider rServiInstanceProvider;
 
+    @Resource
+    private RServiCircuitBreaker rServiCircuitBreaker;
+
     private final AtomicBoolean nodeHealthy = new AtomicBoolean(true);
 
+    private final ConcurrentMap<URI, RServiPoolHealth> rServiPoolsHealth = new ConcurrentSkipListMap<URI, RServiPoolHealth>();
+
+    // grown to one thread per checked URI, RMI calls being impossible to interrupt
+    private final ThreadPoolExecutor healthCheckExecutor = new ThreadPoolExecutor(1, 1, 0L,
+        TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), Util.newDaemonThreadFactory("rsb-health-check-"));
+
+    private final ConcurrentMap<URI, Future<?>> runningChecks = new ConcurrentHashMap<URI, Future<?>>();
+
     private long initializationTime;
 
     // exposed for unit testing
@@ -80,6 +128,16 @@ public class SystemHealthResource extends AbstractResource
         this.rServiInstanceProvider = rServiInstanceProvider;
     }
 
+    void setRServiCircuitBreaker(final RServiCircuitBreaker rServiCircuitBreaker)
+    {
+        this.rServiCircuitBreaker = rServiCircuitBreaker;
+    }
+
+    Future<?> getRunningCheck(final URI rServiUri)
+    {
+        return runningChecks.get(rServiUri);
+    }
+
     @PostConstruct
     public void initialize()
     {
@@ -98,9 +156,9 @@ public class SystemHealthResource extends AbstractResource
 
         try
         {
+            // the checks update the node health once done
             verifyRServiConnectivity();
             // LATER consider other tests
-            nodeHealthy.set(true);
         }
         catch (final Exception e)
         {
@@ -114,9 +172,15 @@ public class SystemHealthResource extends AbstractResource
     @Produces({Constants.TEXT_CONTENT_TYPE})
     public Response check()
     {
-        return nodeHealthy.get() ? Response.ok("OK").build() : Response.status(Status.INTERNAL_SERVER_ERROR)
-            .entity("ERROR")
-            .build();
+        if (!nodeHealthy.get())
+        {
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity("ERROR").build();
+        }
+
+        // not ready to take traffic until the RServi pool has been warmed up
+        return rServiInstanceProvider.isWarmingUp() ? Response.status(Status.SERVICE_UNAVAILABLE)
+            .entity("WARMING")
+            .build() : Response.ok("OK").build();
     }
 
     @GET
@@ -146,7 +210,33 @@ public class SystemHealthResource extends AbstractResource
         return info;
     }
 
-    private void verifyRServiConnectivity() throws Exception
+    @GET
+    @Path("/health")
+    @Produces({Constants.RSB_XML_CONTENT_TYPE, Constants.RSB_JSON_CONTENT_TYPE})
+    public RServiPoolsHealth getHealth()
+    {
+        final RServiPoolsHealth result = Util.REST_OBJECT_FACTORY.createRServiPoolsHealth();
+        result.setHealthy(nodeHealthy.get());
+
+        for (final Entry<URI, RServiPoolHealth> rServiPoolHealth : rServiPoolsHealth.entrySet())
+        {
+            final RServiPoolHealthType poolHealth = Util.REST_OBJECT_FACTORY.createRServiPoolHealthType();
+            poolHealth.setPoolUri(rServiPoolHealth.getKey().toString());
+            poolHealth.setHealthy(rServiPoolHealth.getValue().isHealthy());
+            poolHealth.setCheckTime(Util.convertToXmlDate(rServiPoolHealth.getValue().getCheckTime()));
+            result.getContents().add(poolHealth);
+        }
+
+        return result;
+    }
+
+    @PreDestroy
+    public void destroy()
+    {
+        healthCheckExecutor.shutdownNow();
+    }
+
+    private void verifyRServiConnectivity()
     {
         // check default pool
         final Set<URI> urisToCheck = new TreeSet<URI>();
@@ -162,10 +252,77 @@ public class SystemHealthResource extends AbstractResource
             }
         }
 
-        // stopping at first failure
+        if (healthCheckExecutor.getMaximumPoolSize() < urisToCheck.size())
+        {
+            healthCheckExecutor.setMaximumPoolSize(urisToCheck.size());
+            healthCheckExecutor.setCorePoolSize(urisToCheck.size());
+        }
+
+        // check all the pools concurrently, each check recording its own outcome
         for (final URI uriToCheck : urisToCheck)
         {
-            verifyRServiConnectivity(uriToCheck);
+            final Future<?> runningCheck = runningChecks.get(uriToCheck);
+            if ((runningCheck != null) && (!runningCheck.isDone()))
+            {
+                // still hanging since the last time, way beyond the check timeout
+                recordRServiPoolHealth(uriToCheck, new ConnectException(
+                    "Timed out verifying RServi connectivity at URI: " + uriToCheck));
+                continue;
+            }
+
+            runningChecks.put(uriToCheck, healthCheckExecutor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    checkRServiConnectivity(uriToCheck);
+                }
+            }));
+        }
+    }
+
+    private void checkRServiConnectivity(final URI rServiUri)
+    {
+        final long startTime = System.currentTimeMillis();
+
+        try
+        {
+            verifyRServiConnectivity(rServiUri);
+
+            recordRServiPoolHealth(rServiUri,
+                System.currentTimeMillis() - startTime > URI_CHECK_TIMEOUT ? new ConnectException(
+                    "Timed out verifying RServi connectivity at URI: " + rServiUri) : null);
+        }
+        catch (final Exception e)
+        {
+            recordRServiPoolHealth(rServiUri, e);
+        }
+    }
+
+    /**
+     * Records the outcome of the check of an RServi pool, which is healthy if the check did not fail,
+     * and updates the node health accordingly.
+     */
+    private void recordRServiPoolHealth(final URI rServiUri, final Exception failure)
+    {
+        final boolean healthy = failure == null;
+        if (!healthy)
+        {
+            getLogger().error("Failed to verify RServi connectivity at URI: " + rServiUri, failure);
+        }
+
+        rServiPoolsHealth.put(rServiUri, new RServiPoolHealth(healthy));
+        rServiCircuitBreaker.recordHealthCheck(rServiUri, healthy);
+
+        boolean allRServiPoolsHealthy = true;
+        for (final RServiPoolHealth rServiPoolHealth : rServiPoolsHealth.values())
+        {
+            allRServiPoolsHealthy &= rServiPoolHealth.isHealthy();
+        }
+
+        if ((nodeHealthy.getAndSet(allRServiPoolsHealthy)) && (!allRServiPoolsHealthy))
+        {
+            getLogger().error("RSB is in bad health!");
         }
     }
 
@@ -193,7 +193,27 @@ public interface Configuration
                 config.setTestOnReturn(false);
             }
         },
-        ADAPTIVE, FULL;
+        ADAPTIVE, FULL,
+        /**
+         * Fully validates idle instances from the pool evictor thread instead of on borrow and
+         * return, instances in error being discarded when returned.
+         */
+        BACKGROUND
+        {
+            @Override
+            public void configurePool(final RServiPoolConfig config)
+            {
+                config.setTestOnBorrow(false);
+                config.setTestOnReturn(false);
+                config.setTestWhileIdle(true);
+
+                if (config.getTimeBetweenEvictionRunsMillis() <= 0L)
+                {
+                    // the evictor must run for idle instances to be validated
+                    config.setTimeBetweenEvictionRunsMillis(30000L);
+                }
+            }
+        };
 
         public void configurePool(final RServiPoolConfig config)
         {
@@ -202,6 +222,42 @@ public interface Configuration
         }
     };
 
+    public static enum RServiUriSelectionStrategy
+    {
+        /**
+         * Cycles through the RServi pool URIs of an application.
+         */
+        CIRCULAR,
+        /**
+         * Selects the RServi pool URI of an application that has the fewest jobs in flight,
+         * weighted by its recent job latency.
+         */
+        LEAST_OUTSTANDING
+    };
+
+    /**
+     * Retention rules of the results of an application, which apply to the results of each user
+     * separately, the results of anonymous users being considered the results of a single user.
+     * Each rule is disabled when lower than 1.
+     */
+    public interface ResultRetentionConfiguration extends Serializable
+    {
+        /**
+         * Maximum age of a result (in milliseconds).
+         */
+        long getMaximumAge();
+
+        /**
+         * Maximum number of results kept per user, the oldest ones being deleted first.
+         */
+        int getMaximumResultsPerUser();
+
+        /**
+         * Maximum size of the results kept per user (in bytes), the oldest ones being deleted first.
+         */
+        long getMaximumBytesPerUser();
+    }
+
     public interface AdminSecurityAuthorization extends Serializable
     {
         Set<String> getAdminPrincipals();
@@ -261,9 +317,9 @@ public interface Configuration
     int getJobTimeOut();
 
     /**
-     * Number of concurrent job workers per queue, which must be computed based on the number of
-     * nodes in the RServi pool and the number of job queues (one global plus one per "boosted"
-     * application).
+     * Number of concurrent job workers of the node, which all the applications share and which must
+     * be computed based on the number of nodes in the RServi pool. When adaptive job capacity is
+     * enabled, this is only the initial number of job workers.
      */
     int getNumberOfConcurrentJobWorkersPerQueue();
 
@@ -345,4 +401,107 @@ public interface Configuration
      * Optionally propagate the security context to RServi calls.
      */
     boolean isPropagateSecurityContext();
+
+    /**
+     * Optionally use pooled RServi instances for multi-files jobs, whose workspace is reset before
+     * being returned to the pool.
+     */
+    boolean isPooledMultiFilesJobs();
+
+    /**
+     * Optionally upload the files of multi-files jobs to R as a single archive, which is unpacked
+     * in the R working directory, instead of uploading them one by one.
+     */
+    boolean isArchivedJobFilesUpload();
+
+    /**
+     * Optionally have R zip the result files of multi-files jobs whose results are delivered zipped,
+     * and download this single archive instead of downloading the result files one by one.
+     */
+    boolean isArchivedResultFilesDownload();
+
+    /**
+     * Maximum number of pending function call jobs of the same application and type that a job worker
+     * processes back-to-back on a single RServi instance. Batching is disabled when lower than 2.
+     */
+    int getFunctionCallJobsBatchSize();
+
+    /**
+     * Optional strategy for selecting the RServi pool URI of a job, defaults to circular selection.
+     */
+    RServiUriSelectionStrategy getRServiUriSelectionStrategy();
+
+    /**
+     * Number of consecutive failures to borrow or talk to an RServi instance after which its pool URI
+     * is taken out of selection, until a background probe succeeds. Disabled when lower than 1.
+     */
+    int getCircuitBreakerFailureThreshold();
+
+    /**
+     * Lower bound of the number of job workers when adaptive sizing is enabled. The RServi client
+     * pool is sized along, so each of its keys can have as many instances as there are job workers.
+     */
+    int getAdaptiveJobWorkersMinimum();
+
+    /**
+     * Upper bound of the number of job workers, which enables their adaptive sizing, driven by the
+     * depth of the job queues and the recent job latency, when greater than zero. The RServi client
+     * pool is sized along, so each of its keys can have as many instances as there are job workers.
+     */
+    int getAdaptiveJobWorkersMaximum();
+
+    /**
+     * Optional shared directory where the files of multi-files jobs and results are checked in when
+     * they are dispatched, so they can be processed on another node than the one they were created
+     * on. Processed files are kept for another hour, so redelivered messages can still claim them.
+     * If null, these files stay on the node that created them.
+     */
+    File getClaimCheckDirectory();
+
+    /**
+     * Optional URI on which the embedded ActiveMQ broker accepts connections from the brokers of
+     * other RSB nodes, for example: tcp://0.0.0.0:61616
+     */
+    URI getActiveMqTransportConnectorUri();
+
+    /**
+     * Optional URI of the brokers the embedded ActiveMQ broker forwards pending asynchronous jobs
+     * to when they have idle job workers, for example: static:(tcp://node2:61616,tcp://node3:61616) or
+     * multicast://default. Use the URI of a shared external broker along with a duplex network to have
+     * nodes exchange jobs through it.
+     */
+    URI getActiveMqNetworkConnectorUri();
+
+    /**
+     * Should the network connection to other brokers be duplex, which is needed when connecting
+     * through a shared external broker.
+     */
+    boolean isActiveMqNetworkDuplex();
+
+    /**
+     * Optional mapping of application names and weights of their share of the job workers, the
+     * applications not mapped weighing 1. An application can only use more than its share of the job
+     * workers when no other application has jobs waiting for one. Mapped applications listen for jobs
+     * even before any is queued on the node.
+     */
+    Map<String, Integer> getApplicationJobWorkerWeights();
+
+    /**
+     * Maximum number of jobs pending in the queue of an application above which new REST jobs for this
+     * application are rejected, until the backlog has been worked down. Jobs admitted but still being
+     * submitted count as pending. Disabled when lower than 1.
+     */
+    int getJobAdmissionMaximumPendingJobsPerApplication();
+
+    /**
+     * Maximum number of REST jobs a user can have submitted to this node and not got the result of yet,
+     * above which new REST jobs of this user are rejected. Disabled when lower than 1.
+     */
+    int getJobAdmissionMaximumInFlightJobsPerUser();
+
+    /**
+     * Optional mapping of application names and retention rules of their results, which are
+     * enforced in the background. If null, results are kept until they are deleted by their users.
+     */
+    Map<String, ResultRetentionConfiguration> getApplicationResultRetentionConfiguration();
 }
@@ -49,6 +49,7 @@ import eu.openanalytics.rsb.config.Configuration.CatalogSection;
 import eu.openanalytics.rsb.config.Configuration.DepositDirectoryConfiguration;
 import eu.openanalytics.rsb.config.Configuration.DepositEmailConfiguration;
 import eu.openanalytics.rsb.config.Configuration.JmxConfiguration;
+import eu.openanalytics.rsb.config.Configuration.ResultRetentionConfiguration;
 import eu.openanalytics.rsb.data.FileCatalogManager;
 
 /**
@@ -236,6 +237,36 @@ public abstract class ConfigurationFactory
             }
         }
 
+        if (pca.getApplicationJobWorkerWeights() != null)
+        {
+            for (final Entry<String, Integer> applicationJobWorkerWeight : pca.getApplicationJobWorkerWeights()
+                .entrySet())
+            {
+                // the names end up in JMS selectors and destinations
+                validateIsTrue(Util.isValidApplicationName(applicationJobWorkerWeight.getKey()),
+                    "invalid job worker weight application name: " + applicationJobWorkerWeight.getKey(),
+                    validationErrors);
+                final Integer weight = applicationJobWorkerWeight.getValue();
+                validateIsTrue((weight != null) && (weight > 0), "invalid job worker weight for application: "
+                                                                  + applicationJobWorkerWeight.getKey(),
+                    validationErrors);
+            }
+        }
+
+        if (pca.getApplicationResultRetentionConfiguration() != null)
+        {
+            for (final Entry<String, ResultRetentionConfiguration> applicationResultRetentionConfiguration : pca.getApplicationResultRetentionConfiguration()
+                .entrySet())
+            {
+                validateIsTrue(Util.isValidApplicationName(applicationResultRetentionConfiguration.getKey()),
+                    "invalid result retention application name: " + applicationResultRetentionConfiguration.getKey(),
+                    validationErrors);
+                validateIsTrue(applicationResultRetentionConfiguration.getValue() != null,
+                    "missing result retention rules for application: "
+                                    + applicationResultRetentionConfiguration.getKey(), validationErrors);
+            }
+        }
+
         if (pca.getJmxConfiguration() != null)
         {
             final JmxConfiguration jmxConfiguration = pca.getJmxConfiguration();
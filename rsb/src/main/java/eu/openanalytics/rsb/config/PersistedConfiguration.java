@@ -37,7 +37,9 @@ import eu.openanalytics.rsb.config.Configuration.DepositDirectoryConfiguration;
 import eu.openanalytics.rsb.config.Configuration.DepositEmailConfiguration;
 import eu.openanalytics.rsb.config.Configuration.JmxConfiguration;
 import eu.openanalytics.rsb.config.Configuration.JobStatisticsHandlerConfiguration;
+import eu.openanalytics.rsb.config.Configuration.ResultRetentionConfiguration;
 import eu.openanalytics.rsb.config.Configuration.RServiClientPoolValidationStrategy;
+import eu.openanalytics.rsb.config.Configuration.RServiUriSelectionStrategy;
 import eu.openanalytics.rsb.config.Configuration.SmtpConfiguration;
 
 /**
@@ -471,6 +473,53 @@ public class PersistedConfiguration
         }
     }
 
+    public static class PersistedResultRetentionConfiguration implements ResultRetentionConfiguration
+    {
+        private static final long serialVersionUID = 1L;
+        private long maximumAge;
+        private int maximumResultsPerUser;
+        private long maximumBytesPerUser;
+
+        @Override
+        public String toString()
+        {
+            return ToStringBuilder.reflectionToString(this, ToStringStyle.SHORT_PREFIX_STYLE);
+        }
+
+        @Override
+        public long getMaximumAge()
+        {
+            return maximumAge;
+        }
+
+        public void setMaximumAge(final long maximumAge)
+        {
+            this.maximumAge = maximumAge;
+        }
+
+        @Override
+        public int getMaximumResultsPerUser()
+        {
+            return maximumResultsPerUser;
+        }
+
+        public void setMaximumResultsPerUser(final int maximumResultsPerUser)
+        {
+            this.maximumResultsPerUser = maximumResultsPerUser;
+        }
+
+        @Override
+        public long getMaximumBytesPerUser()
+        {
+            return maximumBytesPerUser;
+        }
+
+        public void setMaximumBytesPerUser(final long maximumBytesPerUser)
+        {
+            this.maximumBytesPerUser = maximumBytesPerUser;
+        }
+    }
+
     private String nodeName;
     private File activeMqWorkDirectory;
     private URI defaultRserviPoolUri;
@@ -493,6 +542,22 @@ public class PersistedConfiguration
     private PersistedAdminSecurityAuthorization rsbSecurityConfiguration;
     private boolean applicationAwareCatalog;
     private boolean propagateSecurityContext;
+    private boolean pooledMultiFilesJobs;
+    private boolean archivedJobFilesUpload;
+    private boolean archivedResultFilesDownload;
+    private int functionCallJobsBatchSize;
+    private RServiUriSelectionStrategy rServiUriSelectionStrategy;
+    private int circuitBreakerFailureThreshold;
+    private int adaptiveJobWorkersMinimum;
+    private int adaptiveJobWorkersMaximum;
+    private File claimCheckDirectory;
+    private URI activeMqTransportConnectorUri;
+    private URI activeMqNetworkConnectorUri;
+    private boolean activeMqNetworkDuplex;
+    private Map<String, Integer> applicationJobWorkerWeights;
+    private int jobAdmissionMaximumPendingJobsPerApplication;
+    private int jobAdmissionMaximumInFlightJobsPerUser;
+    private Map<String, PersistedResultRetentionConfiguration> applicationResultRetentionConfiguration;
 
     public PersistedConfiguration()
     {
@@ -524,6 +589,22 @@ public class PersistedConfiguration
         setrServiClientPoolConfig(configuration.getRServiClientPoolConfig());
         setrServiClientPoolValidationStrategy(configuration.getRServiClientPoolValidationStrategy());
         setSmtpConfiguration((PersistedSmtpConfiguration) configuration.getSmtpConfiguration());
+        setPooledMultiFilesJobs(configuration.isPooledMultiFilesJobs());
+        setArchivedJobFilesUpload(configuration.isArchivedJobFilesUpload());
+        setArchivedResultFilesDownload(configuration.isArchivedResultFilesDownload());
+        setFunctionCallJobsBatchSize(configuration.getFunctionCallJobsBatchSize());
+        setrServiUriSelectionStrategy(configuration.getRServiUriSelectionStrategy());
+        setCircuitBreakerFailureThreshold(configuration.getCircuitBreakerFailureThreshold());
+        setAdaptiveJobWorkersMinimum(configuration.getAdaptiveJobWorkersMinimum());
+        setAdaptiveJobWorkersMaximum(configuration.getAdaptiveJobWorkersMaximum());
+        setClaimCheckDirectory(configuration.getClaimCheckDirectory());
+        setActiveMqTransportConnectorUri(configuration.getActiveMqTransportConnectorUri());
+        setActiveMqNetworkConnectorUri(configuration.getActiveMqNetworkConnectorUri());
+        setActiveMqNetworkDuplex(configuration.isActiveMqNetworkDuplex());
+        setApplicationJobWorkerWeights(configuration.getApplicationJobWorkerWeights());
+        setJobAdmissionMaximumPendingJobsPerApplication(configuration.getJobAdmissionMaximumPendingJobsPerApplication());
+        setJobAdmissionMaximumInFlightJobsPerUser(configuration.getJobAdmissionMaximumInFlightJobsPerUser());
+        setApplicationResultRetentionConfiguration((Map) configuration.getApplicationResultRetentionConfiguration());
     }
 
     @Override
@@ -612,9 +693,9 @@ public class PersistedConfiguration
     }
 
     /**
-     * Number of concurrent job workers per queue, which must be computed based on the number of
-     * nodes in the RServi pool and the number of job queues (one global plus one per "boosted"
-     * application).
+     * Number of concurrent job workers of the node, which all the applications share and which must
+     * be computed based on the number of nodes in the RServi pool. When adaptive job capacity is
+     * enabled, this is only the initial number of job workers.
      */
     public int getNumberOfConcurrentJobWorkersPerQueue()
     {
@@ -843,4 +924,233 @@ public class PersistedConfiguration
     {
         this.propagateSecurityContext = propagateSecurityContext;
     }
+
+    /**
+     * Optionally use pooled RServi instances for multi-files jobs, whose workspace is reset before
+     * being returned to the pool.
+     */
+    public boolean isPooledMultiFilesJobs()
+    {
+        return pooledMultiFilesJobs;
+    }
+
+    public void setPooledMultiFilesJobs(final boolean pooledMultiFilesJobs)
+    {
+        this.pooledMultiFilesJobs = pooledMultiFilesJobs;
+    }
+
+    /**
+     * Optionally upload the files of multi-files jobs to R as a single archive, which is unpacked
+     * in the R working directory, instead of uploading them one by one.
+     */
+    public boolean isArchivedJobFilesUpload()
+    {
+        return archivedJobFilesUpload;
+    }
+
+    public void setArchivedJobFilesUpload(final boolean archivedJobFilesUpload)
+    {
+        this.archivedJobFilesUpload = archivedJobFilesUpload;
+    }
+
+    /**
+     * Optionally have R zip the result files of multi-files jobs whose results are delivered zipped,
+     * and download this single archive instead of downloading the result files one by one.
+     */
+    public boolean isArchivedResultFilesDownload()
+    {
+        return archivedResultFilesDownload;
+    }
+
+    public void setArchivedResultFilesDownload(final boolean archivedResultFilesDownload)
+    {
+        this.archivedResultFilesDownload = archivedResultFilesDownload;
+    }
+
+    /**
+     * Maximum number of pending function call jobs of the same application and type that a job worker
+     * processes back-to-back on a single RServi instance. Batching is disabled when lower than 2.
+     */
+    public int getFunctionCallJobsBatchSize()
+    {
+        return functionCallJobsBatchSize;
+    }
+
+    public void setFunctionCallJobsBatchSize(final int functionCallJobsBatchSize)
+    {
+        this.functionCallJobsBatchSize = functionCallJobsBatchSize;
+    }
+
+    /**
+     * Optional strategy for selecting the RServi pool URI of a job, defaults to circular selection.
+     */
+    public RServiUriSelectionStrategy getrServiUriSelectionStrategy()
+    {
+        return rServiUriSelectionStrategy;
+    }
+
+    public void setrServiUriSelectionStrategy(final RServiUriSelectionStrategy rServiUriSelectionStrategy)
+    {
+        this.rServiUriSelectionStrategy = rServiUriSelectionStrategy;
+    }
+
+    /**
+     * Number of consecutive failures to borrow or talk to an RServi instance after which its pool URI
+     * is taken out of selection, until a background probe succeeds. Disabled when lower than 1.
+     */
+    public int getCircuitBreakerFailureThreshold()
+    {
+        return circuitBreakerFailureThreshold;
+    }
+
+    public void setCircuitBreakerFailureThreshold(final int circuitBreakerFailureThreshold)
+    {
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * Lower bound of the number of job workers when adaptive sizing is enabled. The RServi client
+     * pool is sized along, so each of its keys can have as many instances as there are job workers.
+     */
+    public int getAdaptiveJobWorkersMinimum()
+    {
+        return adaptiveJobWorkersMinimum;
+    }
+
+    public void setAdaptiveJobWorkersMinimum(final int adaptiveJobWorkersMinimum)
+    {
+        this.adaptiveJobWorkersMinimum = adaptiveJobWorkersMinimum;
+    }
+
+    /**
+     * Upper bound of the number of job workers, which enables their adaptive sizing, driven by the
+     * depth of the job queues and the recent job latency, when greater than zero. The RServi client
+     * pool is sized along, so each of its keys can have as many instances as there are job workers.
+     */
+    public int getAdaptiveJobWorkersMaximum()
+    {
+        return adaptiveJobWorkersMaximum;
+    }
+
+    public void setAdaptiveJobWorkersMaximum(final int adaptiveJobWorkersMaximum)
+    {
+        this.adaptiveJobWorkersMaximum = adaptiveJobWorkersMaximum;
+    }
+
+    /**
+     * Optional shared directory where the files of multi-files jobs and results are checked in when
+     * they are dispatched, so they can be processed on another node than the one they were created
+     * on. If null, these files stay on the node that created them.
+     */
+    public File getClaimCheckDirectory()
+    {
+        return claimCheckDirectory;
+    }
+
+    public void setClaimCheckDirectory(final File claimCheckDirectory)
+    {
+        this.claimCheckDirectory = claimCheckDirectory;
+    }
+
+    /**
+     * Optional URI on which the embedded ActiveMQ broker accepts connections from the brokers of
+     * other RSB nodes, for example: tcp://0.0.0.0:61616
+     */
+    public URI getActiveMqTransportConnectorUri()
+    {
+        return activeMqTransportConnectorUri;
+    }
+
+    public void setActiveMqTransportConnectorUri(final URI activeMqTransportConnectorUri)
+    {
+        this.activeMqTransportConnectorUri = activeMqTransportConnectorUri;
+    }
+
+    /**
+     * Optional URI of the brokers the embedded ActiveMQ broker forwards pending asynchronous jobs
+     * to when they have idle job workers, for example: static:(tcp://node2:61616,tcp://node3:61616) or
+     * multicast://default. Use the URI of a shared external broker along with a duplex network to have
+     * nodes exchange jobs through it.
+     */
+    public URI getActiveMqNetworkConnectorUri()
+    {
+        return activeMqNetworkConnectorUri;
+    }
+
+    public void setActiveMqNetworkConnectorUri(final URI activeMqNetworkConnectorUri)
+    {
+        this.activeMqNetworkConnectorUri = activeMqNetworkConnectorUri;
+    }
+
+    /**
+     * Should the network connection to other brokers be duplex, which is needed when connecting
+     * through a shared external broker.
+     */
+    public boolean isActiveMqNetworkDuplex()
+    {
+        return activeMqNetworkDuplex;
+    }
+
+    public void setActiveMqNetworkDuplex(final boolean activeMqNetworkDuplex)
+    {
+        this.activeMqNetworkDuplex = activeMqNetworkDuplex;
+    }
+
+    /**
+     * Optional mapping of application names and weights of their share of the job workers, the
+     * applications not mapped weighing 1. An application can only use more than its share of the job
+     * workers when no other application has jobs waiting for one. Mapped applications listen for jobs
+     * even before any is queued on the node.
+     */
+    public Map<String, Integer> getApplicationJobWorkerWeights()
+    {
+        return applicationJobWorkerWeights;
+    }
+
+    public void setApplicationJobWorkerWeights(final Map<String, Integer> applicationJobWorkerWeights)
+    {
+        this.applicationJobWorkerWeights = applicationJobWorkerWeights;
+    }
+
+    /**
+     * Maximum number of jobs pending in the queue of an application above which new REST jobs for this
+     * application are rejected, until the backlog has been worked down. Disabled when lower than 1.
+     */
+    public int getJobAdmissionMaximumPendingJobsPerApplication()
+    {
+        return jobAdmissionMaximumPendingJobsPerApplication;
+    }
+
+    public void setJobAdmissionMaximumPendingJobsPerApplication(final int jobAdmissionMaximumPendingJobsPerApplication)
+    {
+        this.jobAdmissionMaximumPendingJobsPerApplication = jobAdmissionMaximumPendingJobsPerApplication;
+    }
+
+    /**
+     * Maximum number of REST jobs a user can have submitted to this node and not got the result of yet,
+     * above which new REST jobs of this user are rejected. Disabled when lower than 1.
+     */
+    public int getJobAdmissionMaximumInFlightJobsPerUser()
+    {
+        return jobAdmissionMaximumInFlightJobsPerUser;
+    }
+
+    public void setJobAdmissionMaximumInFlightJobsPerUser(final int jobAdmissionMaximumInFlightJobsPerUser)
+    {
+        this.jobAdmissionMaximumInFlightJobsPerUser = jobAdmissionMaximumInFlightJobsPerUser;
+    }
+
+    /**
+     * Optional mapping of application names and retention rules of their results, which are
+     * enforced in the background. If null, results are kept until they are deleted by their users.
+     */
+    public Map<String, PersistedResultRetentionConfiguration> getApplicationResultRetentionConfiguration()
+    {
+        return applicationResultRetentionConfiguration;
+    }
+
+    public void setApplicationResultRetentionConfiguration(final Map<String, PersistedResultRetentionConfiguration> applicationResultRetentionConfiguration)
+    {
+        this.applicationResultRetentionConfiguration = applicationResultRetentionConfiguration;
+    }
 }
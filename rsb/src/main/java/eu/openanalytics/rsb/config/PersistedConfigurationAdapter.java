@@ -270,4 +270,101 @@ public class PersistedConfigurationAdapter implements Configuration
     {
         return persistedConfiguration.isPropagateSecurityContext();
     }
+
+    @Override
+    public boolean isPooledMultiFilesJobs()
+    {
+        return persistedConfiguration.isPooledMultiFilesJobs();
+    }
+
+    @Override
+    public boolean isArchivedJobFilesUpload()
+    {
+        return persistedConfiguration.isArchivedJobFilesUpload();
+    }
+
+    @Override
+    public boolean isArchivedResultFilesDownload()
+    {
+        return persistedConfiguration.isArchivedResultFilesDownload();
+    }
+
+    @Override
+    public int getFunctionCallJobsBatchSize()
+    {
+        return persistedConfiguration.getFunctionCallJobsBatchSize();
+    }
+
+    @Override
+    public RServiUriSelectionStrategy getRServiUriSelectionStrategy()
+    {
+        return persistedConfiguration.getrServiUriSelectionStrategy();
+    }
+
+    @Override
+    public int getCircuitBreakerFailureThreshold()
+    {
+        return persistedConfiguration.getCircuitBreakerFailureThreshold();
+    }
+
+    @Override
+    public int getAdaptiveJobWorkersMinimum()
+    {
+        return persistedConfiguration.getAdaptiveJobWorkersMinimum();
+    }
+
+    @Override
+    public int getAdaptiveJobWorkersMaximum()
+    {
+        return persistedConfiguration.getAdaptiveJobWorkersMaximum();
+    }
+
+    @Override
+    public File getClaimCheckDirectory()
+    {
+        return persistedConfiguration.getClaimCheckDirectory();
+    }
+
+    @Override
+    public URI getActiveMqTransportConnectorUri()
+    {
+        return persistedConfiguration.getActiveMqTransportConnectorUri();
+    }
+
+    @Override
+    public URI getActiveMqNetworkConnectorUri()
+    {
+        return persistedConfiguration.getActiveMqNetworkConnectorUri();
+    }
+
+    @Override
+    public boolean isActiveMqNetworkDuplex()
+    {
+        return persistedConfiguration.isActiveMqNetworkDuplex();
+    }
+
+    @Override
+    public Map<String, Integer> getApplicationJobWorkerWeights()
+    {
+        return persistedConfiguration.getApplicationJobWorkerWeights();
+    }
+
+    @Override
+    public int getJobAdmissionMaximumPendingJobsPerApplication()
+    {
+        return persistedConfiguration.getJobAdmissionMaximumPendingJobsPerApplication();
+    }
+
+    @Override
+    public int getJobAdmissionMaximumInFlightJobsPerUser()
+    {
+        return persistedConfiguration.getJobAdmissionMaximumInFlightJobsPerUser();
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Map<String, ResultRetentionConfiguration> getApplicationResultRetentionConfiguration()
+    {
+        return (Map) persistedConfiguration.getApplicationResultRetentionConfiguration();
+    }
 }
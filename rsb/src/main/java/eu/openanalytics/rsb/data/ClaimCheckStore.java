@@ -0,0 +1,54 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Defines a store where the files of a work item are checked in once, to be checked out by the
+ * node that processes the work item.
+ * 
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public interface ClaimCheckStore
+{
+    /**
+     * @return the ID under which the files of the directory have been checked in.
+     */
+    String checkIn(File directory) throws IOException;
+
+    /**
+     * Copies the files checked in under the provided ID to the directory.
+     */
+    void checkOut(String claimCheckId, File directory) throws IOException;
+
+    /**
+     * Discards the files checked in under the provided ID once they can not be needed anymore: a
+     * store may keep them a little longer, so the message of a work item can still be redelivered
+     * after it has been processed.
+     */
+    void discard(String claimCheckId);
+}
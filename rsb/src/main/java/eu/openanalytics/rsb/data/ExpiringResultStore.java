@@ -0,0 +1,49 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+
+package eu.openanalytics.rsb.data;
+
+import java.io.IOException;
+
+import eu.openanalytics.rsb.config.Configuration.ResultRetentionConfiguration;
+
+/**
+ * Defines a result store that can delete the results breaking retention rules.
+ * 
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public interface ExpiringResultStore
+{
+    /**
+     * Deletes the results of an application that break its retention rules, the oldest ones first.
+     * 
+     * @param maximumDeletions maximum number of results to delete, so a call doesn't hold the store
+     *            for long: the remaining results are deleted by the next calls.
+     * @return the space reclaimed by deleting results.
+     */
+    ReclaimedSpace deleteExpiredResults(String applicationName,
+                                        ResultRetentionConfiguration resultRetentionConfiguration,
+                                        int maximumDeletions) throws IOException;
+}
@@ -0,0 +1,143 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A claim check store that keeps checked in files in a directory shared by all the nodes. Discarded
+ * files are marked as such and only deleted once a grace period has elapsed, which outlasts the
+ * redeliveries of a message whose transaction has been rolled back after processing.
+ * 
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class FileClaimCheckStore implements ClaimCheckStore
+{
+    private static final long DEFAULT_DISCARD_GRACE_PERIOD = 3600000L;
+
+    private static final long MAXIMUM_SWEEP_PERIOD = 60000L;
+
+    private static final String DISCARDED_MARKER_EXTENSION = ".discarded";
+
+    private final File rootDirectory;
+    private final long discardGracePeriod;
+    private final AtomicLong nextSweepTime = new AtomicLong();
+
+    public FileClaimCheckStore(final File rootDirectory)
+    {
+        this(rootDirectory, DEFAULT_DISCARD_GRACE_PERIOD);
+    }
+
+    public FileClaimCheckStore(final File rootDirectory, final long discardGracePeriod)
+    {
+        Validate.notNull(rootDirectory, "rootDirectory can't be null");
+        this.rootDirectory = rootDirectory;
+        this.discardGracePeriod = discardGracePeriod;
+    }
+
+    public String checkIn(final File directory) throws IOException
+    {
+        final String claimCheckId = UUID.randomUUID().toString();
+        FileUtils.copyDirectory(directory, getClaimCheckDirectory(claimCheckId));
+        return claimCheckId;
+    }
+
+    public void checkOut(final String claimCheckId, final File directory) throws IOException
+    {
+        FileUtils.copyDirectory(getClaimCheckDirectory(claimCheckId), directory);
+    }
+
+    public void discard(final String claimCheckId)
+    {
+        final File discardedMarker = getDiscardedMarker(claimCheckId);
+
+        try
+        {
+            // a redelivered work item discards its files again, which postpones their deletion
+            FileUtils.touch(discardedMarker);
+        }
+        catch (final IOException ioe)
+        {
+            FileUtils.deleteQuietly(getClaimCheckDirectory(claimCheckId));
+            return;
+        }
+
+        sweepDiscarded();
+    }
+
+    private void sweepDiscarded()
+    {
+        // the sweep is shared by all the threads discarding files, and run at most once per period
+        final long now = System.currentTimeMillis();
+        final long nextSweep = nextSweepTime.get();
+        if ((now < nextSweep)
+            || (!nextSweepTime.compareAndSet(nextSweep, now + Math.min(discardGracePeriod, MAXIMUM_SWEEP_PERIOD))))
+        {
+            return;
+        }
+
+        final File[] discardedMarkers = rootDirectory.listFiles(new FileFilter()
+        {
+            public boolean accept(final File file)
+            {
+                return file.getName().endsWith(DISCARDED_MARKER_EXTENSION);
+            }
+        });
+
+        if (discardedMarkers == null)
+        {
+            return;
+        }
+
+        for (final File discardedMarker : discardedMarkers)
+        {
+            if (discardedMarker.lastModified() + discardGracePeriod <= now)
+            {
+                FileUtils.deleteQuietly(new File(rootDirectory, StringUtils.removeEnd(discardedMarker.getName(),
+                    DISCARDED_MARKER_EXTENSION)));
+                FileUtils.deleteQuietly(discardedMarker);
+            }
+        }
+    }
+
+    private File getDiscardedMarker(final String claimCheckId)
+    {
+        return new File(rootDirectory, getClaimCheckDirectory(claimCheckId).getName() + DISCARDED_MARKER_EXTENSION);
+    }
+
+    private File getClaimCheckDirectory(final String claimCheckId)
+    {
+        // claim check IDs are UUIDs, which prevents escaping the root directory
+        return new File(rootDirectory, UUID.fromString(claimCheckId).toString());
+    }
+}
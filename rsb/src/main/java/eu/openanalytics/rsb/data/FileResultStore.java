@@ -28,22 +28,26 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.activation.MimeType;
+import javax.annotation.PostConstruct;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.comparator.LastModifiedFileComparator;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -51,18 +55,265 @@ import org.springframework.stereotype.Component;
 
 import eu.openanalytics.rsb.Util;
 import eu.openanalytics.rsb.component.AbstractComponent;
+import eu.openanalytics.rsb.config.Configuration.ResultRetentionConfiguration;
 
 /**
- * A file-based result store.
+ * A file-based result store, which keeps an in-memory index of the result files of each
+ * application and user so single results are looked up without listing their directory, and
+ * retention rules are enforced without going through all the result files.
  * 
  * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
  */
 @Component("secureResultStore")
-public class FileResultStore extends AbstractComponent implements SecureResultStore
+public class FileResultStore extends AbstractComponent
+    implements SecureResultStore, ExpiringResultStore, IndexedResultStore
 {
     private static final String ERROR_MESSAGE = "This method shouldn't have been called: please report the issue.";
     private static final String ERROR_FILE_INFIX_EXTENSION = ".err";
 
+    // the possible names of a result file after its job ID
+    private static final List<String> RESULT_FILE_SUFFIXES = new ArrayList<String>();
+
+    static
+    {
+        for (final String resourceType : Util.getResourceTypes())
+        {
+            RESULT_FILE_SUFFIXES.add("." + resourceType);
+            RESULT_FILE_SUFFIXES.add(ERROR_FILE_INFIX_EXTENSION + "." + resourceType);
+        }
+    }
+
+    /**
+     * A result file with its modification time and length, which are kept to sort results and
+     * enforce retention rules without hitting the file system.
+     */
+    private static final class IndexedResultFile
+    {
+        private final UUID jobId;
+        private final File file;
+        private final long lastModified;
+        private final long length;
+
+        IndexedResultFile(final UUID jobId, final File file)
+        {
+            this.jobId = jobId;
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+    }
+
+    /**
+     * Indexes the result files of a results directory by job ID. The directory is listed again
+     * when all its results are needed and it has been modified behind the back of this store, for
+     * example by another node sharing it. Single results missing from the index are looked up by
+     * their possible file names instead. The modification time of a directory can be too coarse, or
+     * too lazily updated on network file systems, to reveal all the changes: the directory is also
+     * listed again when the index is refreshed in the background.
+     */
+    private static final class ResultsDirectoryIndex
+    {
+        private final File resultsDirectory;
+        private final ConcurrentMap<UUID, IndexedResultFile> resultFiles = new ConcurrentHashMap<UUID, IndexedResultFile>();
+        private volatile long indexedLastModified = -1L;
+
+        ResultsDirectoryIndex(final File resultsDirectory)
+        {
+            this.resultsDirectory = resultsDirectory;
+        }
+
+        IndexedResultFile get(final UUID jobId)
+        {
+            final IndexedResultFile indexedResultFile = resultFiles.get(jobId);
+            if ((indexedResultFile != null) && (indexedResultFile.file.isFile()))
+            {
+                return indexedResultFile;
+            }
+
+            // the result may have been stored, replaced or deleted by another node
+            final IndexedResultFile foundResultFile = find(jobId);
+            if (foundResultFile != null)
+            {
+                resultFiles.put(jobId, foundResultFile);
+            }
+            else if (indexedResultFile != null)
+            {
+                resultFiles.remove(jobId, indexedResultFile);
+            }
+            return foundResultFile;
+        }
+
+        Collection<IndexedResultFile> getAll()
+        {
+            refreshIfModified();
+            return resultFiles.values();
+        }
+
+        long getDirectoryLastModified()
+        {
+            return resultsDirectory.lastModified();
+        }
+
+        /**
+         * Records a change made by this store, which only spares listing the directory again if
+         * the index was up to date before the change.
+         */
+        synchronized void put(final UUID jobId, final File resultFile, final long previousDirectoryLastModified)
+        {
+            resultFiles.put(jobId, new IndexedResultFile(jobId, resultFile));
+            recordChange(previousDirectoryLastModified);
+        }
+
+        synchronized void remove(final UUID jobId, final long previousDirectoryLastModified)
+        {
+            resultFiles.remove(jobId);
+            recordChange(previousDirectoryLastModified);
+        }
+
+        private void recordChange(final long previousDirectoryLastModified)
+        {
+            if (indexedLastModified == previousDirectoryLastModified)
+            {
+                indexedLastModified = getDirectoryLastModified();
+            }
+        }
+
+        private IndexedResultFile find(final UUID jobId)
+        {
+            IndexedResultFile foundResultFile = null;
+
+            for (final String resultFileSuffix : RESULT_FILE_SUFFIXES)
+            {
+                final File file = new File(resultsDirectory, jobId + resultFileSuffix);
+                if (file.isFile())
+                {
+                    foundResultFile = mostRecent(foundResultFile, new IndexedResultFile(jobId, file));
+                }
+            }
+
+            return foundResultFile;
+        }
+
+        private void refreshIfModified()
+        {
+            if (getDirectoryLastModified() == indexedLastModified)
+            {
+                return;
+            }
+
+            synchronized (this)
+            {
+                if (getDirectoryLastModified() != indexedLastModified)
+                {
+                    refresh();
+                }
+            }
+        }
+
+        synchronized void refresh()
+        {
+            final long directoryLastModified = getDirectoryLastModified();
+
+            final File[] files = resultsDirectory.listFiles();
+            final Map<UUID, IndexedResultFile> listedResultFiles = new HashMap<UUID, IndexedResultFile>();
+
+            if (files != null)
+            {
+                for (final File file : files)
+                {
+                    final UUID jobId = Util.safeUuidFromString(StringUtils.substringBefore(file.getName(), "."));
+                    if ((jobId == null) || (!file.isFile()))
+                    {
+                        continue;
+                    }
+
+                    listedResultFiles.put(jobId,
+                        mostRecent(listedResultFiles.get(jobId), new IndexedResultFile(jobId, file)));
+                }
+            }
+
+            resultFiles.putAll(listedResultFiles);
+            resultFiles.keySet().retainAll(listedResultFiles.keySet());
+            indexedLastModified = directoryLastModified;
+        }
+
+        /**
+         * Should a job have several results, like an error then a success, the most recent one
+         * wins.
+         */
+        private static IndexedResultFile mostRecent(final IndexedResultFile indexedResultFile,
+                                                    final IndexedResultFile otherResultFile)
+        {
+            if ((indexedResultFile == null) || (indexedResultFile.lastModified < otherResultFile.lastModified))
+            {
+                return otherResultFile;
+            }
+            return indexedResultFile;
+        }
+    }
+
+    private static final Comparator<IndexedResultFile> MOST_RECENT_FIRST = new Comparator<IndexedResultFile>()
+    {
+        public int compare(final IndexedResultFile irf1, final IndexedResultFile irf2)
+        {
+            return ResultCursor.compareMostRecentFirst(irf1.lastModified, irf1.jobId, irf2.lastModified,
+                irf2.jobId);
+        }
+    };
+
+    private final ConcurrentMap<File, ResultsDirectoryIndex> resultsDirectoryIndexes = new ConcurrentHashMap<File, ResultsDirectoryIndex>();
+
+    /**
+     * Indexes the existing results at startup, so the first lookups do not pay for it.
+     */
+    @PostConstruct
+    public void initialize()
+    {
+        final File[] applicationResultsDirectories = getConfiguration().getResultsDirectory().listFiles();
+        if (applicationResultsDirectories == null)
+        {
+            return;
+        }
+
+        int indexedResults = 0;
+        for (final File applicationResultsDirectory : applicationResultsDirectories)
+        {
+            if ((!applicationResultsDirectory.isDirectory())
+                || (!Util.isValidApplicationName(applicationResultsDirectory.getName())))
+            {
+                continue;
+            }
+
+            // results of anonymous users sit next to the directories of the authenticated ones
+            indexedResults += getResultsDirectoryIndex(applicationResultsDirectory).getAll().size();
+
+            final File[] userResultsDirectories = applicationResultsDirectory.listFiles();
+            if (userResultsDirectories == null)
+            {
+                continue;
+            }
+
+            for (final File userResultsDirectory : userResultsDirectories)
+            {
+                if (userResultsDirectory.isDirectory())
+                {
+                    indexedResults += getResultsDirectoryIndex(userResultsDirectory).getAll().size();
+                }
+            }
+        }
+
+        getLogger().info(String.format("Indexed %d results in %d directories", indexedResults,
+            resultsDirectoryIndexes.size()));
+    }
+
+    public void refreshIndexes()
+    {
+        for (final ResultsDirectoryIndex resultsDirectoryIndex : resultsDirectoryIndexes.values())
+        {
+            resultsDirectoryIndex.refresh();
+        }
+    }
+
     public boolean deleteByApplicationNameAndJobId(final String applicationName, final UUID jobId)
         throws IOException
     {
@@ -89,9 +340,86 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
         FileUtils.forceMkdir(resultsDirectory);
         final File resultFile = new File(resultsDirectory, resultFileName);
 
+        final ResultsDirectoryIndex resultsDirectoryIndex = getResultsDirectoryIndex(resultsDirectory);
+        final long previousDirectoryLastModified = resultsDirectoryIndex.getDirectoryLastModified();
+
         try(final InputStream resultData = result.getData(); final FileOutputStream fos = new FileOutputStream(resultFile)) {
           IOUtils.copy(resultData, fos);
         }
+
+        resultsDirectoryIndex.put(result.getJobId(), resultFile, previousDirectoryLastModified);
+    }
+
+    public ReclaimedSpace deleteExpiredResults(final String applicationName,
+                                               final ResultRetentionConfiguration resultRetentionConfiguration,
+                                               final int maximumDeletions) throws IOException
+    {
+        final File applicationResultsDirectory = getResultsDirectory(applicationName, null);
+        final File[] userResultsDirectories = applicationResultsDirectory.listFiles();
+        if (userResultsDirectories == null)
+        {
+            return ReclaimedSpace.NONE;
+        }
+
+        // results of anonymous users sit next to the directories of the authenticated ones
+        final List<File> resultsDirectories = new ArrayList<File>();
+        resultsDirectories.add(applicationResultsDirectory);
+        for (final File userResultsDirectory : userResultsDirectories)
+        {
+            if (userResultsDirectory.isDirectory())
+            {
+                resultsDirectories.add(userResultsDirectory);
+            }
+        }
+
+        final long maximumAge = resultRetentionConfiguration.getMaximumAge();
+        final int maximumResults = resultRetentionConfiguration.getMaximumResultsPerUser();
+        final long maximumBytes = resultRetentionConfiguration.getMaximumBytesPerUser();
+        final long oldestLastModified = maximumAge > 0L ? System.currentTimeMillis() - maximumAge : Long.MIN_VALUE;
+
+        int deletedFiles = 0;
+        long deletedBytes = 0L;
+
+        for (final File resultsDirectory : resultsDirectories)
+        {
+            final ResultsDirectoryIndex resultsDirectoryIndex = getResultsDirectoryIndex(resultsDirectory);
+            final List<IndexedResultFile> indexedResultFiles = new ArrayList<IndexedResultFile>(
+                resultsDirectoryIndex.getAll());
+            Collections.sort(indexedResultFiles, MOST_RECENT_FIRST);
+
+            // once a rule is broken by a result, it is broken by all the older ones
+            int keptResults = 0;
+            long keptBytes = 0L;
+
+            for (final IndexedResultFile indexedResultFile : indexedResultFiles)
+            {
+                keptResults++;
+                keptBytes += indexedResultFile.length;
+
+                if ((indexedResultFile.lastModified >= oldestLastModified)
+                    && ((maximumResults < 1) || (keptResults <= maximumResults))
+                    && ((maximumBytes < 1L) || (keptBytes <= maximumBytes)))
+                {
+                    continue;
+                }
+
+                if (deletedFiles >= maximumDeletions)
+                {
+                    return new ReclaimedSpace(deletedFiles, deletedBytes);
+                }
+
+                final long previousDirectoryLastModified = resultsDirectoryIndex.getDirectoryLastModified();
+                // the result may have been deleted in the meantime, by its user or another node
+                if (indexedResultFile.file.delete())
+                {
+                    deletedFiles++;
+                    deletedBytes += indexedResultFile.length;
+                }
+                resultsDirectoryIndex.remove(indexedResultFile.jobId, previousDirectoryLastModified);
+            }
+        }
+
+        return new ReclaimedSpace(deletedFiles, deletedBytes);
     }
 
     @PreAuthorize("hasPermission(#applicationName, 'APPLICATION_USER')")
@@ -99,14 +427,18 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
                                                    final String userName,
                                                    final UUID jobId) throws IOException
     {
-        final File resultFile = getResultFile(applicationName, userName, jobId);
+        final ResultsDirectoryIndex resultsDirectoryIndex = getResultsDirectoryIndex(getResultsDirectory(
+            applicationName, userName));
+        final IndexedResultFile indexedResultFile = resultsDirectoryIndex.get(jobId);
 
-        if (resultFile == null)
+        if (indexedResultFile == null)
         {
             return false;
         }
 
-        FileUtils.forceDelete(resultFile);
+        final long previousDirectoryLastModified = resultsDirectoryIndex.getDirectoryLastModified();
+        FileUtils.forceDelete(indexedResultFile.file);
+        resultsDirectoryIndex.remove(jobId, previousDirectoryLastModified);
         return true;
     }
 
@@ -114,27 +446,58 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
     public Collection<PersistedResult> findByApplicationName(final String applicationName,
                                                              final String userName)
     {
-        final File[] resultFiles = getResultsDirectory(applicationName, userName).listFiles();
+        final List<IndexedResultFile> indexedResultFiles = new ArrayList<IndexedResultFile>(
+            getResultsDirectoryIndex(getResultsDirectory(applicationName, userName)).getAll());
 
-        if ((resultFiles == null) || (resultFiles.length == 0))
+        if (indexedResultFiles.isEmpty())
         {
             return Collections.emptyList();
         }
 
-        final Collection<PersistedResult> persistedResults = new ArrayList<PersistedResult>();
+        Collections.sort(indexedResultFiles, MOST_RECENT_FIRST);
 
-        final List<File> sortedFiles = new ArrayList<File>(Arrays.asList(resultFiles));
-        Collections.sort(sortedFiles, LastModifiedFileComparator.LASTMODIFIED_REVERSE);
+        final Collection<PersistedResult> persistedResults = new ArrayList<PersistedResult>(
+            indexedResultFiles.size());
 
-        for (final File resultFile : sortedFiles)
+        for (final IndexedResultFile indexedResultFile : indexedResultFiles)
         {
-            final UUID jobId = Util.safeUuidFromString(StringUtils.substringBefore(resultFile.getName(), "."));
-            if (jobId != null)
+            persistedResults.add(buildPersistedResult(applicationName, userName, indexedResultFile));
+        }
+
+        return persistedResults;
+    }
+
+    @PreAuthorize("hasPermission(#applicationName, 'APPLICATION_USER')")
+    public List<PersistedResult> findByApplicationName(final String applicationName,
+                                                       final String userName,
+                                                       final Calendar since,
+                                                       final ResultCursor cursor,
+                                                       final int limit)
+    {
+        // select on the index so only the results of the page are built
+        final List<IndexedResultFile> indexedResultFiles = new ArrayList<IndexedResultFile>();
+
+        for (final IndexedResultFile indexedResultFile : getResultsDirectoryIndex(
+            getResultsDirectory(applicationName, userName)).getAll())
+        {
+            if (((since == null) || (indexedResultFile.lastModified > since.getTimeInMillis()))
+                && ((cursor == null) || (cursor.isBefore(indexedResultFile.lastModified, indexedResultFile.jobId))))
             {
-                persistedResults.add(buildPersistedResult(applicationName, userName, jobId, resultFile));
+                indexedResultFiles.add(indexedResultFile);
             }
         }
 
+        Collections.sort(indexedResultFiles, MOST_RECENT_FIRST);
+
+        final List<PersistedResult> persistedResults = new ArrayList<PersistedResult>(Math.min(limit,
+            indexedResultFiles.size()));
+
+        for (final IndexedResultFile indexedResultFile : indexedResultFiles.subList(0,
+            Math.min(limit, indexedResultFiles.size())))
+        {
+            persistedResults.add(buildPersistedResult(applicationName, userName, indexedResultFile));
+        }
+
         return persistedResults;
     }
 
@@ -143,42 +506,36 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
                                                          final String userName,
                                                          final UUID jobId)
     {
-        final File resultFile = getResultFile(applicationName, userName, jobId);
-        return resultFile == null ? null : buildPersistedResult(applicationName, userName, jobId, resultFile);
+        final IndexedResultFile indexedResultFile = getResultsDirectoryIndex(
+            getResultsDirectory(applicationName, userName)).get(jobId);
+
+        return indexedResultFile == null ? null : buildPersistedResult(applicationName, userName,
+            indexedResultFile);
     }
 
-    private File getResultFile(final String applicationName, final String userName, final UUID jobId)
+    private ResultsDirectoryIndex getResultsDirectoryIndex(final File resultsDirectory)
     {
-        final String jobIdAsString = jobId.toString();
-        final File[] resultFiles = getResultsDirectory(applicationName, userName).listFiles(
-            new FilenameFilter()
-            {
-                public boolean accept(final File dir, final String name)
-                {
-                    return jobIdAsString.equals(StringUtils.substringBefore(name, "."));
-                }
-            });
-
-        if ((resultFiles == null) || (resultFiles.length == 0))
-        {
-            return null;
-        }
-
-        if (resultFiles.length > 1)
+        final ResultsDirectoryIndex resultsDirectoryIndex = resultsDirectoryIndexes.get(resultsDirectory);
+        if (resultsDirectoryIndex != null)
         {
-            throw new IllegalStateException("Found " + resultFiles.length + " results for job Id: " + jobId);
+            return resultsDirectoryIndex;
         }
 
-        return resultFiles[0];
+        final ResultsDirectoryIndex newResultsDirectoryIndex = new ResultsDirectoryIndex(resultsDirectory);
+        final ResultsDirectoryIndex existingResultsDirectoryIndex = resultsDirectoryIndexes.putIfAbsent(
+            resultsDirectory, newResultsDirectoryIndex);
+        return existingResultsDirectoryIndex == null ? newResultsDirectoryIndex : existingResultsDirectoryIndex;
     }
 
     private PersistedResult buildPersistedResult(final String applicationName,
                                                  final String userName,
-                                                 final UUID jobId,
-                                                 final File resultFile)
+                                                 final IndexedResultFile indexedResultFile)
     {
+        final File resultFile = indexedResultFile.file;
+        final UUID jobId = indexedResultFile.jobId;
+
         final GregorianCalendar resultTime = (GregorianCalendar) GregorianCalendar.getInstance();
-        resultTime.setTimeInMillis(resultFile.lastModified());
+        resultTime.setTimeInMillis(indexedResultFile.lastModified);
 
         final boolean success = !StringUtils.contains(resultFile.getName(), ERROR_FILE_INFIX_EXTENSION + ".");
         final MimeType mimeType = Util.getMimeType(resultFile);
@@ -203,6 +560,12 @@ public class FileResultStore extends AbstractComponent implements SecureResultSt
             {
                 return resultFile.length();
             }
+
+            @Override
+            public File getDataFile()
+            {
+                return resultFile;
+            }
         };
     }
 
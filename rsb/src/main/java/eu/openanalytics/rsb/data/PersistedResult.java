@@ -24,6 +24,7 @@
 
 package eu.openanalytics.rsb.data;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.GregorianCalendar;
@@ -102,4 +103,12 @@ public abstract class PersistedResult
     public abstract InputStream getData() throws IOException;
 
     public abstract long getDataLength() throws IOException;
+
+    /**
+     * @return the file holding the data of this result, if it is file-backed, otherwise null.
+     */
+    public File getDataFile()
+    {
+        return null;
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+
+package eu.openanalytics.rsb.data;
+
+/**
+ * Space reclaimed by deleting files.
+ * 
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public final class ReclaimedSpace
+{
+    public static final ReclaimedSpace NONE = new ReclaimedSpace(0, 0L);
+
+    private final int files;
+    private final long bytes;
+
+    public ReclaimedSpace(final int files, final long bytes)
+    {
+        this.files = files;
+        this.bytes = bytes;
+    }
+
+    public int getFiles()
+    {
+        return files;
+    }
+
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return files + " files (" + bytes + " bytes)";
+    }
+}
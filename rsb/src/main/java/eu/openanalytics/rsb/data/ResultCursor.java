@@ -0,0 +1,141 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.data;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.lang3.StringUtils;
+
+import eu.openanalytics.rsb.Util;
+
+/**
+ * Designates the position of a result in the listings of results, which are ordered from the most
+ * recent to the oldest result, the job IDs breaking ties. Unlike an offset, a cursor is not shifted
+ * by results being added or deleted.
+ *
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public final class ResultCursor
+{
+    private static final char SEPARATOR = '_';
+
+    public static final Comparator<PersistedResult> MOST_RECENT_FIRST = new Comparator<PersistedResult>()
+    {
+        public int compare(final PersistedResult pr1, final PersistedResult pr2)
+        {
+            return compareMostRecentFirst(pr1.getResultTime().getTimeInMillis(), pr1.getJobId(),
+                pr2.getResultTime().getTimeInMillis(), pr2.getJobId());
+        }
+    };
+
+    private final long resultTime;
+    private final UUID jobId;
+
+    public ResultCursor(final long resultTime, final UUID jobId)
+    {
+        this.resultTime = resultTime;
+        this.jobId = jobId;
+    }
+
+    public ResultCursor(final PersistedResult persistedResult)
+    {
+        this(persistedResult.getResultTime().getTimeInMillis(), persistedResult.getJobId());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cursor is invalid.
+     */
+    public static ResultCursor valueOf(final String cursor)
+    {
+        final String resultTime = StringUtils.substringBefore(cursor, String.valueOf(SEPARATOR));
+        final UUID jobId = Util.safeUuidFromString(StringUtils.substringAfter(cursor, String.valueOf(SEPARATOR)));
+
+        if ((!StringUtils.isNumeric(resultTime)) || (jobId == null))
+        {
+            throw new IllegalArgumentException("Invalid result cursor: " + cursor);
+        }
+
+        return new ResultCursor(Long.parseLong(resultTime), jobId);
+    }
+
+    /**
+     * @return true if the result at the provided time and with the provided job ID comes after this
+     *         cursor.
+     */
+    public boolean isBefore(final long otherResultTime, final UUID otherJobId)
+    {
+        return compareMostRecentFirst(resultTime, jobId, otherResultTime, otherJobId) < 0;
+    }
+
+    /**
+     * Selects a page of results, for result stores that can not do better than filtering all the
+     * results.
+     *
+     * @param since if not null, only the results more recent than this time are selected.
+     * @param cursor if not null, only the results that come after it are selected.
+     */
+    public static List<PersistedResult> selectPage(final Collection<PersistedResult> persistedResults,
+                                                   final Calendar since,
+                                                   final ResultCursor cursor,
+                                                   final int limit)
+    {
+        final List<PersistedResult> selectedResults = new ArrayList<PersistedResult>();
+
+        for (final PersistedResult persistedResult : persistedResults)
+        {
+            final long resultTime = persistedResult.getResultTime().getTimeInMillis();
+
+            if (((since == null) || (resultTime > since.getTimeInMillis()))
+                && ((cursor == null) || (cursor.isBefore(resultTime, persistedResult.getJobId()))))
+            {
+                selectedResults.add(persistedResult);
+            }
+        }
+
+        Collections.sort(selectedResults, MOST_RECENT_FIRST);
+        return selectedResults.size() > limit ? selectedResults.subList(0, limit) : selectedResults;
+    }
+
+    static int compareMostRecentFirst(final long resultTime1,
+                                      final UUID jobId1,
+                                      final long resultTime2,
+                                      final UUID jobId2)
+    {
+        final int timeComparison = Long.compare(resultTime2, resultTime1);
+        return timeComparison != 0 ? timeComparison : jobId2.compareTo(jobId1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return Long.toString(resultTime) + SEPARATOR + jobId;
+    }
+}
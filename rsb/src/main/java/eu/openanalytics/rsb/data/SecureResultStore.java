@@ -25,7 +25,9 @@
 package eu.openanalytics.rsb.data;
 
 import java.io.IOException;
+import java.util.Calendar;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -47,4 +49,18 @@ public interface SecureResultStore extends ResultStore
      * @return null if no result was found.
      */
     PersistedResult findByApplicationNameAndJobId(String applicationName, String userName, UUID jobId);
+
+    /**
+     * Finds a page of results, ordered from the most recent to the oldest.
+     *
+     * @param since if not null, only the results more recent than this time are found.
+     * @param cursor if not null, only the results that come after it are found.
+     * @param limit maximum number of results to find.
+     * @return an empty list if no result was found.
+     */
+    List<PersistedResult> findByApplicationName(String applicationName,
+                                                String userName,
+                                                Calendar since,
+                                                ResultCursor cursor,
+                                                int limit);
 }
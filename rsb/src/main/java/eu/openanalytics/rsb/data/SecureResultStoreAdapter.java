@@ -25,7 +25,9 @@
 package eu.openanalytics.rsb.data;
 
 import java.io.IOException;
+import java.util.Calendar;
 import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 import org.apache.commons.lang3.StringUtils;
@@ -102,6 +104,15 @@ public class SecureResultStoreAdapter implements SecureResultStore
         return findByApplicationNameAndJobId(applicationName, jobId);
     }
 
+    public List<PersistedResult> findByApplicationName(final String applicationName,
+                                                       final String userName,
+                                                       final Calendar since,
+                                                       final ResultCursor cursor,
+                                                       final int limit)
+    {
+        return ResultCursor.selectPage(findByApplicationName(applicationName, userName), since, cursor, limit);
+    }
+
     private boolean isAdaptedResultStoreSecure()
     {
         return resultStore instanceof SecureResultStore;
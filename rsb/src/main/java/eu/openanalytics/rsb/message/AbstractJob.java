@@ -62,6 +62,15 @@ public abstract class AbstractJob extends AbstractWorkItem implements Job
     public abstract AbstractResult<?> buildErrorResult(Throwable t, MessageSource messageSource)
         throws IOException;
 
+    /**
+     * Routes a result built for this job back to the node waiting for it, if any.
+     */
+    protected <T extends AbstractResult<?>> T replyTo(final T result)
+    {
+        result.setReplyNodeName(getReplyNodeName());
+        return result;
+    }
+
     /**
      * Builds an {@link ErrorResult} for a job whose processing has failed.
      * 
@@ -44,19 +44,27 @@ public abstract class AbstractWorkItem implements WorkItem, Serializable
 {
     public enum Source
     {
-        REST("job.error", "job.abort", 4), REST_IMMEDIATE("job.error", "job.abort", 4), SOAP("job.error",
-                        "job.abort", 8), EMAIL("email.job.error", "email.job.abort", 4), DIRECTORY(
-                        "directory.job.error", "directory.job.abort", 4);
+        REST("job.error", "job.abort", 4, true, true), REST_IMMEDIATE("job.error", "job.abort", 4, true, false), SOAP(
+                        "job.error", "job.abort", 8, false, false), EMAIL("email.job.error", "email.job.abort", 4, false,
+                        true), DIRECTORY("directory.job.error", "directory.job.abort", 4, true, true);
 
         private final String errorMessageId;
         private final String abortMessageId;
         private final int priority;
-
-        private Source(final String errorMessageId, final String abortMessageId, final int priority)
+        private final boolean zippedResult;
+        private final boolean persistent;
+
+        private Source(final String errorMessageId,
+                       final String abortMessageId,
+                       final int priority,
+                       final boolean zippedResult,
+                       final boolean persistent)
         {
             this.errorMessageId = errorMessageId;
             this.abortMessageId = abortMessageId;
             this.priority = priority;
+            this.zippedResult = zippedResult;
+            this.persistent = persistent;
         }
     };
 
@@ -68,6 +76,7 @@ public abstract class AbstractWorkItem implements WorkItem, Serializable
     private final UUID jobId;
     private final GregorianCalendar submissionTime;
     private final Map<String, Serializable> meta;
+    private String replyNodeName;
 
     public AbstractWorkItem(final Source source,
                             final String applicationName,
@@ -138,6 +147,20 @@ public abstract class AbstractWorkItem implements WorkItem, Serializable
         return meta;
     }
 
+    /**
+     * @return the name of the node where a caller synchronously waits for the result of this work
+     *         item, or null if nobody waits for it.
+     */
+    public String getReplyNodeName()
+    {
+        return replyNodeName;
+    }
+
+    public void setReplyNodeName(final String replyNodeName)
+    {
+        this.replyNodeName = replyNodeName;
+    }
+
     public String getErrorMessageId()
     {
         return getSource().errorMessageId;
@@ -148,6 +171,24 @@ public abstract class AbstractWorkItem implements WorkItem, Serializable
         return getSource().abortMessageId;
     }
 
+    /**
+     * Tells if multi-files results are always delivered as a single Zip archive for the source of
+     * this work item.
+     */
+    public boolean isZippedResult()
+    {
+        return getSource().zippedResult;
+    }
+
+    /**
+     * Tells if the messages of this work item must survive a broker restart: this is not the case
+     * for synchronous jobs and results, whose callers wait for them in memory anyway.
+     */
+    public boolean isPersistent()
+    {
+        return getSource().persistent;
+    }
+
     public int getPriority()
     {
         // potentially support per application priority
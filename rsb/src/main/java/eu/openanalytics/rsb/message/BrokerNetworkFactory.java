@@ -0,0 +1,119 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.activemq.broker.TransportConnector;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.network.DiscoveryNetworkConnector;
+import org.apache.activemq.network.NetworkConnector;
+
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * Creates the connectors that link the embedded ActiveMQ brokers of several RSB nodes, so idle
+ * nodes can pick up pending asynchronous jobs from busy ones. Synchronous jobs are never forwarded,
+ * as their callers wait for their results on the node they have been submitted to.
+ * 
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public abstract class BrokerNetworkFactory
+{
+    static final String NETWORK_CONNECTOR_NAME = "rsb-jobs-network";
+
+    static final String BROKER_NAME = "rsb-amq-broker";
+
+    // a shared external broker is one hop away from the other nodes
+    private static final int NETWORK_TTL = 2;
+
+    private BrokerNetworkFactory()
+    {
+        throw new UnsupportedOperationException("do not instantiate");
+    }
+
+    /**
+     * @return the name of the embedded broker, which must be unique in a network of brokers: it is
+     *         derived from the node name as soon as a network connector is configured, a standalone
+     *         broker keeping the name its persisted messages are stored under.
+     */
+    public static String getBrokerName(final Configuration configuration)
+    {
+        if (configuration.getActiveMqNetworkConnectorUri() == null)
+        {
+            return BROKER_NAME;
+        }
+
+        // the broker name is also the host part of the VM transport URI
+        return BROKER_NAME + "-"
+               + configuration.getNodeName().toLowerCase().replaceAll("[^a-z0-9\\-]", "-");
+    }
+
+    public static List<TransportConnector> createTransportConnectors(final Configuration configuration)
+    {
+        if (configuration.getActiveMqTransportConnectorUri() == null)
+        {
+            return Collections.emptyList();
+        }
+
+        final TransportConnector transportConnector = new TransportConnector();
+        transportConnector.setUri(configuration.getActiveMqTransportConnectorUri());
+        return Collections.singletonList(transportConnector);
+    }
+
+    public static List<NetworkConnector> createNetworkConnectors(final Configuration configuration)
+        throws Exception
+    {
+        if (configuration.getActiveMqNetworkConnectorUri() == null)
+        {
+            return Collections.emptyList();
+        }
+
+        final DiscoveryNetworkConnector networkConnector = new DiscoveryNetworkConnector(
+            configuration.getActiveMqNetworkConnectorUri());
+        networkConnector.setName(NETWORK_CONNECTOR_NAME);
+        networkConnector.setDuplex(configuration.isActiveMqNetworkDuplex());
+        networkConnector.setNetworkTTL(NETWORK_TTL);
+
+        // forward jobs only on demand of remote job workers, one at a time, local workers first
+        networkConnector.setDynamicallyIncludedDestinations(newQueues(JmsMessageDispatcher.JOB_QUEUES));
+        networkConnector.setExcludedDestinations(newQueues(JmsMessageDispatcher.SYNCHRONOUS_JOB_QUEUES));
+        networkConnector.setConduitSubscriptions(false);
+        networkConnector.setDecreaseNetworkConsumerPriority(true);
+        networkConnector.setPrefetchSize(1);
+
+        return Collections.<NetworkConnector> singletonList(networkConnector);
+    }
+
+    private static List<ActiveMQDestination> newQueues(final String name)
+    {
+        final List<ActiveMQDestination> queues = new ArrayList<ActiveMQDestination>();
+        queues.add(new ActiveMQQueue(name));
+        return queues;
+    }
+}
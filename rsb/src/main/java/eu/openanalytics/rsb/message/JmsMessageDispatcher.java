@@ -24,6 +24,10 @@
 
 package eu.openanalytics.rsb.message;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import javax.annotation.Resource;
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -32,9 +36,11 @@ import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.MessagePostProcessor;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
 import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.component.AbstractComponent;
+import eu.openanalytics.rsb.config.Configuration;
 
 /**
  * A JMS-backed a Job and Result message dispatcher.
@@ -44,9 +50,16 @@ import eu.openanalytics.rsb.component.AbstractComponent;
 @Component("messageDispatcher")
 public class JmsMessageDispatcher extends AbstractComponent implements MessageDispatcher
 {
+    static final String JOB_QUEUES = "r.jobs.>";
+
+    static final String SYNCHRONOUS_JOB_QUEUES = "r.jobs.*.sync";
+
+    private static final String SYNCHRONOUS_RESULT_QUEUE_PREFIX = "r.results.sync.";
+
     static final class WorkItemMessagePostProcessor implements MessagePostProcessor
     {
         private final AbstractWorkItem workItem;
+        private String claimCheckId;
 
         private WorkItemMessagePostProcessor(final AbstractWorkItem workItem)
         {
@@ -59,7 +72,10 @@ public class JmsMessageDispatcher extends AbstractComponent implements MessageDi
             message.setStringProperty(Constants.APPLICATION_NAME_MESSAGE_HEADER,
                 workItem.getApplicationName());
             message.setStringProperty(Constants.JOB_ID_MESSAGE_HEADER, workItem.getJobId().toString());
+            message.setStringProperty(Constants.WORK_ITEM_TYPE_MESSAGE_HEADER,
+                workItem.getClass().getSimpleName());
             message.setJMSPriority(workItem.getPriority());
+            claimCheckId = message.getStringProperty(Constants.CLAIM_CHECK_ID_MESSAGE_HEADER);
             return message;
         }
     }
@@ -67,40 +83,128 @@ public class JmsMessageDispatcher extends AbstractComponent implements MessageDi
     @Resource
     private JmsTemplate jmsTemplate;
 
+    @Resource
+    private JmsTemplate nonPersistentJmsTemplate;
+
+    @Resource
+    private SynchronousResultHandler synchronousResultHandler;
+
     // exposed for unit tests
     void setJmsTemplate(final JmsTemplate jmsTemplate)
     {
         this.jmsTemplate = jmsTemplate;
     }
 
+    void setNonPersistentJmsTemplate(final JmsTemplate nonPersistentJmsTemplate)
+    {
+        this.nonPersistentJmsTemplate = nonPersistentJmsTemplate;
+    }
+
+    void setSynchronousResultHandler(final SynchronousResultHandler synchronousResultHandler)
+    {
+        this.synchronousResultHandler = synchronousResultHandler;
+    }
+
     @PreAuthorize("hasPermission(#job, 'APPLICATION_JOB')")
     public void dispatch(final AbstractJob job)
     {
-        jmsTemplate.convertAndSend(getJobQueueName(job), job, new WorkItemMessagePostProcessor(job));
+        send(getJobQueueName(job), job);
     }
 
     public void dispatch(final AbstractResult<?> result)
     {
-        jmsTemplate.convertAndSend(getResultQueueName(result), result, new WorkItemMessagePostProcessor(
-            result));
+        send(getResultQueueName(result), result);
+    }
+
+    private void send(final String queueName, final AbstractWorkItem work)
+    {
+        final JmsTemplate template = getJmsTemplate(work);
+        final WorkItemMessagePostProcessor messagePostProcessor = new WorkItemMessagePostProcessor(work);
+
+        try
+        {
+            template.convertAndSend(queueName, work, messagePostProcessor);
+        }
+        catch (final RuntimeException re)
+        {
+            // no message will ever claim the files checked in for this one
+            if ((messagePostProcessor.claimCheckId != null)
+                && (template.getMessageConverter() instanceof WorkItemMessageConverter))
+            {
+                ((WorkItemMessageConverter) template.getMessageConverter()).discardClaimCheck(messagePostProcessor.claimCheckId);
+            }
+            throw re;
+        }
+
+        if (messagePostProcessor.claimCheckId != null)
+        {
+            // the local files are not needed anymore once the message referencing their copy is sent
+            work.destroy();
+        }
     }
 
     @SuppressWarnings("unchecked")
     public <T extends AbstractResult<?>> T process(final AbstractJob job)
     {
-        dispatch(job);
-        final Object result = jmsTemplate.receiveSelectedAndConvert(getResultQueueName(job),
-            Constants.JOB_ID_MESSAGE_HEADER + "='" + job.getJobId().toString() + "'");
-        return (T) result;
+        // the result is sent to the queue of this node, where its synchronous result listener gets it
+        job.setReplyNodeName(getConfiguration().getNodeName());
+        final SettableListenableFuture<AbstractResult<?>> pendingResult = synchronousResultHandler.register(job.getJobId());
+
+        try
+        {
+            dispatch(job);
+            return (T) pendingResult.get(getConfiguration().getJobTimeOut(), TimeUnit.MILLISECONDS);
+        }
+        catch (final TimeoutException te)
+        {
+            getLogger().warn("Timed out waiting for the result of job " + job.getJobId());
+            return null;
+        }
+        catch (final InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (final ExecutionException ee)
+        {
+            throw new RuntimeException("Failed to receive the result of job " + job.getJobId(), ee.getCause());
+        }
+        finally
+        {
+            synchronousResultHandler.unregister(job.getJobId());
+        }
+    }
+
+    private JmsTemplate getJmsTemplate(final AbstractWorkItem work)
+    {
+        return work.isPersistent() ? jmsTemplate : nonPersistentJmsTemplate;
     }
 
     private static String getJobQueueName(final AbstractWorkItem work)
     {
-        return "r.jobs." + work.getApplicationName();
+        // synchronous jobs have their own queues, which are kept out of the broker network
+        return "r.jobs." + work.getApplicationName() + (work.isPersistent() ? "" : ".sync");
     }
 
     private static String getResultQueueName(final AbstractWorkItem work)
     {
-        return "r.results." + work.getApplicationName();
+        return work.getReplyNodeName() != null
+                                              ? getSynchronousResultQueueName(work.getReplyNodeName())
+                                              : "r.results." + work.getApplicationName();
+    }
+
+    /**
+     * @return the queue where the results of the jobs synchronously processed for this node are
+     *         sent, so other nodes sharing the same broker can not consume them.
+     */
+    public static String getSynchronousResultQueueName(final Configuration configuration)
+    {
+        return getSynchronousResultQueueName(configuration.getNodeName());
+    }
+
+    private static String getSynchronousResultQueueName(final String nodeName)
+    {
+        // keep destination separators and wildcards out of the node part of the name
+        return SYNCHRONOUS_RESULT_QUEUE_PREFIX + nodeName.replaceAll("[^\\w\\-]", "_");
     }
 }
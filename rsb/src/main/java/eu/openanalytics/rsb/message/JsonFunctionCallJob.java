@@ -70,7 +70,7 @@ public class JsonFunctionCallJob extends AbstractFunctionCallJob
 
     private JsonFunctionCallResult buildResult(final boolean success, final String result)
     {
-        return new JsonFunctionCallResult(getSource(), getApplicationName(), getUserName(), getJobId(),
-            getSubmissionTime(), success, result);
+        return replyTo(new JsonFunctionCallResult(getSource(), getApplicationName(), getUserName(),
+            getJobId(), getSubmissionTime(), success, result));
     }
 }
@@ -50,6 +50,7 @@ import org.stringtemplate.v4.ST;
 
 import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.data.ClaimCheckStore;
 
 /**
  * Represents a RSB job that consists of multiple files.
@@ -60,8 +61,10 @@ public class MultiFilesJob extends AbstractJob
 {
     private static final long serialVersionUID = 1L;
 
-    private final File temporaryDirectory;
+    private File temporaryDirectory;
     private File rScriptFile;
+    private transient ClaimCheckStore claimCheckStore;
+    private transient String claimCheckId;
 
     public MultiFilesJob(final Source source,
                          final String applicationName,
@@ -123,6 +126,24 @@ public class MultiFilesJob extends AbstractJob
         getMeta().putAll(mergedMeta);
     }
 
+    /**
+     * Replaces the files of this job with the ones checked in under the provided ID, which are
+     * discarded when the resources of this job are released.
+     */
+    void checkOut(final ClaimCheckStore claimCheckStore, final String claimCheckId) throws IOException
+    {
+        final File checkedOutDirectory = Util.createTemporaryDirectory("job");
+        claimCheckStore.checkOut(claimCheckId, checkedOutDirectory);
+
+        temporaryDirectory = checkedOutDirectory;
+        if (rScriptFile != null)
+        {
+            rScriptFile = new File(checkedOutDirectory, rScriptFile.getName());
+        }
+        this.claimCheckStore = claimCheckStore;
+        this.claimCheckId = claimCheckId;
+    }
+
     @Override
     protected void releaseResources()
     {
@@ -134,12 +155,24 @@ public class MultiFilesJob extends AbstractJob
         {
             throw new RuntimeException("Can't release resources of: " + this, ioe);
         }
+        finally
+        {
+            if (claimCheckStore != null)
+            {
+                claimCheckStore.discard(claimCheckId);
+            }
+        }
+    }
+
+    File getTemporaryDirectory()
+    {
+        return temporaryDirectory;
     }
 
     public MultiFilesResult buildSuccessResult() throws IOException
     {
-        return new MultiFilesResult(getSource(), getApplicationName(), getUserName(), getJobId(),
-            getSubmissionTime(), getMeta(), true);
+        return replyTo(new MultiFilesResult(getSource(), getApplicationName(), getUserName(),
+            getJobId(), getSubmissionTime(), getMeta(), true));
     }
 
     @Override
@@ -151,8 +184,8 @@ public class MultiFilesJob extends AbstractJob
         template.add("job", this);
         template.add("throwable", t);
 
-        final MultiFilesResult result = new MultiFilesResult(getSource(), getApplicationName(),
-            getUserName(), getJobId(), getSubmissionTime(), getMeta(), false);
+        final MultiFilesResult result = replyTo(new MultiFilesResult(getSource(),
+            getApplicationName(), getUserName(), getJobId(), getSubmissionTime(), getMeta(), false));
         final File resultFile = result.createNewResultFile(getJobId() + "."
                                                            + Util.getResourceType(Constants.TEXT_MIME_TYPE));
         FileCopyUtils.copy(template.render(), new FileWriter(resultFile));
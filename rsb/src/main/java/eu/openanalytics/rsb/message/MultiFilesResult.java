@@ -40,6 +40,7 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.data.ClaimCheckStore;
 
 /**
  * Represents a RSB result that consists of multiple files.
@@ -50,7 +51,10 @@ public class MultiFilesResult extends AbstractResult<File[]>
 {
     private static final long serialVersionUID = 1L;
 
-    private final File temporaryDirectory;
+    private File temporaryDirectory;
+    private File resultArchiveFile;
+    private transient ClaimCheckStore claimCheckStore;
+    private transient String claimCheckId;
 
     public MultiFilesResult(final Source source,
                             final String applicationName,
@@ -69,6 +73,39 @@ public class MultiFilesResult extends AbstractResult<File[]>
         return new File(temporaryDirectory, name);
     }
 
+    /**
+     * Creates the file that will receive a Zip archive of all the result files, in which case no
+     * other result file should be created.
+     */
+    public File createNewResultArchiveFile() throws IOException
+    {
+        resultArchiveFile = new File(temporaryDirectory, getJobId() + ".zip");
+        return resultArchiveFile;
+    }
+
+    public boolean isArchived()
+    {
+        return resultArchiveFile != null;
+    }
+
+    /**
+     * Replaces the files of this result with the ones checked in under the provided ID, which are
+     * discarded when the resources of this result are released.
+     */
+    void checkOut(final ClaimCheckStore claimCheckStore, final String claimCheckId) throws IOException
+    {
+        final File checkedOutDirectory = Util.createTemporaryDirectory("job");
+        claimCheckStore.checkOut(claimCheckId, checkedOutDirectory);
+
+        temporaryDirectory = checkedOutDirectory;
+        if (resultArchiveFile != null)
+        {
+            resultArchiveFile = new File(checkedOutDirectory, resultArchiveFile.getName());
+        }
+        this.claimCheckStore = claimCheckStore;
+        this.claimCheckId = claimCheckId;
+    }
+
     @Override
     protected void releaseResources()
     {
@@ -80,6 +117,13 @@ public class MultiFilesResult extends AbstractResult<File[]>
         {
             throw new RuntimeException("Can't release resources of: " + this, ioe);
         }
+        finally
+        {
+            if (claimCheckStore != null)
+            {
+                claimCheckStore.discard(claimCheckId);
+            }
+        }
     }
 
     @Override
@@ -98,7 +142,8 @@ public class MultiFilesResult extends AbstractResult<File[]>
     /**
      * Zips all the files contained in a multifiles result except if the result is
      * not successful, in that case returns the first file (which should be the only
-     * one and contain a plain text error message).
+     * one and contain a plain text error message), or if the result has already been
+     * archived, in that case returns the archive.
      * 
      * @param result
      * @return
@@ -108,6 +153,11 @@ public class MultiFilesResult extends AbstractResult<File[]>
     public static File zipResultFilesIfNotError(final MultiFilesResult result)
         throws FileNotFoundException, IOException
     {
+        if (result.isArchived())
+        {
+            return result.resultArchiveFile;
+        }
+
         final File[] resultFiles = result.getPayload();
 
         if ((!result.isSuccess()) && (resultFiles.length == 1))
@@ -0,0 +1,87 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.message;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import eu.openanalytics.rsb.component.AbstractComponent;
+
+/**
+ * Hands the results of synchronously processed jobs over to the callers waiting for them, all these
+ * results being consumed by a single listener per node from a queue dedicated to this node: a result
+ * received without a waiting caller is hence one whose caller has given up on it.
+ *
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component("synchronousResultHandler")
+public class SynchronousResultHandler extends AbstractComponent
+{
+    private final ConcurrentMap<UUID, SettableListenableFuture<AbstractResult<?>>> pendingResults = new ConcurrentHashMap<UUID, SettableListenableFuture<AbstractResult<?>>>();
+
+    /**
+     * Registers a job whose result is going to be waited for: must be called before the job is
+     * dispatched so its result can not be missed.
+     */
+    SettableListenableFuture<AbstractResult<?>> register(final UUID jobId)
+    {
+        final SettableListenableFuture<AbstractResult<?>> pendingResult = new SettableListenableFuture<AbstractResult<?>>();
+        pendingResults.put(jobId, pendingResult);
+        return pendingResult;
+    }
+
+    void unregister(final UUID jobId)
+    {
+        pendingResults.remove(jobId);
+    }
+
+    // exposed for unit testing
+    int getPendingResultsCount()
+    {
+        return pendingResults.size();
+    }
+
+    /**
+     * Handles a result of a synchronously processed job.
+     *
+     * @param result
+     */
+    public void handleResult(final AbstractResult<?> result)
+    {
+        final SettableListenableFuture<AbstractResult<?>> pendingResult = pendingResults.remove(result.getJobId());
+
+        if (pendingResult == null)
+        {
+            getLogger().warn("Dropping result of job " + result.getJobId() + " no caller is waiting for anymore");
+            return;
+        }
+
+        pendingResult.set(result);
+    }
+}
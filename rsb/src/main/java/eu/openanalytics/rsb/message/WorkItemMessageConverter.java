@@ -0,0 +1,333 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+import eu.openanalytics.rsb.Constants;
+import eu.openanalytics.rsb.data.ClaimCheckStore;
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
+
+/**
+ * Converts function call jobs and results to and from bytes messages with a compact versioned
+ * binary encoding, their argument or result being carried as raw UTF-8 bytes. Other work items,
+ * which reference files, are still converted to object messages: if a claim check store is
+ * configured, their files are checked in it so any node can process them.
+ *
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class WorkItemMessageConverter implements MessageConverter
+{
+    static final byte FORMAT_VERSION = 2;
+
+    // version 1 lacked the reply node name, its messages can still be in flight during an upgrade
+    private static final byte MINIMUM_FORMAT_VERSION = 1;
+
+    private static final byte XML_FUNCTION_CALL_JOB = 1;
+    private static final byte JSON_FUNCTION_CALL_JOB = 2;
+    private static final byte XML_FUNCTION_CALL_RESULT = 3;
+    private static final byte JSON_FUNCTION_CALL_RESULT = 4;
+
+    private final MessageConverter fallbackMessageConverter = new SimpleMessageConverter();
+
+    private ClaimCheckStore claimCheckStore;
+
+    public void setClaimCheckStore(final ClaimCheckStore claimCheckStore)
+    {
+        this.claimCheckStore = claimCheckStore;
+    }
+
+    public Message toMessage(final Object object, final Session session) throws JMSException
+    {
+        final byte workItemType = getWorkItemType(object);
+        if (workItemType == 0)
+        {
+            return toClaimCheckedMessage(object, session);
+        }
+
+        final BytesMessage message = session.createBytesMessage();
+        message.writeBytes(encode(workItemType, (AbstractWorkItem) object));
+        return message;
+    }
+
+    public Object fromMessage(final Message message) throws JMSException
+    {
+        if (!(message instanceof BytesMessage))
+        {
+            return fromClaimCheckedMessage(message);
+        }
+
+        final BytesMessage bytesMessage = (BytesMessage) message;
+        final byte[] bytes = new byte[(int) bytesMessage.getBodyLength()];
+        bytesMessage.readBytes(bytes);
+        return decode(bytes);
+    }
+
+    private Message toClaimCheckedMessage(final Object object, final Session session) throws JMSException
+    {
+        final File temporaryDirectory = getTemporaryDirectory(object);
+        if ((claimCheckStore == null) || (temporaryDirectory == null))
+        {
+            return fallbackMessageConverter.toMessage(object, session);
+        }
+
+        final String claimCheckId;
+        try
+        {
+            claimCheckId = claimCheckStore.checkIn(temporaryDirectory);
+        }
+        catch (final IOException ioe)
+        {
+            throw new MessageConversionException("Failed to check in the files of: " + object, ioe);
+        }
+
+        // the local files are still needed until the message has been sent, see JmsMessageDispatcher
+        try
+        {
+            final Message message = fallbackMessageConverter.toMessage(object, session);
+            message.setStringProperty(Constants.CLAIM_CHECK_ID_MESSAGE_HEADER, claimCheckId);
+            return message;
+        }
+        catch (final JMSException | RuntimeException e)
+        {
+            claimCheckStore.discard(claimCheckId);
+            throw e;
+        }
+    }
+
+    /**
+     * Discards the files checked in for a message that could not be sent.
+     */
+    void discardClaimCheck(final String claimCheckId)
+    {
+        claimCheckStore.discard(claimCheckId);
+    }
+
+    private Object fromClaimCheckedMessage(final Message message) throws JMSException
+    {
+        final Object object = fallbackMessageConverter.fromMessage(message);
+        final String claimCheckId = message.getStringProperty(Constants.CLAIM_CHECK_ID_MESSAGE_HEADER);
+        if (claimCheckId == null)
+        {
+            return object;
+        }
+
+        if (claimCheckStore == null)
+        {
+            throw new MessageConversionException("No claim check store configured to check out: " + object);
+        }
+
+        try
+        {
+            if (object instanceof MultiFilesJob)
+            {
+                ((MultiFilesJob) object).checkOut(claimCheckStore, claimCheckId);
+            }
+            else if (object instanceof MultiFilesResult)
+            {
+                ((MultiFilesResult) object).checkOut(claimCheckStore, claimCheckId);
+            }
+            return object;
+        }
+        catch (final IOException ioe)
+        {
+            throw new MessageConversionException("Failed to check out the files of: " + object, ioe);
+        }
+    }
+
+    private static File getTemporaryDirectory(final Object object)
+    {
+        if (object instanceof MultiFilesJob)
+        {
+            return ((MultiFilesJob) object).getTemporaryDirectory();
+        }
+        if (object instanceof MultiFilesResult)
+        {
+            return ((MultiFilesResult) object).getTemporaryDirectory();
+        }
+        return null;
+    }
+
+    private static byte getWorkItemType(final Object object)
+    {
+        // exact class matches only, subclasses may hold more state
+        final Class<?> objectClass = object.getClass();
+
+        if (objectClass == XmlFunctionCallJob.class)
+        {
+            return XML_FUNCTION_CALL_JOB;
+        }
+        if (objectClass == JsonFunctionCallJob.class)
+        {
+            return JSON_FUNCTION_CALL_JOB;
+        }
+        if (objectClass == XmlFunctionCallResult.class)
+        {
+            return XML_FUNCTION_CALL_RESULT;
+        }
+        if (objectClass == JsonFunctionCallResult.class)
+        {
+            return JSON_FUNCTION_CALL_RESULT;
+        }
+        return 0;
+    }
+
+    static byte[] encode(final byte workItemType, final AbstractWorkItem workItem)
+    {
+        try
+        {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final DataOutputStream dos = new DataOutputStream(baos);
+
+            dos.writeByte(FORMAT_VERSION);
+            dos.writeByte(workItemType);
+            dos.writeUTF(workItem.getSource().name());
+            dos.writeUTF(workItem.getApplicationName());
+            writeNullableString(dos, workItem.getUserName());
+            dos.writeLong(workItem.getJobId().getMostSignificantBits());
+            dos.writeLong(workItem.getJobId().getLeastSignificantBits());
+            dos.writeLong(workItem.getSubmissionTime().getTimeInMillis());
+            dos.writeUTF(workItem.getSubmissionTime().getTimeZone().getID());
+            writeNullableString(dos, workItem.getReplyNodeName());
+
+            if (workItem instanceof AbstractFunctionCallJob)
+            {
+                writeNullableString(dos, ((AbstractFunctionCallJob) workItem).getArgument());
+            }
+            else
+            {
+                final AbstractFunctionCallResult result = (AbstractFunctionCallResult) workItem;
+                dos.writeBoolean(result.isSuccess());
+                writeNullableString(dos, result.getPayload());
+            }
+
+            dos.flush();
+            return baos.toByteArray();
+        }
+        catch (final IOException ioe)
+        {
+            throw new MessageConversionException("Failed to encode: " + workItem, ioe);
+        }
+    }
+
+    static AbstractWorkItem decode(final byte[] bytes)
+    {
+        try
+        {
+            final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
+
+            final byte formatVersion = dis.readByte();
+            if ((formatVersion < MINIMUM_FORMAT_VERSION) || (formatVersion > FORMAT_VERSION))
+            {
+                throw new MessageConversionException("Unsupported work item format version: " + formatVersion);
+            }
+
+            final byte workItemType = dis.readByte();
+            final Source source = Source.valueOf(dis.readUTF());
+            final String applicationName = dis.readUTF();
+            final String userName = readNullableString(dis);
+            final UUID jobId = new UUID(dis.readLong(), dis.readLong());
+            final long submissionMillis = dis.readLong();
+            final GregorianCalendar submissionTime = new GregorianCalendar(TimeZone.getTimeZone(dis.readUTF()));
+            submissionTime.setTimeInMillis(submissionMillis);
+            final String replyNodeName = formatVersion > 1 ? readNullableString(dis) : null;
+
+            final AbstractWorkItem workItem;
+            switch (workItemType)
+            {
+                case XML_FUNCTION_CALL_JOB :
+                    workItem = new XmlFunctionCallJob(source, applicationName, userName, jobId, submissionTime,
+                        readNullableString(dis));
+                    break;
+                case JSON_FUNCTION_CALL_JOB :
+                    workItem = new JsonFunctionCallJob(source, applicationName, userName, jobId, submissionTime,
+                        readNullableString(dis));
+                    break;
+                case XML_FUNCTION_CALL_RESULT :
+                    workItem = new XmlFunctionCallResult(source, applicationName, userName, jobId, submissionTime,
+                        dis.readBoolean(), readNullableString(dis));
+                    break;
+                case JSON_FUNCTION_CALL_RESULT :
+                    workItem = new JsonFunctionCallResult(source, applicationName, userName, jobId, submissionTime,
+                        dis.readBoolean(), readNullableString(dis));
+                    break;
+                default :
+                    throw new MessageConversionException("Unsupported work item type: " + workItemType);
+            }
+
+            workItem.setReplyNodeName(replyNodeName);
+            return workItem;
+        }
+        catch (final IOException ioe)
+        {
+            throw new MessageConversionException("Failed to decode work item", ioe);
+        }
+    }
+
+    private static void writeNullableString(final DataOutputStream dos, final String s) throws IOException
+    {
+        // length prefixed raw bytes, as writeUTF is limited to 64KB
+        if (s == null)
+        {
+            dos.writeInt(-1);
+            return;
+        }
+
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    private static String readNullableString(final DataInputStream dis) throws IOException
+    {
+        final int length = dis.readInt();
+        if (length < 0)
+        {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length];
+        dis.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
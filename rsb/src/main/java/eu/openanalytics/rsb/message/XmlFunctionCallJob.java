@@ -71,7 +71,7 @@ public class XmlFunctionCallJob extends AbstractFunctionCallJob
 
     private XmlFunctionCallResult buildResult(final boolean success, final String result)
     {
-        return new XmlFunctionCallResult(getSource(), getApplicationName(), getUserName(), getJobId(),
-            getSubmissionTime(), success, result);
+        return replyTo(new XmlFunctionCallResult(getSource(), getApplicationName(), getUserName(),
+            getJobId(), getSubmissionTime(), success, result));
     }
 }
@@ -36,8 +36,6 @@ import java.util.Set;
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
-import org.springframework.stereotype.Component;
-
 import eu.openanalytics.rsb.config.Configuration;
 
 /**
@@ -46,12 +44,14 @@ import eu.openanalytics.rsb.config.Configuration;
  * 
  * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
  */
-@Component
 public class CircularRServiUriSelector implements RServiUriSelector
 {
     @Resource
     private Configuration configuration;
 
+    @Resource
+    private RServiCircuitBreaker rServiCircuitBreaker;
+
     private Map<String, Deque<URI>> circularApplicationUris;
 
     // exposed for unit testing
@@ -60,6 +60,11 @@ public class CircularRServiUriSelector implements RServiUriSelector
         this.configuration = configuration;
     }
 
+    void setRServiCircuitBreaker(final RServiCircuitBreaker rServiCircuitBreaker)
+    {
+        this.rServiCircuitBreaker = rServiCircuitBreaker;
+    }
+
     @PostConstruct
     public void initialize()
     {
@@ -95,6 +100,16 @@ public class CircularRServiUriSelector implements RServiUriSelector
                                            : getCircular(applicationRserviPoolUris);
     }
 
+    public void jobStarted(final URI rServiUri)
+    {
+        // NOOP
+    }
+
+    public void jobCompleted(final URI rServiUri, final long millisecondsSpent, final boolean successful)
+    {
+        // NOOP
+    }
+
     private URI getCircular(final Deque<URI> applicationRserviPoolUris)
     {
         if (applicationRserviPoolUris.size() == 1)
@@ -104,6 +119,17 @@ public class CircularRServiUriSelector implements RServiUriSelector
 
         synchronized (applicationRserviPoolUris)
         {
+            // skip the URIs whose circuit is open, unless they all are
+            for (int i = 0; i < applicationRserviPoolUris.size(); i++)
+            {
+                final URI uri = applicationRserviPoolUris.poll();
+                applicationRserviPoolUris.add(uri);
+                if (!rServiCircuitBreaker.isOpen(uri))
+                {
+                    return uri;
+                }
+            }
+
             final URI uri = applicationRserviPoolUris.poll();
             applicationRserviPoolUris.add(uri);
             return uri;
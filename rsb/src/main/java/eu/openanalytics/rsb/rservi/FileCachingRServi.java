@@ -0,0 +1,49 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import org.eclipse.statet.jcommons.status.StatusException;
+import org.eclipse.statet.rj.servi.RServi;
+
+/**
+ * Defines a RServi instance that keeps copies of files it has received across usages, identified
+ * by the hash of their content.
+ * 
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public interface FileCachingRServi extends RServi
+{
+    /**
+     * Restores a cached file in the working directory of R.
+     * 
+     * @return true if the file was cached and has been restored, false if it must be uploaded.
+     */
+    boolean restoreCachedFile(String contentHash, String fileName) throws StatusException;
+
+    /**
+     * Caches a file that has been uploaded in the working directory of R.
+     */
+    void cacheFile(String contentHash, String fileName) throws StatusException;
+}
@@ -0,0 +1,229 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * Provides RServi URIs, selecting the one with the fewest jobs in flight, weighted by its recent
+ * job latency, when several URIs are configured for one application.
+ *
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class LeastOutstandingRServiUriSelector implements RServiUriSelector
+{
+    /**
+     * Lock-free load counters of an RServi pool URI.
+     */
+    static final class UriLoad
+    {
+        // weight of the latest job in the moving average of the latency
+        private static final int LATENCY_SMOOTHING_FACTOR = 8;
+
+        // latency counted for a failed job, which can fail much faster than a job is processed
+        private static final long FAILED_JOB_LATENCY = 10000L;
+
+        private final AtomicInteger jobsInFlight = new AtomicInteger();
+        private final AtomicLong averageLatency = new AtomicLong();
+
+        void jobStarted()
+        {
+            jobsInFlight.incrementAndGet();
+        }
+
+        void jobCompleted(final long millisecondsSpent, final boolean successful)
+        {
+            jobsInFlight.decrementAndGet();
+
+            // a pool failing fast must not look faster than the ones actually processing jobs
+            final long latency = successful ? millisecondsSpent : Math.max(millisecondsSpent, FAILED_JOB_LATENCY);
+
+            long previousAverage;
+            long newAverage;
+            do
+            {
+                previousAverage = averageLatency.get();
+                newAverage = previousAverage == 0L
+                                                  ? latency
+                                                  : previousAverage
+                                                    + (latency - previousAverage)
+                                                    / LATENCY_SMOOTHING_FACTOR;
+            }
+            while (!averageLatency.compareAndSet(previousAverage, newAverage));
+        }
+
+        int getJobsInFlight()
+        {
+            return jobsInFlight.get();
+        }
+
+        long getAverageLatency()
+        {
+            return averageLatency.get();
+        }
+
+        /**
+         * Estimates the time a new job would take, pools without latency history being deemed
+         * fast so they get a chance to build one.
+         */
+        long getScore()
+        {
+            return (getJobsInFlight() + 1L) * Math.max(getAverageLatency(), 1L);
+        }
+    }
+
+    @Resource
+    private Configuration configuration;
+
+    @Resource
+    private RServiCircuitBreaker rServiCircuitBreaker;
+
+    private Map<String, List<URI>> applicationUris;
+
+    private final ConcurrentMap<URI, UriLoad> uriLoads = new ConcurrentHashMap<URI, UriLoad>();
+
+    // exposed for unit testing
+    void setConfiguration(final Configuration configuration)
+    {
+        this.configuration = configuration;
+    }
+
+    void setRServiCircuitBreaker(final RServiCircuitBreaker rServiCircuitBreaker)
+    {
+        this.rServiCircuitBreaker = rServiCircuitBreaker;
+    }
+
+    @PostConstruct
+    public void initialize()
+    {
+        final Map<String, List<URI>> newApplicationUris = new HashMap<String, List<URI>>();
+
+        final Map<String, Set<URI>> applicationSpecificRserviPoolUris = configuration.getApplicationSpecificRserviPoolUris();
+        if ((applicationSpecificRserviPoolUris != null) && (!applicationSpecificRserviPoolUris.isEmpty()))
+        {
+            for (final Entry<String, Set<URI>> applicationSpecificRserviPoolUri : applicationSpecificRserviPoolUris.entrySet())
+            {
+                newApplicationUris.put(applicationSpecificRserviPoolUri.getKey(),
+                    Collections.unmodifiableList(new ArrayList<URI>(applicationSpecificRserviPoolUri.getValue())));
+            }
+        }
+
+        applicationUris = Collections.unmodifiableMap(newApplicationUris);
+    }
+
+    public URI getUriForApplication(final String applicationName)
+    {
+        final List<URI> applicationRserviPoolUris = applicationUris == null
+                                                                           ? null
+                                                                           : applicationUris.get(applicationName);
+
+        if ((applicationRserviPoolUris == null) || (applicationRserviPoolUris.isEmpty()))
+        {
+            return configuration.getDefaultRserviPoolUri();
+        }
+
+        if (applicationRserviPoolUris.size() == 1)
+        {
+            return applicationRserviPoolUris.get(0);
+        }
+
+        return getLeastOutstanding(applicationRserviPoolUris);
+    }
+
+    public void jobStarted(final URI rServiUri)
+    {
+        getUriLoad(rServiUri).jobStarted();
+    }
+
+    public void jobCompleted(final URI rServiUri, final long millisecondsSpent, final boolean successful)
+    {
+        getUriLoad(rServiUri).jobCompleted(millisecondsSpent, successful);
+    }
+
+    private URI getLeastOutstanding(final List<URI> applicationRserviPoolUris)
+    {
+        // skip the URIs whose circuit is open, unless they all are
+        final URI selectedUri = getLeastOutstanding(applicationRserviPoolUris, true);
+        return selectedUri != null ? selectedUri : getLeastOutstanding(applicationRserviPoolUris, false);
+    }
+
+    private URI getLeastOutstanding(final List<URI> applicationRserviPoolUris, final boolean closedCircuitOnly)
+    {
+        // start at a random position so ties do not always favour the same URI
+        final int size = applicationRserviPoolUris.size();
+        final int offset = ThreadLocalRandom.current().nextInt(size);
+
+        URI selectedUri = null;
+        long selectedScore = Long.MAX_VALUE;
+
+        for (int i = 0; i < size; i++)
+        {
+            final URI uri = applicationRserviPoolUris.get((offset + i) % size);
+            if ((closedCircuitOnly) && (rServiCircuitBreaker.isOpen(uri)))
+            {
+                continue;
+            }
+
+            final long score = getUriLoad(uri).getScore();
+            if (score < selectedScore)
+            {
+                selectedUri = uri;
+                selectedScore = score;
+            }
+        }
+
+        return selectedUri;
+    }
+
+    UriLoad getUriLoad(final URI rServiUri)
+    {
+        final UriLoad uriLoad = uriLoads.get(rServiUri);
+        if (uriLoad != null)
+        {
+            return uriLoad;
+        }
+
+        final UriLoad newUriLoad = new UriLoad();
+        final UriLoad existingUriLoad = uriLoads.putIfAbsent(rServiUri, newUriLoad);
+        return existingUriLoad == null ? newUriLoad : existingUriLoad;
+    }
+}
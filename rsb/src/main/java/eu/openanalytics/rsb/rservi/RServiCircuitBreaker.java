@@ -0,0 +1,251 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import java.net.URI;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.statet.rj.servi.RServi;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import eu.openanalytics.rsb.Constants;
+import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.rservi.RServiInstanceProvider.PoolingStrategy;
+
+/**
+ * Takes RServi pool URIs out of selection after consecutive failures and lets them back in once
+ * a background probe has found them responding again. Probes run on their own bounded pool of
+ * threads, as RMI calls to an unresponsive pool can hang well beyond the probe timeout, and close
+ * the circuit themselves so the scheduler thread that starts them never waits for them.
+ *
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@Component
+public class RServiCircuitBreaker
+{
+    private static final long PROBE_DELAY = 10000L;
+
+    private static final long PROBE_TIMEOUT = 5000L;
+
+    private static final int MAXIMUM_CONCURRENT_PROBES = 4;
+
+    private final static Log LOGGER = LogFactory.getLog(RServiCircuitBreaker.class);
+
+    @Resource
+    private Configuration configuration;
+
+    @Resource
+    private RServiInstanceProvider rServiInstanceProvider;
+
+    private final ConcurrentMap<URI, AtomicInteger> consecutiveFailures = new ConcurrentHashMap<URI, AtomicInteger>();
+
+    private final Set<URI> openUris = ConcurrentHashMap.newKeySet();
+
+    private final ConcurrentMap<URI, Future<?>> runningProbes = new ConcurrentHashMap<URI, Future<?>>();
+
+    private final ExecutorService probeExecutor = Executors.newFixedThreadPool(MAXIMUM_CONCURRENT_PROBES,
+        Util.newDaemonThreadFactory("rsb-rservi-probe-"));
+
+    // exposed for unit testing
+    void setConfiguration(final Configuration configuration)
+    {
+        this.configuration = configuration;
+    }
+
+    void setRServiInstanceProvider(final RServiInstanceProvider rServiInstanceProvider)
+    {
+        this.rServiInstanceProvider = rServiInstanceProvider;
+    }
+
+    /**
+     * @return true if the RServi pool URI must not be selected.
+     */
+    public boolean isOpen(final URI rServiUri)
+    {
+        return openUris.contains(rServiUri);
+    }
+
+    public void recordSuccess(final URI rServiUri)
+    {
+        final AtomicInteger failures = consecutiveFailures.get(rServiUri);
+        if (failures != null)
+        {
+            failures.set(0);
+        }
+    }
+
+    public void recordFailure(final URI rServiUri)
+    {
+        final int threshold = configuration.getCircuitBreakerFailureThreshold();
+        if (threshold < 1)
+        {
+            return;
+        }
+
+        if ((getConsecutiveFailures(rServiUri).incrementAndGet() >= threshold) && (openUris.add(rServiUri)))
+        {
+            LOGGER.warn(String.format(
+                "Circuit opened for RServi pool @ %s after %d consecutive failures, probing it every %dms",
+                rServiUri, threshold, PROBE_DELAY));
+        }
+    }
+
+    /**
+     * Takes the outcome of a health check into account: an unhealthy URI is taken out of selection
+     * until it is found healthy again, whatever the failure threshold as long as it enables the
+     * circuit breaker.
+     */
+    public void recordHealthCheck(final URI rServiUri, final boolean healthy)
+    {
+        if (configuration.getCircuitBreakerFailureThreshold() < 1)
+        {
+            return;
+        }
+
+        if (healthy)
+        {
+            if (openUris.remove(rServiUri))
+            {
+                getConsecutiveFailures(rServiUri).set(0);
+                LOGGER.info(String.format("Circuit closed for RServi pool @ %s after successful health check",
+                    rServiUri));
+            }
+        }
+        else if (openUris.add(rServiUri))
+        {
+            LOGGER.warn(String.format("Circuit opened for RServi pool @ %s after failed health check", rServiUri));
+        }
+    }
+
+    @Scheduled(fixedDelay = PROBE_DELAY)
+    public void probeOpenUris()
+    {
+        for (final URI openUri : openUris)
+        {
+            // a hung probe can not be interrupted, so never pile up probes of the same URI
+            final Future<?> runningProbe = runningProbes.get(openUri);
+            if ((runningProbe != null) && (!runningProbe.isDone()))
+            {
+                LOGGER.warn(String.format("Probe of RServi pool @ %s did not complete within %dms", openUri,
+                    PROBE_DELAY));
+                continue;
+            }
+
+            runningProbes.put(openUri, probeExecutor.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    probe(openUri);
+                }
+            }));
+        }
+    }
+
+    @PreDestroy
+    public void destroy()
+    {
+        probeExecutor.shutdownNow();
+    }
+
+    // exposed for unit testing
+    Future<?> getRunningProbe(final URI rServiUri)
+    {
+        return runningProbes.get(rServiUri);
+    }
+
+    private void probe(final URI rServiUri)
+    {
+        final long startTime = System.currentTimeMillis();
+        final boolean responding = isResponding(rServiUri);
+        final long probeTime = System.currentTimeMillis() - startTime;
+
+        if (probeTime > PROBE_TIMEOUT)
+        {
+            LOGGER.warn(String.format("Probe of RServi pool @ %s did not complete within %dms", rServiUri,
+                PROBE_TIMEOUT));
+            return;
+        }
+
+        if ((responding) && (openUris.remove(rServiUri)))
+        {
+            getConsecutiveFailures(rServiUri).set(0);
+            LOGGER.info(String.format("Circuit closed for RServi pool @ %s", rServiUri));
+        }
+    }
+
+    private boolean isResponding(final URI rServiUri)
+    {
+        try
+        {
+            // never use pooled clients to probe
+            final RServi rServi = rServiInstanceProvider.getRServiInstance(rServiUri.toString(),
+                Constants.RSERVI_CLIENT_ID, PoolingStrategy.NEVER);
+
+            try
+            {
+                return Util.isRResponding(rServi);
+            }
+            finally
+            {
+                rServi.close();
+            }
+        }
+        catch (final Exception e)
+        {
+            if (LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug(String.format("RServi pool @ %s is still not responding", rServiUri), e);
+            }
+            return false;
+        }
+    }
+
+    private AtomicInteger getConsecutiveFailures(final URI rServiUri)
+    {
+        final AtomicInteger failures = consecutiveFailures.get(rServiUri);
+        if (failures != null)
+        {
+            return failures;
+        }
+
+        final AtomicInteger newFailures = new AtomicInteger();
+        final AtomicInteger existingFailures = consecutiveFailures.putIfAbsent(rServiUri, newFailures);
+        return existingFailures == null ? newFailures : existingFailures;
+    }
+}
@@ -33,8 +33,18 @@ import org.eclipse.statet.rj.servi.RServi;
  */
 public interface RServiInstanceProvider {
     public enum PoolingStrategy {
-        NEVER, IF_POSSIBLE
+        NEVER, IF_POSSIBLE,
+        /**
+         * Pools the instance if possible and wipes its working directory and global environment
+         * before it goes back to the pool.
+         */
+        IF_POSSIBLE_WITH_RESET
     };
 
     RServi getRServiInstance(final String address, final String clientId, PoolingStrategy poolingStrategy) throws Exception;
+
+    /**
+     * @return true while pooled RServi instances are being created ahead of traffic.
+     */
+    boolean isWarmingUp();
 }
@@ -34,4 +34,16 @@ import java.net.URI;
 public interface RServiUriSelector
 {
     URI getUriForApplication(String applicationName);
+
+    /**
+     * Notifies that a job starts being processed on the RServi pool at the provided URI.
+     */
+    void jobStarted(URI rServiUri);
+
+    /**
+     * Notifies that a job processed on the RServi pool at the provided URI has completed, whether
+     * successfully or not: jobs that failed, including because of an error raised by R, are not
+     * successful.
+     */
+    void jobCompleted(URI rServiUri, long millisecondsSpent, boolean successful);
 }
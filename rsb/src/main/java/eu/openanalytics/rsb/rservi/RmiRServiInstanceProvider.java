@@ -25,6 +25,21 @@ package eu.openanalytics.rsb.rservi;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
@@ -44,6 +59,7 @@ import org.eclipse.statet.jcommons.lang.NonNullByDefault;
 import org.eclipse.statet.jcommons.lang.Nullable;
 import org.eclipse.statet.jcommons.status.ProgressMonitor;
 import org.eclipse.statet.jcommons.status.StatusException;
+import org.eclipse.statet.rj.data.RDataUtils;
 import org.eclipse.statet.rj.data.RObject;
 import org.eclipse.statet.rj.data.RReference;
 import org.eclipse.statet.rj.servi.RServi;
@@ -69,14 +85,16 @@ import eu.openanalytics.rsb.config.RServiPoolConfig;
 @NonNullByDefault
 public class RmiRServiInstanceProvider implements RServiInstanceProvider
 {
-    private static class RServiPoolKey
+    static class RServiPoolKey
     {
         private final String address, clientId;
+        private final boolean resetWorkspace;
 
-        RServiPoolKey(final String address, final String clientId)
+        RServiPoolKey(final String address, final String clientId, final boolean resetWorkspace)
         {
             this.address = address;
             this.clientId = clientId;
+            this.resetWorkspace = resetWorkspace;
         }
 
         String getAddress()
@@ -89,6 +107,11 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
             return clientId;
         }
 
+        boolean isResetWorkspace()
+        {
+            return resetWorkspace;
+        }
+
         @Override
         public String toString()
         {
@@ -108,20 +131,27 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
         }
     }
 
-    public static class PooledRServiWrapper implements ErrorableRServi
+    public static class PooledRServiWrapper implements ErrorableRServi, FileCachingRServi
     {
         private final KeyedObjectPool<RServiPoolKey, PooledRServiWrapper> rServiPool;
         private final RServiPoolKey key;
         private final RServi rServi;
+        private final boolean discardedOnError;
         private volatile boolean hasError;
+        private volatile boolean workspaceClean = true;
+        private @Nullable String initialWorkingDirectory;
+        private @Nullable String fileCacheDirectory;
+        private final Set<String> cachedFileHashes = ConcurrentHashMap.newKeySet();
 
         PooledRServiWrapper(final KeyedObjectPool<RServiPoolKey, PooledRServiWrapper> rServiPool,
                             final RServiPoolKey key,
-                            final RServi rServi)
+                            final RServi rServi,
+                            final boolean discardedOnError)
         {
             this.rServiPool = rServiPool;
             this.key = key;
             this.rServi = rServi;
+            this.discardedOnError = discardedOnError;
         }
 
         @Override
@@ -135,7 +165,17 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
         {
             try
             {
-                rServiPool.returnObject(key, this);
+                // when not validated on return, an instance in error can not be trusted back in the
+                // pool
+                if (((discardedOnError) && (hasError))
+                    || ((key.isResetWorkspace()) && (!resetWorkspace())))
+                {
+                    rServiPool.invalidateObject(key, this);
+                }
+                else
+                {
+                    rServiPool.returnObject(key, this);
+                }
             }
             catch (final Exception e)
             {
@@ -148,6 +188,55 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
             rServi.close();
         }
 
+        void initializeWorkspace() throws StatusException
+        {
+            final RObject workingDirectory = rServi.evalData("getwd()", null);
+            if (RDataUtils.isSingleString(workingDirectory))
+            {
+                initialWorkingDirectory = workingDirectory.getData().getChar(0);
+            }
+        }
+
+        void markWorkspaceUsed()
+        {
+            workspaceClean = false;
+        }
+
+        boolean isWorkspaceClean()
+        {
+            return workspaceClean;
+        }
+
+        /**
+         * Restores the initial working directory, wipes its content and empties the global
+         * environment.
+         *
+         * @return true if the workspace has been successfully reset.
+         */
+        private boolean resetWorkspace()
+        {
+            try
+            {
+                final String workingDirectory = initialWorkingDirectory;
+                if (workingDirectory != null)
+                {
+                    final FunctionCall setwdCall = rServi.createFunctionCall("setwd");
+                    setwdCall.addChar(workingDirectory);
+                    setwdCall.evalVoid(null);
+                }
+
+                rServi.evalVoid(RESET_WORKSPACE_EXPRESSION, null);
+                workspaceClean = true;
+            }
+            catch (final StatusException se)
+            {
+                markError();
+                LOGGER.warn(String.format("Failed to reset workspace of RServi @ %s", key.getAddress()), se);
+            }
+
+            return workspaceClean;
+        }
+
         @Override
         public void resetError()
         {
@@ -166,6 +255,61 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
             return hasError;
         }
 
+        @Override
+        public boolean restoreCachedFile(final String contentHash, final String fileName)
+            throws StatusException
+        {
+            if (!cachedFileHashes.contains(contentHash))
+            {
+                return false;
+            }
+
+            if (copyFile(getCachedFilePath(contentHash), fileName))
+            {
+                return true;
+            }
+
+            // the cached copy is gone, forget about it
+            cachedFileHashes.remove(contentHash);
+            return false;
+        }
+
+        @Override
+        public void cacheFile(final String contentHash, final String fileName) throws StatusException
+        {
+            if (copyFile(fileName, getCachedFilePath(contentHash)))
+            {
+                cachedFileHashes.add(contentHash);
+            }
+        }
+
+        private String getCachedFilePath(final String contentHash) throws StatusException
+        {
+            // the temporary directory of R is left untouched by workspace resets
+            String cacheDirectory = fileCacheDirectory;
+            if (cacheDirectory == null)
+            {
+                final RObject tempDirectory = rServi.evalData("tempdir()", null);
+                if (!RDataUtils.isSingleString(tempDirectory))
+                {
+                    throw new IllegalStateException("Unexpected return value for tempdir(): " + tempDirectory);
+                }
+                cacheDirectory = tempDirectory.getData().getChar(0);
+                fileCacheDirectory = cacheDirectory;
+            }
+            return cacheDirectory + "/rsb-cached-" + contentHash;
+        }
+
+        private boolean copyFile(final String from, final String to) throws StatusException
+        {
+            final FunctionCall copyCall = rServi.createFunctionCall("file.copy");
+            copyCall.addChar("from", from);
+            copyCall.addChar("to", to);
+            copyCall.addLogi("overwrite", true);
+            final RObject copied = copyCall.evalData(null);
+            return (copied.getLength() == 1) && (copied.getData().getLogi(0));
+        }
+
         @Override
         public RPlatform getPlatform()
         {
@@ -294,6 +438,15 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
 
     private final static Log LOGGER = LogFactory.getLog(RmiRServiInstanceProvider.class);
 
+    private final static String RESET_WORKSPACE_EXPRESSION = "local({"
+                                                            + "graphics.off(); "
+                                                            + "unlink(list.files(all.files = TRUE, no.. = TRUE), recursive = TRUE, force = TRUE); "
+                                                            + "rm(list = ls(globalenv(), all.names = TRUE), envir = globalenv())"
+                                                            + "})";
+
+    private final static long WARM_UP_TIMEOUT = 120000L;
+
+    private final static int MAXIMUM_CONCURRENT_WARM_UPS = 8;
 
     @Resource
     private Configuration configuration;
@@ -303,11 +456,31 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
 
     private KeyedObjectPool<RServiPoolKey, PooledRServiWrapper> rServiPool;
 
+    private @Nullable ExecutorService warmUpExecutor;
+
+    private volatile boolean warmingUp;
+
 
     @SuppressWarnings("null")
     public RmiRServiInstanceProvider() {
     }
 
+    // exposed for unit testing
+    void setConfiguration(final Configuration configuration)
+    {
+        this.configuration = configuration;
+    }
+
+    void setMbeanExportOperations(final MBeanExportOperations mbeanExportOperations)
+    {
+        this.mbeanExportOperations = mbeanExportOperations;
+    }
+
+    KeyedObjectPool<RServiPoolKey, PooledRServiWrapper> getRServiPool()
+    {
+        return rServiPool;
+    }
+
     @PostConstruct
     public void initialize()
     {
@@ -317,6 +490,7 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
             configurePool(config);
             initializeRServiClientPool(config);
             registerRServiClientPoolMBean();
+            warmUpRServiClientPool(config);
         }
     }
 
@@ -350,8 +524,20 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
                     return false;
                 }
 
-                if (rServi.hasError()
-                    || configuration.getRServiClientPoolValidationStrategy() == RServiClientPoolValidationStrategy.FULL)
+                if ((key.isResetWorkspace()) && (!rServi.isWorkspaceClean()))
+                {
+                    if (LOGGER.isInfoEnabled())
+                    {
+                        LOGGER.info(String.format("RServi @ %s has been found invalid because its workspace could not be reset",
+                            key.getAddress()));
+                    }
+                    return false;
+                }
+
+                final RServiClientPoolValidationStrategy validationStrategy = configuration.getRServiClientPoolValidationStrategy();
+
+                if (rServi.hasError() || validationStrategy == RServiClientPoolValidationStrategy.FULL
+                    || validationStrategy == RServiClientPoolValidationStrategy.BACKGROUND)
                 {
                     final boolean responding = Util.isRResponding(rServi);
 
@@ -378,7 +564,13 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
             @Override
             public PooledRServiWrapper create(RServiPoolKey key) throws Exception {
               final RServi rServi = RServiUtils.getRServi(key.getAddress(), key.getClientId());
-              return new PooledRServiWrapper(rServiPool, key, rServi);
+              final PooledRServiWrapper rServiWrapper = new PooledRServiWrapper(rServiPool, key, rServi,
+                  configuration.getRServiClientPoolValidationStrategy() == RServiClientPoolValidationStrategy.BACKGROUND);
+              if (key.isResetWorkspace())
+              {
+                  rServiWrapper.initializeWorkspace();
+              }
+              return rServiWrapper;
             }
 
             @Override
@@ -392,6 +584,155 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
                     + ToStringBuilder.reflectionToString(config));
     }
 
+    /**
+     * Creates, in parallel, the minimum number of idle RServi instances for the default and
+     * application specific pool URIs so the first jobs do not pay the connection cost. The warm up
+     * ends after two minutes at most, even if some RServi pools do not respond.
+     */
+    private void warmUpRServiClientPool(final RServiPoolConfig config)
+    {
+        final int minIdle = config.getMinIdlePerKey();
+        if (minIdle < 1)
+        {
+            return;
+        }
+
+        final List<RServiPoolKey> keys = new ArrayList<RServiPoolKey>();
+        for (final URI uri : getRServiPoolUris())
+        {
+            keys.add(newRServiPoolKey(uri.toString(), Constants.RSERVI_CLIENT_ID, false));
+            if (configuration.isPooledMultiFilesJobs())
+            {
+                keys.add(newRServiPoolKey(uri.toString(), Constants.RSERVI_CLIENT_ID, true));
+            }
+        }
+
+        final int additions = keys.size() * minIdle;
+        final ThreadFactory threadFactory = Util.newDaemonThreadFactory("rsb-rservi-warm-up-");
+        final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(additions, MAXIMUM_CONCURRENT_WARM_UPS), threadFactory);
+        warmUpExecutor = executor;
+        warmingUp = true;
+
+        final long startTime = System.currentTimeMillis();
+        final List<Future<Boolean>> pendingAdditions = new ArrayList<Future<Boolean>>(additions);
+        for (final RServiPoolKey key : keys)
+        {
+            for (int i = 0; i < minIdle; i++)
+            {
+                pendingAdditions.add(executor.submit(new Callable<Boolean>()
+                {
+                    @Override
+                    public Boolean call()
+                    {
+                        return addRServiToPool(key);
+                    }
+                }));
+            }
+        }
+
+        // a hung RServi pool must neither block the start up nor keep the warm up going forever
+        threadFactory.newThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                awaitWarmUp(executor, pendingAdditions, startTime);
+            }
+        }).start();
+    }
+
+    private void awaitWarmUp(final ExecutorService executor,
+                             final List<Future<Boolean>> pendingAdditions,
+                             final long startTime)
+    {
+        final long deadline = startTime + WARM_UP_TIMEOUT;
+        int failedAdditions = 0;
+        int timedOutAdditions = 0;
+
+        try
+        {
+            for (final Future<Boolean> pendingAddition : pendingAdditions)
+            {
+                try
+                {
+                    if (!pendingAddition.get(Math.max(0L, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS))
+                    {
+                        failedAdditions++;
+                    }
+                }
+                catch (final TimeoutException te)
+                {
+                    timedOutAdditions++;
+                }
+                catch (final ExecutionException ee)
+                {
+                    failedAdditions++;
+                }
+            }
+        }
+        catch (final InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            warmingUp = false;
+            executor.shutdownNow();
+        }
+
+        if ((failedAdditions == 0) && (timedOutAdditions == 0))
+        {
+            LOGGER.info(String.format("RServi pool warmed up with %d instance(s) in %dms",
+                pendingAdditions.size(), System.currentTimeMillis() - startTime));
+        }
+        else
+        {
+            LOGGER.warn(String.format(
+                "RServi pool warm up ended after %dms: %d of %d instance(s) failed and %d timed out",
+                System.currentTimeMillis() - startTime, failedAdditions, pendingAdditions.size(),
+                timedOutAdditions));
+        }
+    }
+
+    private boolean addRServiToPool(final RServiPoolKey key)
+    {
+        try
+        {
+            rServiPool.addObject(key);
+            return true;
+        }
+        catch (final Exception e)
+        {
+            LOGGER.warn(String.format("Failed to warm up RServi @ %s", key.getAddress()), e);
+            return false;
+        }
+    }
+
+    private Set<URI> getRServiPoolUris()
+    {
+        final Set<URI> uris = new LinkedHashSet<URI>();
+        uris.add(configuration.getDefaultRserviPoolUri());
+
+        final Map<String, Set<URI>> applicationSpecificRserviPoolUris = configuration.getApplicationSpecificRserviPoolUris();
+        if (applicationSpecificRserviPoolUris != null)
+        {
+            for (final Set<URI> applicationUris : applicationSpecificRserviPoolUris.values())
+            {
+                uris.addAll(applicationUris);
+            }
+        }
+        return uris;
+    }
+
+    private static RServiPoolKey newRServiPoolKey(final String address,
+                                                  final String clientId,
+                                                  final boolean resetWorkspace)
+    {
+        return new RServiPoolKey(address, "pooled-" + clientId, resetWorkspace);
+    }
+
     private void registerRServiClientPoolMBean()
     {
         try
@@ -408,6 +749,13 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
     @PreDestroy
     public void terminate() throws Exception
     {
+        final ExecutorService executor = warmUpExecutor;
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            warmingUp = false;
+        }
+
         if (rServiPool != null)
         {
             rServiPool.close();
@@ -426,10 +774,35 @@ public class RmiRServiInstanceProvider implements RServiInstanceProvider
         }
         else
         {
-            final PooledRServiWrapper rServi = rServiPool.borrowObject(new RServiPoolKey(address, "pooled-"
-                                                                                                  + clientId));
+            final boolean resetWorkspace = poolingStrategy == PoolingStrategy.IF_POSSIBLE_WITH_RESET;
+            final PooledRServiWrapper rServi = rServiPool.borrowObject(newRServiPoolKey(address, clientId,
+                resetWorkspace));
             rServi.resetError();
+            if (resetWorkspace)
+            {
+                rServi.markWorkspaceUsed();
+            }
             return rServi;
         }
     }
+
+    /**
+     * Resizes the RServi client pool so each key can have up to the provided number of active
+     * instances, idle instances in excess being destroyed when returned.
+     */
+    public void resizeRServiClientPool(final int maxPerKey)
+    {
+        if (rServiPool instanceof GenericKeyedObjectPool)
+        {
+            final GenericKeyedObjectPool<RServiPoolKey, PooledRServiWrapper> genericRServiPool = (GenericKeyedObjectPool<RServiPoolKey, PooledRServiWrapper>) rServiPool;
+            genericRServiPool.setMaxTotalPerKey(maxPerKey);
+            genericRServiPool.setMaxIdlePerKey(maxPerKey);
+        }
+    }
+
+    @Override
+    public boolean isWarmingUp()
+    {
+        return warmingUp;
+    }
 }
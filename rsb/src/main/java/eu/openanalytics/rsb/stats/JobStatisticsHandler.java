@@ -45,5 +45,6 @@ public interface JobStatisticsHandler
     void storeJobStatistics(Job job,
                             Calendar jobCompletionTime,
                             long millisecondsSpentProcessing,
+                            Map<JobPhase, Long> millisecondsSpentPerPhase,
                             String rServiAddress);
 }
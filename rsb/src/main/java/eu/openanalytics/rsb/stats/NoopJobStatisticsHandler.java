@@ -44,6 +44,7 @@ public class NoopJobStatisticsHandler implements JobStatisticsHandler
     public void storeJobStatistics(final Job job,
                                    final Calendar jobCompletionTime,
                                    final long millisecondsSpentProcessing,
+                                   final Map<JobPhase, Long> millisecondsSpentPerPhase,
                                    final String rServiAddress)
     {
         // NOOP
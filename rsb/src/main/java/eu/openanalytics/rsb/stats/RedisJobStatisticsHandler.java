@@ -28,6 +28,7 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.TimeZone;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
@@ -101,6 +102,7 @@ public class RedisJobStatisticsHandler implements JobStatisticsHandler
     public void storeJobStatistics(final Job job,
                                    final Calendar jobCompletionTime,
                                    final long millisecondsSpentProcessing,
+                                   final Map<JobPhase, Long> millisecondsSpentPerPhase,
                                    final String rServiAddress)
     {
 
@@ -117,13 +119,20 @@ public class RedisJobStatisticsHandler implements JobStatisticsHandler
                 jedis.sadd(RSB_STATS_KEY_PREFIX + job.getApplicationName() + ":monthstamps", monthStamp);
 
                 // create persisted statistics JSON structure and store it in monthstamp list
-                final Map<String, Object> statsMap = new HashMap<String, Object>(5);
+                final Map<String, Object> statsMap = new HashMap<String, Object>(7);
                 statsMap.put("application_name", job.getApplicationName());
                 statsMap.put("job_id", job.getJobId());
                 statsMap.put("utc_timestamp", jobCompletionTime.getTimeInMillis());
                 statsMap.put("time_spent", millisecondsSpentProcessing);
                 statsMap.put("r_servi_address", rServiAddress);
 
+                final Map<String, Long> phasesMap = new HashMap<String, Long>(millisecondsSpentPerPhase.size());
+                for (final Entry<JobPhase, Long> phase : millisecondsSpentPerPhase.entrySet())
+                {
+                    phasesMap.put(phase.getKey().getStatisticsName(), phase.getValue());
+                }
+                statsMap.put("time_spent_per_phase", phasesMap);
+
                 if (StringUtils.isNotBlank(job.getUserName()))
                 {
                     statsMap.put("user_name", job.getUserName());
@@ -0,0 +1,130 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.component;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.DestinationStatistics;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.rservi.RmiRServiInstanceProvider;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AdaptiveJobCapacityControllerTestCase
+{
+    private AdaptiveJobCapacityController controller;
+
+    @Mock
+    private Configuration configuration;
+    @Mock
+    private BrokerService amqBroker;
+    @Mock
+    private Broker regionBroker;
+    @Mock
+    private RmiRServiInstanceProvider rServiInstanceProvider;
+    @Mock
+    private FairJobScheduler fairJobScheduler;
+
+    private DestinationStatistics jobQueueStatistics;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        controller = new AdaptiveJobCapacityController();
+        controller.setConfiguration(configuration);
+        controller.setAmqBroker(amqBroker);
+        controller.setRServiInstanceProvider(rServiInstanceProvider);
+        controller.setFairJobScheduler(fairJobScheduler);
+
+        jobQueueStatistics = new DestinationStatistics();
+        final Destination jobQueue = mock(Destination.class);
+        when(jobQueue.getDestinationStatistics()).thenReturn(jobQueueStatistics);
+        when(amqBroker.getRegionBroker()).thenReturn(regionBroker);
+        when(regionBroker.getDestinations(any(ActiveMQDestination.class))).thenReturn(
+            Collections.singleton(jobQueue));
+        when(fairJobScheduler.getCapacity()).thenReturn(2);
+    }
+
+    @Test
+    public void adjustCapacityDisabled()
+    {
+        controller.adjustCapacity();
+
+        verifyZeroInteractions(fairJobScheduler, rServiInstanceProvider);
+    }
+
+    @Test
+    public void adjustCapacityScaleUp()
+    {
+        when(configuration.getAdaptiveJobWorkersMinimum()).thenReturn(1);
+        when(configuration.getAdaptiveJobWorkersMaximum()).thenReturn(10);
+
+        // 5 pending jobs taking 30 seconds each need 5 workers to be done in one control period
+        jobQueueStatistics.getMessages().setCount(5);
+        for (int i = 0; i < 4; i++)
+        {
+            jobQueueStatistics.getProcessTime().addTime(30000L);
+        }
+
+        controller.adjustCapacity();
+
+        verify(rServiInstanceProvider).resizeRServiClientPool(5);
+        verify(fairJobScheduler).setCapacity(5);
+    }
+
+    @Test
+    public void adjustCapacityNoScaleDownBelowMinimum()
+    {
+        when(configuration.getAdaptiveJobWorkersMinimum()).thenReturn(2);
+        when(configuration.getAdaptiveJobWorkersMaximum()).thenReturn(10);
+
+        controller.adjustCapacity();
+        controller.adjustCapacity();
+
+        verify(fairJobScheduler, never()).setCapacity(anyInt());
+        // the RServi client pool is only sized once to the job workers
+        verify(rServiInstanceProvider).resizeRServiClientPool(2);
+    }
+}
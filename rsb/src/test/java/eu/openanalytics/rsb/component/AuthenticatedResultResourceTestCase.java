@@ -37,6 +37,7 @@ import java.util.UUID;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.SecurityContext;
@@ -70,6 +71,8 @@ public class AuthenticatedResultResourceTestCase
 
     @Mock
     private SecureResultStore resultStore;
+    @Mock
+    private Request request;
 
     @Mock
     private SecurityContext securityContext;
@@ -93,7 +96,7 @@ public class AuthenticatedResultResourceTestCase
     @Test(expected = WebApplicationException.class)
     public void getResultNotFound() throws IOException
     {
-        resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null, request);
     }
 
     @Test
@@ -101,7 +104,8 @@ public class AuthenticatedResultResourceTestCase
     {
         setupMockResultStore();
 
-        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE,
+            null, null, request);
         assertThat(response.getStatus(), is(Status.OK.getStatusCode()));
 
         final StreamingOutput result = (StreamingOutput) response.getEntity();
@@ -115,7 +119,7 @@ public class AuthenticatedResultResourceTestCase
     @Test(expected = WebApplicationException.class)
     public void getResultMetaNotFound() throws IOException
     {
-        resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE, request);
     }
 
     @Test
@@ -123,7 +127,7 @@ public class AuthenticatedResultResourceTestCase
     {
         setupMockResultStore();
 
-        final Response response = resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        final Response response = resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE, request);
         assertThat(response.getStatus(), is(Status.NO_CONTENT.getStatusCode()));
 
         assertThat(response.getMetadata().get(HttpHeaders.CONTENT_LENGTH), notNullValue());
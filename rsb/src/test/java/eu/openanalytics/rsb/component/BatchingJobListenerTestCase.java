@@ -0,0 +1,200 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.component;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.jms.Destination;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.MessageSource;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.message.AbstractJob;
+import eu.openanalytics.rsb.message.AbstractResult;
+import eu.openanalytics.rsb.message.MessageDispatcher;
+import eu.openanalytics.rsb.message.MultiFilesJob;
+import eu.openanalytics.rsb.message.XmlFunctionCallJob;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BatchingJobListenerTestCase
+{
+    private BatchingJobListener batchingJobListener;
+
+    @Mock
+    private Configuration configuration;
+    @Mock
+    private JobProcessor jobProcessor;
+    @Mock
+    private JmsTemplate jmsTemplate;
+    @Mock
+    private MessageConverter messageConverter;
+    @Mock
+    private Session session;
+
+    @Before
+    public void prepareTest()
+    {
+        batchingJobListener = new BatchingJobListener();
+        batchingJobListener.setConfiguration(configuration);
+        batchingJobListener.setJobProcessor(jobProcessor);
+        batchingJobListener.setJmsTemplate(jmsTemplate);
+
+        when(jmsTemplate.getMessageConverter()).thenReturn(messageConverter);
+    }
+
+    @Test
+    public void onMultiFilesJobMessage() throws Exception
+    {
+        when(configuration.getFunctionCallJobsBatchSize()).thenReturn(5);
+        final Message message = mock(Message.class);
+        final MultiFilesJob job = mock(MultiFilesJob.class);
+        when(messageConverter.fromMessage(message)).thenReturn(job);
+
+        batchingJobListener.onMessage(message, session);
+
+        verify(jobProcessor).process(job);
+        verify(session, never()).createConsumer(any(Destination.class), anyString());
+    }
+
+    @Test
+    public void onUnsupportedJobMessage() throws Exception
+    {
+        final MessageDispatcher messageDispatcher = mock(MessageDispatcher.class);
+        batchingJobListener.setMessageDispatcher(messageDispatcher);
+        final Message message = mock(Message.class);
+        final AbstractJob job = mock(AbstractJob.class);
+        when(messageConverter.fromMessage(message)).thenReturn(job);
+        final AbstractResult<?> result = mock(AbstractResult.class);
+        doReturn(result).when(job).buildErrorResult(any(IllegalArgumentException.class), any(MessageSource.class));
+
+        batchingJobListener.onMessage(message, session);
+
+        verify(messageDispatcher).dispatch(result);
+        verify(job).destroy();
+        verifyZeroInteractions(jobProcessor);
+    }
+
+    @Test
+    public void onMessageCountsBusyJobWorkers() throws Exception
+    {
+        final Message message = mock(Message.class);
+        final XmlFunctionCallJob job = mock(XmlFunctionCallJob.class);
+        when(job.getApplicationName()).thenReturn("app");
+        when(messageConverter.fromMessage(message)).thenReturn(job);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable
+            {
+                assertThat(batchingJobListener.getBusyJobWorkers(), is(Collections.singletonMap("app", 1)));
+                return null;
+            }
+        }).when(jobProcessor).process(job);
+
+        batchingJobListener.onMessage(message, session);
+
+        verify(jobProcessor).process(job);
+        assertThat(batchingJobListener.getBusyJobWorkers().isEmpty(), is(true));
+    }
+
+    @Test
+    public void onFunctionCallJobMessageBatchingDisabled() throws Exception
+    {
+        final Message message = mock(Message.class);
+        final XmlFunctionCallJob job = mock(XmlFunctionCallJob.class);
+        when(messageConverter.fromMessage(message)).thenReturn(job);
+
+        batchingJobListener.onMessage(message, session);
+
+        verify(jobProcessor).process(job);
+        verify(session, never()).createConsumer(any(Destination.class), anyString());
+    }
+
+    @Test
+    public void onFunctionCallJobMessageBatchingEnabled() throws Exception
+    {
+        when(configuration.getFunctionCallJobsBatchSize()).thenReturn(3);
+
+        final Queue queue = mock(Queue.class);
+        when(queue.getQueueName()).thenReturn("r.jobs.app");
+        final Queue pullQueue = mock(Queue.class);
+        when(session.createQueue("r.jobs.app?consumer.prefetchSize=0")).thenReturn(pullQueue);
+        final Message message1 = mock(Message.class);
+        when(message1.getJMSDestination()).thenReturn(queue);
+        final Message message2 = mock(Message.class);
+        final Message message3 = mock(Message.class);
+        when(message3.getJMSDestination()).thenReturn(queue);
+        final XmlFunctionCallJob job1 = mock(XmlFunctionCallJob.class);
+        final XmlFunctionCallJob job2 = mock(XmlFunctionCallJob.class);
+        final XmlFunctionCallJob job3 = mock(XmlFunctionCallJob.class);
+        when(messageConverter.fromMessage(message1)).thenReturn(job1);
+        when(messageConverter.fromMessage(message2)).thenReturn(job2);
+        when(messageConverter.fromMessage(message3)).thenReturn(job3);
+
+        final MessageConsumer batchConsumer = mock(MessageConsumer.class);
+        when(session.createConsumer(eq(pullQueue), anyString())).thenReturn(batchConsumer);
+        when(batchConsumer.receiveNoWait()).thenReturn(message2, (Message) null);
+
+        batchingJobListener.onMessage(message1, session);
+        batchingJobListener.onMessage(message3, session);
+
+        verify(jobProcessor).process(Arrays.asList(job1, job2));
+        verify(jobProcessor).process(Arrays.asList(job3));
+        // the batch consumer is kept for the next batches
+        verify(session, times(1)).createConsumer(any(Destination.class), anyString());
+        verify(batchConsumer, never()).close();
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.component;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.DestinationStatistics;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class FairJobSchedulerTestCase
+{
+    private static final Map<String, Integer> NO_BUSY_JOB_WORKERS = Collections.emptyMap();
+
+    private FairJobScheduler fairJobScheduler;
+
+    @Mock
+    private Configuration configuration;
+    @Mock
+    private BrokerService amqBroker;
+    @Mock
+    private Broker regionBroker;
+    @Mock
+    private ApplicationJobListeners applicationJobListeners;
+    @Mock
+    private BatchingJobListener batchingJobListener;
+
+    private final Set<Destination> jobQueues = new HashSet<Destination>();
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        when(configuration.getNumberOfConcurrentJobWorkersPerQueue()).thenReturn(2);
+        when(amqBroker.getRegionBroker()).thenReturn(regionBroker);
+        when(regionBroker.getDestinations(any(ActiveMQDestination.class))).thenReturn(jobQueues);
+
+        fairJobScheduler = new FairJobScheduler();
+        fairJobScheduler.setConfiguration(configuration);
+        fairJobScheduler.setAmqBroker(amqBroker);
+        fairJobScheduler.setApplicationJobListeners(applicationJobListeners);
+        fairJobScheduler.setBatchingJobListener(batchingJobListener);
+        fairJobScheduler.initialize();
+    }
+
+    @Test
+    public void allJobWorkersUsedByLoneApplication()
+    {
+        final Map<String, Integer> allocation = FairJobScheduler.allocate(4, Arrays.asList("flood"),
+            pendingJobs("flood", 10L), NO_BUSY_JOB_WORKERS, null);
+
+        assertThat(allocation.get("flood"), is(4));
+    }
+
+    @Test
+    public void jobWorkersSharedEqually()
+    {
+        final Map<String, Long> pendingJobs = pendingJobs("flood", 10L);
+        pendingJobs.put("other", 10L);
+
+        final Map<String, Integer> allocation = FairJobScheduler.allocate(4, Arrays.asList("flood", "other"),
+            pendingJobs, NO_BUSY_JOB_WORKERS, null);
+
+        assertThat(allocation.get("flood"), is(2));
+        assertThat(allocation.get("other"), is(2));
+    }
+
+    @Test
+    public void jobWorkersNotNeededGivenToFloodingApplication()
+    {
+        final Map<String, Long> pendingJobs = pendingJobs("flood", 10L);
+        pendingJobs.put("other", 1L);
+
+        final Map<String, Integer> allocation = FairJobScheduler.allocate(4, Arrays.asList("flood", "other"),
+            pendingJobs, NO_BUSY_JOB_WORKERS, null);
+
+        assertThat(allocation.get("flood"), is(3));
+        assertThat(allocation.get("other"), is(1));
+    }
+
+    @Test
+    public void jobWorkersSharedAccordingToWeights()
+    {
+        final Map<String, Long> pendingJobs = pendingJobs("heavy", 10L);
+        pendingJobs.put("light", 10L);
+
+        final Map<String, Integer> allocation = FairJobScheduler.allocate(4, Arrays.asList("heavy", "light"),
+            pendingJobs, NO_BUSY_JOB_WORKERS, Collections.singletonMap("heavy", 3));
+
+        assertThat(allocation.get("heavy"), is(3));
+        assertThat(allocation.get("light"), is(1));
+    }
+
+    @Test
+    public void spareJobWorkersGivenToIdleApplications()
+    {
+        final Map<String, Long> pendingJobs = pendingJobs("busy", 1L);
+        pendingJobs.put("idle", 0L);
+
+        final Map<String, Integer> allocation = FairJobScheduler.allocate(4, Arrays.asList("busy", "idle"),
+            pendingJobs, NO_BUSY_JOB_WORKERS, null);
+
+        assertThat(allocation.get("busy"), is(2));
+        assertThat(allocation.get("idle"), is(2));
+    }
+
+    @Test
+    public void firstJobWorkersGivenInOrderWhenApplicationsOutnumberThem()
+    {
+        final Map<String, Long> pendingJobs = pendingJobs("first", 5L);
+        pendingJobs.put("second", 1L);
+        pendingJobs.put("third", 5L);
+
+        final Map<String, Integer> allocation = FairJobScheduler.allocate(2,
+            Arrays.asList("first", "second", "third"), pendingJobs, NO_BUSY_JOB_WORKERS, null);
+
+        assertThat(allocation.get("first"), is(1));
+        assertThat(allocation.get("second"), is(1));
+        assertThat(allocation.get("third"), is(0));
+    }
+
+    @Test
+    public void busyJobWorkersGivenAwayOnceDone()
+    {
+        final Map<String, Long> pendingJobs = pendingJobs("other", 1L);
+        pendingJobs.put("flood", 10L);
+        final Map<String, Integer> busyJobWorkers = new HashMap<String, Integer>();
+        busyJobWorkers.put("flood", 2);
+
+        Map<String, Integer> allocation = FairJobScheduler.allocate(2, Arrays.asList("other", "flood"),
+            pendingJobs, busyJobWorkers, null);
+
+        assertThat(allocation.get("flood"), is(1));
+        assertThat(allocation.get("other"), is(0));
+
+        busyJobWorkers.put("flood", 1);
+        allocation = FairJobScheduler.allocate(2, Arrays.asList("other", "flood"), pendingJobs, busyJobWorkers,
+            null);
+
+        assertThat(allocation.get("flood"), is(1));
+        assertThat(allocation.get("other"), is(1));
+    }
+
+    @Test
+    public void rebalanceSizesApplicationJobListeners() throws Exception
+    {
+        addJobQueue("r.jobs.flood", 5L);
+        addJobQueue("r.jobs.flood.sync", 1L);
+        addJobQueue("r.jobs.other", 1L);
+        when(configuration.getApplicationJobWorkerWeights()).thenReturn(Collections.singletonMap("weighted", 2));
+        fairJobScheduler.setCapacity(8);
+
+        fairJobScheduler.rebalance();
+
+        // the application with a weight gets the spare job worker although no job is pending for it
+        verify(applicationJobListeners).setJobWorkers("flood", 6);
+        verify(applicationJobListeners).setJobWorkers("other", 1);
+        verify(applicationJobListeners).setJobWorkers("weighted", 1);
+    }
+
+    @Test
+    public void rebalanceIgnoresInvalidApplicationNames() throws Exception
+    {
+        addJobQueue("r.jobs.in-valid", 5L);
+
+        fairJobScheduler.rebalance();
+
+        verify(applicationJobListeners, never()).setJobWorkers(anyString(), anyInt());
+    }
+
+    @Test
+    public void rebalanceLetsApplicationsTakeTurns() throws Exception
+    {
+        addJobQueue("r.jobs.first", 1L);
+        addJobQueue("r.jobs.second", 1L);
+        fairJobScheduler.setCapacity(1);
+
+        fairJobScheduler.rebalance();
+        fairJobScheduler.rebalance();
+
+        verify(applicationJobListeners, times(1)).setJobWorkers("first", 1);
+        verify(applicationJobListeners, times(1)).setJobWorkers("first", 0);
+        verify(applicationJobListeners, times(1)).setJobWorkers("second", 1);
+        verify(applicationJobListeners, times(1)).setJobWorkers("second", 0);
+    }
+
+    private static Map<String, Long> pendingJobs(final String applicationName, final long jobs)
+    {
+        final Map<String, Long> pendingJobs = new HashMap<String, Long>();
+        pendingJobs.put(applicationName, jobs);
+        return pendingJobs;
+    }
+
+    private void addJobQueue(final String queueName, final long pendingJobs)
+    {
+        final DestinationStatistics statistics = new DestinationStatistics();
+        statistics.getMessages().setCount(pendingJobs);
+        final Destination jobQueue = mock(Destination.class);
+        when(jobQueue.getActiveMQDestination()).thenReturn(new ActiveMQQueue(queueName));
+        when(jobQueue.getDestinationStatistics()).thenReturn(statistics);
+        jobQueues.add(jobQueue);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *   R Service Bus
+ *
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.component;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.DestinationStatistics;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class JobAdmissionControllerTestCase
+{
+    private JobAdmissionController jobAdmissionController;
+
+    @Mock
+    private Configuration configuration;
+    @Mock
+    private BrokerService amqBroker;
+    @Mock
+    private Broker regionBroker;
+
+    private DestinationStatistics jobQueueStatistics;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        jobAdmissionController = new JobAdmissionController();
+        jobAdmissionController.setConfiguration(configuration);
+        jobAdmissionController.setAmqBroker(amqBroker);
+
+        jobQueueStatistics = new DestinationStatistics();
+        final Destination jobQueue = mock(Destination.class);
+        when(jobQueue.getDestinationStatistics()).thenReturn(jobQueueStatistics);
+        when(amqBroker.getRegionBroker()).thenReturn(regionBroker);
+        when(regionBroker.getDestinations(any(ActiveMQDestination.class))).thenReturn(
+            Collections.singleton(jobQueue));
+    }
+
+    @Test
+    public void admitWithoutLimits()
+    {
+        jobQueueStatistics.getMessages().setCount(1000);
+
+        assertThat(jobAdmissionController.admit("app", "user", UUID.randomUUID()), is(0L));
+        assertThat(jobAdmissionController.getUserInFlightJobs("user"), is(0));
+    }
+
+    @Test
+    public void rejectAbovePendingJobsLimit()
+    {
+        when(configuration.getJobAdmissionMaximumPendingJobsPerApplication()).thenReturn(10);
+        jobAdmissionController.setApplicationThroughput("app", 0.5d);
+
+        jobQueueStatistics.getMessages().setCount(9);
+        final UUID admittedJobId = UUID.randomUUID();
+        assertThat(jobAdmissionController.admit("app", "user", admittedJobId), is(0L));
+        jobAdmissionController.enqueued(admittedJobId);
+
+        // 2 jobs must be processed to get below the limit, at 1 job every 2 seconds
+        jobQueueStatistics.getMessages().setCount(11);
+        assertThat(jobAdmissionController.admit("app", "user", UUID.randomUUID()), is(4L));
+    }
+
+    @Test
+    public void admittedJobsHoldPendingSlotUntilEnqueued()
+    {
+        when(configuration.getJobAdmissionMaximumPendingJobsPerApplication()).thenReturn(10);
+        jobQueueStatistics.getMessages().setCount(9);
+
+        final UUID admittedJobId = UUID.randomUUID();
+        assertThat(jobAdmissionController.admit("app", "user", admittedJobId), is(0L));
+        // the last slot is taken even though the admitted job is not in the queue yet
+        assertThat(jobAdmissionController.admit("app", "user", UUID.randomUUID()),
+            is(JobAdmissionController.DEFAULT_RETRY_AFTER_SECONDS));
+
+        // a job that could not be submitted frees its slot
+        jobAdmissionController.release(admittedJobId);
+        final UUID enqueuedJobId = UUID.randomUUID();
+        assertThat(jobAdmissionController.admit("app", "user", enqueuedJobId), is(0L));
+
+        // an enqueued job is counted by the queue depth instead
+        jobQueueStatistics.getMessages().setCount(10);
+        jobAdmissionController.enqueued(enqueuedJobId);
+        assertThat(jobAdmissionController.admit("app", "user", UUID.randomUUID()),
+            is(JobAdmissionController.DEFAULT_RETRY_AFTER_SECONDS));
+
+        jobQueueStatistics.getMessages().setCount(9);
+        assertThat(jobAdmissionController.admit("app", "user", UUID.randomUUID()), is(0L));
+    }
+
+    @Test
+    public void rejectAboveUserInFlightJobsLimit()
+    {
+        when(configuration.getJobAdmissionMaximumInFlightJobsPerUser()).thenReturn(2);
+        final UUID firstJobId = UUID.randomUUID();
+
+        assertThat(jobAdmissionController.admit("app", "user", firstJobId), is(0L));
+        assertThat(jobAdmissionController.admit("app", "user", UUID.randomUUID()), is(0L));
+        assertThat(jobAdmissionController.admit("app", "user", UUID.randomUUID()),
+            is(JobAdmissionController.DEFAULT_RETRY_AFTER_SECONDS));
+        assertThat(jobAdmissionController.admit("app", "other", UUID.randomUUID()), is(0L));
+        assertThat(jobAdmissionController.getUserInFlightJobs("user"), is(2));
+
+        jobAdmissionController.release(firstJobId);
+
+        assertThat(jobAdmissionController.getUserInFlightJobs("user"), is(1));
+        assertThat(jobAdmissionController.admit("app", "user", UUID.randomUUID()), is(0L));
+    }
+
+    @Test
+    public void estimateRetryAfterSeconds()
+    {
+        assertThat(jobAdmissionController.estimateRetryAfterSeconds("app", 10L),
+            is(JobAdmissionController.DEFAULT_RETRY_AFTER_SECONDS));
+
+        jobAdmissionController.setApplicationThroughput("app", 100.0d);
+        assertThat(jobAdmissionController.estimateRetryAfterSeconds("app", 10L), is(1L));
+
+        jobAdmissionController.setApplicationThroughput("app", 0.001d);
+        assertThat(jobAdmissionController.estimateRetryAfterSeconds("app", 10L),
+            is(JobAdmissionController.MAXIMUM_RETRY_AFTER_SECONDS));
+    }
+}
@@ -26,25 +26,39 @@ package eu.openanalytics.rsb.component;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.rmi.RemoteException;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -55,20 +69,27 @@ import org.eclipse.statet.jcommons.status.ProgressMonitor;
 import org.eclipse.statet.jcommons.status.StatusException;
 import org.eclipse.statet.rj.data.RObject;
 import org.eclipse.statet.rj.data.impl.RCharacter32Store;
+import org.eclipse.statet.rj.data.impl.RInteger32Store;
 import org.eclipse.statet.rj.data.impl.RVectorImpl;
 import org.eclipse.statet.rj.servi.RServi;
 import org.eclipse.statet.rj.services.FunctionCall;
 
+import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.config.Configuration.CatalogSection;
+import eu.openanalytics.rsb.data.CatalogManager;
 import eu.openanalytics.rsb.message.AbstractFunctionCallJob;
 import eu.openanalytics.rsb.message.AbstractFunctionCallResult;
 import eu.openanalytics.rsb.message.AbstractResult;
 import eu.openanalytics.rsb.message.MessageDispatcher;
 import eu.openanalytics.rsb.message.MultiFilesJob;
 import eu.openanalytics.rsb.message.MultiFilesResult;
+import eu.openanalytics.rsb.rservi.FileCachingRServi;
+import eu.openanalytics.rsb.rservi.RServiCircuitBreaker;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider.PoolingStrategy;
 import eu.openanalytics.rsb.rservi.RServiUriSelector;
+import eu.openanalytics.rsb.stats.JobPhase;
 import eu.openanalytics.rsb.stats.JobStatisticsHandler;
 
 /**
@@ -89,6 +110,8 @@ public class JobProcessorTestCase
     private JobStatisticsHandler jobStatisticsHandler;
     @Mock
     private RServiUriSelector rServiUriSelector;
+    @Mock
+    private RServiCircuitBreaker rServiCircuitBreaker;
 
     @Before
     public void prepareTest() throws URISyntaxException
@@ -97,6 +120,7 @@ public class JobProcessorTestCase
         jobProcessor.setConfiguration(configuration);
         jobProcessor.setMessageDispatcher(messageDispatcher);
         jobProcessor.setRServiUriSelector(rServiUriSelector);
+        jobProcessor.setRServiCircuitBreaker(rServiCircuitBreaker);
         jobProcessor.setRServiInstanceProvider(rServiInstanceProvider);
         jobProcessor.setJobStatisticsHandler(jobStatisticsHandler);
 
@@ -142,6 +166,34 @@ public class JobProcessorTestCase
         verify(messageDispatcher).dispatch(eq(result));
     }
 
+    @Test
+    public void processRserviCommunicationErrorRetried() throws Exception
+    {
+        final URI defaultPoolUri = new URI("fake://default");
+        final RServi rServi = mock(RServi.class);
+        when(
+            rServiInstanceProvider.getRServiInstance(anyString(), anyString(),
+                eq(PoolingStrategy.IF_POSSIBLE))).thenReturn(rServi);
+        when(rServi.createFunctionCall(anyString())).thenThrow(
+            new RuntimeException(new RemoteException("simulated RMI issue")));
+        final AbstractFunctionCallJob job = mock(AbstractFunctionCallJob.class);
+
+        try
+        {
+            jobProcessor.process(job);
+            fail("an exception should have been raised");
+        }
+        catch (final RuntimeException re)
+        {
+            // expected, so the job gets redelivered
+        }
+
+        verify(rServiCircuitBreaker).recordFailure(defaultPoolUri);
+        verify(job, never()).buildErrorResult(any(Throwable.class), any(MessageSource.class));
+        verify(job, never()).destroy();
+        verifyZeroInteractions(messageDispatcher);
+    }
+
     @Test
     public void processDirect() throws Exception
     {
@@ -152,7 +204,7 @@ public class JobProcessorTestCase
         final AbstractFunctionCallResult processDirectResult = (AbstractFunctionCallResult) jobProcessor.processDirect(job);
 
         verify(jobStatisticsHandler).storeJobStatistics(eq(job), any(Calendar.class), anyLong(),
-            eq(defaultPoolUri.toString()));
+            anyMapOf(JobPhase.class, Long.class), eq(defaultPoolUri.toString()));
         verifyZeroInteractions(messageDispatcher);
 
         assertThat(processDirectResult, is(result));
@@ -164,12 +216,104 @@ public class JobProcessorTestCase
         final URI defaultPoolUri = new URI("fake://default");
         final AbstractFunctionCallJob job = setupMocksForProcessingFunctionCallJob(defaultPoolUri);
         final AbstractFunctionCallResult result = setupResultMockForFunctionCallJob(job);
+        when(result.isSuccess()).thenReturn(true);
 
         jobProcessor.process(job);
 
         verify(jobStatisticsHandler).storeJobStatistics(eq(job), any(Calendar.class), anyLong(),
-            eq(defaultPoolUri.toString()));
+            anyMapOf(JobPhase.class, Long.class), eq(defaultPoolUri.toString()));
         verify(messageDispatcher).dispatch(eq(result));
+        verify(rServiUriSelector).jobStarted(defaultPoolUri);
+        verify(rServiUriSelector).jobCompleted(eq(defaultPoolUri), anyLong(), eq(true));
+    }
+
+    @Test
+    public void processFunctionCallJobsBatch() throws Exception
+    {
+        final URI defaultPoolUri = new URI("fake://default");
+        final AbstractFunctionCallJob job1 = setupMocksForProcessingFunctionCallJob(defaultPoolUri);
+        final AbstractFunctionCallResult result1 = setupResultMockForFunctionCallJob(job1);
+        when(result1.isSuccess()).thenReturn(true);
+        final AbstractFunctionCallJob job2 = mock(AbstractFunctionCallJob.class);
+        final AbstractFunctionCallResult result2 = setupResultMockForFunctionCallJob(job2);
+        when(result2.isSuccess()).thenReturn(true);
+
+        jobProcessor.process(Arrays.asList(job1, job2));
+
+        verify(rServiInstanceProvider, times(1)).getRServiInstance(anyString(), anyString(),
+            eq(PoolingStrategy.IF_POSSIBLE));
+        verify(jobStatisticsHandler).storeJobStatistics(eq(job1), any(Calendar.class), anyLong(),
+            anyMapOf(JobPhase.class, Long.class), eq(defaultPoolUri.toString()));
+        verify(jobStatisticsHandler).storeJobStatistics(eq(job2), any(Calendar.class), anyLong(),
+            anyMapOf(JobPhase.class, Long.class), eq(defaultPoolUri.toString()));
+        verify(messageDispatcher).dispatch(eq(result1));
+        verify(messageDispatcher).dispatch(eq(result2));
+    }
+
+    @Test
+    public void processFunctionCallJobsBatchCommunicationErrorNotRetried() throws Exception
+    {
+        final URI defaultPoolUri = new URI("fake://default");
+        final RServi rServi = mock(RServi.class);
+        when(
+            rServiInstanceProvider.getRServiInstance(anyString(), anyString(),
+                eq(PoolingStrategy.IF_POSSIBLE))).thenReturn(rServi);
+        final FunctionCall functionCall = mock(FunctionCall.class);
+        when(rServi.createFunctionCall(anyString())).thenReturn(functionCall);
+        final Throwable exception = new RuntimeException(new RemoteException("simulated RMI issue"));
+        when(functionCall.evalData(null)).thenReturn(new RVectorImpl<>(new RCharacter32Store(
+            new String[]{"fake_result"}))).thenThrow(exception);
+
+        final AbstractFunctionCallJob job1 = mock(AbstractFunctionCallJob.class);
+        final AbstractFunctionCallResult result1 = setupResultMockForFunctionCallJob(job1);
+        when(result1.isSuccess()).thenReturn(true);
+        final AbstractFunctionCallJob job2 = mock(AbstractFunctionCallJob.class);
+        final AbstractFunctionCallResult result2 = mock(AbstractFunctionCallResult.class);
+        doReturn(result2).when(job2).buildErrorResult(eq(exception), any(MessageSource.class));
+
+        // the result of the first job is out, so the batch must not be redelivered
+        jobProcessor.process(Arrays.asList(job1, job2));
+
+        verify(messageDispatcher).dispatch(eq(result1));
+        verify(messageDispatcher).dispatch(eq(result2));
+        verify(rServiCircuitBreaker).recordFailure(defaultPoolUri);
+        verify(job2).destroy();
+    }
+
+    @Test
+    public void processFunctionCallJobsBatchRemainingJobsNotRetried() throws Exception
+    {
+        final URI defaultPoolUri = new URI("fake://default");
+        final RServi rServi = mock(RServi.class);
+        final Exception communicationException = new RemoteException("simulated RMI issue");
+        when(
+            rServiInstanceProvider.getRServiInstance(anyString(), anyString(),
+                eq(PoolingStrategy.IF_POSSIBLE))).thenReturn(rServi).thenThrow(communicationException);
+        final FunctionCall functionCall = mock(FunctionCall.class);
+        when(rServi.createFunctionCall(anyString())).thenReturn(functionCall);
+        final Throwable rException = new RuntimeException("simulated R error");
+        when(functionCall.evalData(null)).thenReturn(new RVectorImpl<>(new RCharacter32Store(
+            new String[]{"fake_result"}))).thenThrow(rException);
+
+        final AbstractFunctionCallJob job1 = mock(AbstractFunctionCallJob.class);
+        final AbstractFunctionCallResult result1 = setupResultMockForFunctionCallJob(job1);
+        when(result1.isSuccess()).thenReturn(true);
+        final AbstractFunctionCallJob job2 = mock(AbstractFunctionCallJob.class);
+        final AbstractFunctionCallResult result2 = mock(AbstractFunctionCallResult.class);
+        doReturn(result2).when(job2).buildErrorResult(eq(rException), any(MessageSource.class));
+        final AbstractFunctionCallJob job3 = mock(AbstractFunctionCallJob.class);
+        final AbstractFunctionCallResult result3 = mock(AbstractFunctionCallResult.class);
+        doReturn(result3).when(job3).buildErrorResult(eq(communicationException), any(MessageSource.class));
+
+        // the third job is processed on its own after the second failed, but the results of the
+        // first two are out so the batch must not be redelivered
+        jobProcessor.process(Arrays.asList(job1, job2, job3));
+
+        verify(messageDispatcher).dispatch(eq(result1));
+        verify(messageDispatcher).dispatch(eq(result2));
+        verify(messageDispatcher).dispatch(eq(result3));
+        verify(rServiCircuitBreaker).recordFailure(defaultPoolUri);
+        verify(job3).destroy();
     }
 
     @Test
@@ -214,7 +358,150 @@ public class JobProcessorTestCase
         jobProcessor.process(job);
 
         verify(jobStatisticsHandler).storeJobStatistics(eq(job), any(Calendar.class), anyLong(),
-            eq(defaultPoolUri.toString()));
+            anyMapOf(JobPhase.class, Long.class), eq(defaultPoolUri.toString()));
+        assertMultiFilesJobPhasesStored(job);
+        verify(messageDispatcher).dispatch(eq(result));
+    }
+
+    @Test
+    public void processMultiFilesJobPooled() throws Exception
+    {
+        final URI defaultPoolUri = new URI("fake://default");
+        when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
+        when(configuration.isPooledMultiFilesJobs()).thenReturn(true);
+        final RServi rServi = mock(RServi.class);
+        when(
+            rServiInstanceProvider.getRServiInstance(anyString(), anyString(),
+                eq(PoolingStrategy.IF_POSSIBLE_WITH_RESET))).thenReturn(rServi);
+        final FunctionCall functionCall = mock(FunctionCall.class);
+        when(rServi.createFunctionCall(anyString())).thenReturn(functionCall);
+        final RObject rObject = new RVectorImpl<>(new RCharacter32Store(new String[0]));
+        when(rServi.evalData(anyString(), (ProgressMonitor) isNull())).thenReturn(rObject);
+        final MultiFilesJob job = mock(MultiFilesJob.class);
+        final File scriptFile = File.createTempFile("rsb", "test");
+        scriptFile.deleteOnExit();
+        when(job.getRScriptFile()).thenReturn(scriptFile);
+        when(job.getFiles()).thenReturn(new File[]{scriptFile});
+        final MultiFilesResult result = mock(MultiFilesResult.class);
+        when(job.buildSuccessResult()).thenReturn(result);
+
+        jobProcessor.process(job);
+
+        verify(rServi).close();
+        verify(messageDispatcher).dispatch(eq(result));
+    }
+
+    @Test
+    public void processMultiFilesJobArchivedUpload() throws Exception
+    {
+        final URI defaultPoolUri = new URI("fake://default");
+        when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
+        when(configuration.isArchivedJobFilesUpload()).thenReturn(true);
+        final RServi rServi = mock(RServi.class);
+        when(rServiInstanceProvider.getRServiInstance(anyString(), anyString(), eq(PoolingStrategy.NEVER))).thenReturn(
+            rServi);
+        final FunctionCall functionCall = mock(FunctionCall.class);
+        when(rServi.createFunctionCall(anyString())).thenReturn(functionCall);
+        final RObject rObject = new RVectorImpl<>(new RCharacter32Store(new String[0]));
+        when(rServi.evalData(anyString(), (ProgressMonitor) isNull())).thenReturn(rObject);
+        final MultiFilesJob job = mock(MultiFilesJob.class);
+        final File scriptFile = File.createTempFile("rsb", "test");
+        scriptFile.deleteOnExit();
+        final File dataFile = File.createTempFile("rsb", "data");
+        dataFile.deleteOnExit();
+        when(job.getRScriptFile()).thenReturn(scriptFile);
+        when(job.getFiles()).thenReturn(new File[]{scriptFile, dataFile});
+        final MultiFilesResult result = mock(MultiFilesResult.class);
+        when(job.buildSuccessResult()).thenReturn(result);
+
+        jobProcessor.process(job);
+
+        verify(rServi).uploadFile(any(InputStream.class), anyLong(), eq(Constants.JOB_FILES_ARCHIVE), eq(0),
+            (ProgressMonitor) isNull());
+        verify(rServi, never()).uploadFile(any(InputStream.class), anyLong(),
+            eq(Constants.MULTIPLE_FILES_JOB_CONFIGURATION), eq(0), (ProgressMonitor) isNull());
+        assertMultiFilesJobPhasesStored(job);
+        verify(messageDispatcher).dispatch(eq(result));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void assertMultiFilesJobPhasesStored(final MultiFilesJob job)
+    {
+        final ArgumentCaptor<Map<JobPhase, Long>> millisecondsSpentPerPhaseCaptor = ArgumentCaptor.forClass((Class) Map.class);
+        verify(jobStatisticsHandler).storeJobStatistics(eq(job), any(Calendar.class), anyLong(),
+            millisecondsSpentPerPhaseCaptor.capture(), anyString());
+
+        // archived or not, the uploads of the files and of the configuration are both recorded
+        assertThat(millisecondsSpentPerPhaseCaptor.getValue().keySet(), is((Object) EnumSet.allOf(JobPhase.class)));
+    }
+
+    @Test
+    public void processMultiFilesJobArchivedDownload() throws Exception
+    {
+        final URI defaultPoolUri = new URI("fake://default");
+        when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
+        when(configuration.isArchivedResultFilesDownload()).thenReturn(true);
+        final RServi rServi = mock(RServi.class);
+        when(rServiInstanceProvider.getRServiInstance(anyString(), anyString(), eq(PoolingStrategy.NEVER))).thenReturn(
+            rServi);
+        final FunctionCall functionCall = mock(FunctionCall.class);
+        when(rServi.createFunctionCall(anyString())).thenReturn(functionCall);
+        when(functionCall.evalData(null)).thenReturn(new RVectorImpl<>(new RInteger32Store(new int[]{0})));
+        final RObject rObject = new RVectorImpl<>(new RCharacter32Store(new String[]{"result.pdf"}));
+        when(rServi.evalData(anyString(), (ProgressMonitor) isNull())).thenReturn(rObject);
+        final MultiFilesJob job = mock(MultiFilesJob.class);
+        final File scriptFile = File.createTempFile("rsb", "test");
+        scriptFile.deleteOnExit();
+        when(job.getRScriptFile()).thenReturn(scriptFile);
+        when(job.getFiles()).thenReturn(new File[]{scriptFile});
+        when(job.isZippedResult()).thenReturn(true);
+        final MultiFilesResult result = mock(MultiFilesResult.class);
+        final File resultArchiveFile = File.createTempFile("rsb", "zip");
+        resultArchiveFile.deleteOnExit();
+        when(result.createNewResultArchiveFile()).thenReturn(resultArchiveFile);
+        when(job.buildSuccessResult()).thenReturn(result);
+
+        jobProcessor.process(job);
+
+        verify(rServi).downloadFile(any(OutputStream.class), eq(Constants.RESULT_FILES_ARCHIVE), eq(0),
+            (ProgressMonitor) isNull());
+        verify(rServi, never()).downloadFile(any(OutputStream.class), eq("result.pdf"), eq(0),
+            (ProgressMonitor) isNull());
+        verify(messageDispatcher).dispatch(eq(result));
+    }
+
+    @Test
+    public void processMultiFilesJobCachedCatalogScript() throws Exception
+    {
+        final URI defaultPoolUri = new URI("fake://default");
+        when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
+        final FileCachingRServi rServi = mock(FileCachingRServi.class);
+        when(rServiInstanceProvider.getRServiInstance(anyString(), anyString(), eq(PoolingStrategy.NEVER))).thenReturn(
+            rServi);
+        final FunctionCall functionCall = mock(FunctionCall.class);
+        when(rServi.createFunctionCall(anyString())).thenReturn(functionCall);
+        final RObject rObject = new RVectorImpl<>(new RCharacter32Store(new String[0]));
+        when(rServi.evalData(anyString(), (ProgressMonitor) isNull())).thenReturn(rObject);
+        final File scriptFile = File.createTempFile("rsb", "test");
+        scriptFile.deleteOnExit();
+        final CatalogManager catalogManager = mock(CatalogManager.class);
+        when(catalogManager.internalGetCatalogFile(CatalogSection.R_SCRIPTS, "app", "script.R")).thenReturn(
+            scriptFile);
+        jobProcessor.setCatalogManager(catalogManager);
+        when(rServi.restoreCachedFile(anyString(), eq(scriptFile.getName()))).thenReturn(true);
+        final MultiFilesJob job = mock(MultiFilesJob.class);
+        when(job.getApplicationName()).thenReturn("app");
+        when(job.getMeta()).thenReturn(
+            Collections.<String, Serializable> singletonMap(Constants.R_SCRIPT_CONFIGURATION_KEY, "script.R"));
+        when(job.getFiles()).thenReturn(new File[0]);
+        final MultiFilesResult result = mock(MultiFilesResult.class);
+        when(job.buildSuccessResult()).thenReturn(result);
+
+        jobProcessor.process(job);
+
+        verify(rServi, never()).uploadFile(any(InputStream.class), anyLong(), eq(scriptFile.getName()), eq(0),
+            (ProgressMonitor) isNull());
+        verify(rServi, never()).cacheFile(anyString(), anyString());
         verify(messageDispatcher).dispatch(eq(result));
     }
 
@@ -28,6 +28,8 @@ package eu.openanalytics.rsb.component;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -39,6 +41,7 @@ import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
@@ -81,6 +84,8 @@ public class JobsResourceTestCase
     private HttpHeaders httpHeaders;
     @Mock
     private UriInfo uriInfo;
+    @Mock
+    private JobAdmissionController jobAdmissionController;
 
     @Before
     public void prepareTest() throws UnknownHostException
@@ -88,6 +93,7 @@ public class JobsResourceTestCase
         jobsResource = new JobsResource();
         jobsResource.setConfiguration(configuration);
         jobsResource.setMessageDispatcher(messageDispatcher);
+        jobsResource.setJobAdmissionController(jobAdmissionController);
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -113,6 +119,20 @@ public class JobsResourceTestCase
         assertThat(jobToken.getResultUri(), is(new StartsWith("foo:/")));
     }
 
+    @Test
+    public void handleRejectedJob() throws Exception
+    {
+        when(httpHeaders.getRequestHeader(Constants.APPLICATION_NAME_HTTP_HEADER)).thenReturn(
+            Collections.singletonList(TEST_APP_NAME));
+        when(jobAdmissionController.admit(eq(TEST_APP_NAME), anyString(), any(UUID.class))).thenReturn(30L);
+
+        final Response response = jobsResource.handleXmlFunctionCallJob("fake_xml", httpHeaders, uriInfo);
+
+        assertThat(response.getStatus(), is(Status.TOO_MANY_REQUESTS.getStatusCode()));
+        assertThat(response.getMetadata().getFirst(HttpHeaders.RETRY_AFTER), is((Object) 30L));
+        verifyZeroInteractions(messageDispatcher);
+    }
+
     @Test
     public void handleJsonFunctionCallJob() throws Exception
     {
@@ -32,6 +32,7 @@ import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.UUID;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
@@ -57,12 +58,15 @@ public class RestResultProcessorTestCase
 
     @Mock
     private SecureResultStore resultStore;
+    @Mock
+    private JobAdmissionController jobAdmissionController;
 
     @Before
     public void prepareTest()
     {
         restResultProcessor = new RestResultProcessor();
         restResultProcessor.setResultStore(resultStore);
+        restResultProcessor.setJobAdmissionController(jobAdmissionController);
     }
 
     @Test
@@ -74,6 +78,7 @@ public class RestResultProcessorTestCase
         restResultProcessor.process(functionCallResult);
 
         verify(resultStore).store(any(PersistedResult.class));
+        verify(jobAdmissionController).release(any(UUID.class));
         verify(functionCallResult).destroy();
     }
 
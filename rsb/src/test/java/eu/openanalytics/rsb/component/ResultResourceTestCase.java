@@ -26,23 +26,32 @@
 package eu.openanalytics.rsb.component;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.UUID;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.activemq.util.ByteArrayInputStream;
 import org.apache.activemq.util.ByteArrayOutputStream;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import org.junit.Before;
@@ -68,6 +77,8 @@ public class ResultResourceTestCase
 
     @Mock
     private SecureResultStore resultStore;
+    @Mock
+    private Request request;
 
     private ResultResource resultResource;
     private String testResultPayload;
@@ -84,7 +95,7 @@ public class ResultResourceTestCase
     @Test(expected = WebApplicationException.class)
     public void getResultNotFound() throws IOException
     {
-        resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null, request);
     }
 
     @Test
@@ -92,7 +103,8 @@ public class ResultResourceTestCase
     {
         setupMockResultStore();
 
-        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE,
+            null, null, request);
         assertThat(response.getStatus(), is(Status.OK.getStatusCode()));
 
         final StreamingOutput result = (StreamingOutput) response.getEntity();
@@ -103,10 +115,164 @@ public class ResultResourceTestCase
         assertThat(response.getMetadata().get(HttpHeaders.ETAG), notNullValue());
     }
 
+    @Test
+    public void getResultRange() throws IOException
+    {
+        setupMockResultStore();
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE,
+            "bytes=2-5", null, request);
+        assertThat(response.getStatus(), is(Status.PARTIAL_CONTENT.getStatusCode()));
+        assertThat(response.getMetadata().getFirst(Constants.CONTENT_RANGE_HTTP_HEADER),
+            is((Object) ("bytes 2-5/" + testResultPayload.length())));
+        assertThat(response.getMetadata().getFirst(HttpHeaders.CONTENT_LENGTH), is((Object) "4"));
+
+        assertThat(writeEntity(response), is(testResultPayload.substring(2, 6).getBytes()));
+    }
+
+    @Test
+    public void getResultSuffixRange() throws IOException
+    {
+        setupMockResultStore();
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE,
+            "bytes=-3", null, request);
+        assertThat(response.getStatus(), is(Status.PARTIAL_CONTENT.getStatusCode()));
+
+        assertThat(writeEntity(response),
+            is(testResultPayload.substring(testResultPayload.length() - 3).getBytes()));
+    }
+
+    @Test
+    public void getResultFileRange() throws IOException
+    {
+        final File resultFile = File.createTempFile("rsb", "result");
+        resultFile.deleteOnExit();
+        FileUtils.writeStringToFile(resultFile, testResultPayload, "UTF-8");
+
+        final PersistedResult persistedResult = new PersistedResult(TEST_APP_NAME,
+            ApplicationPermissionEvaluator.NO_AUTHENTICATED_USERNAME, TEST_JOB_ID,
+            (GregorianCalendar) GregorianCalendar.getInstance(), true, Constants.DEFAULT_MIME_TYPE)
+        {
+            @Override
+            public long getDataLength() throws IOException
+            {
+                return resultFile.length();
+            }
+
+            @Override
+            public InputStream getData() throws IOException
+            {
+                throw new UnsupportedOperationException("The data file should be used");
+            }
+
+            @Override
+            public File getDataFile()
+            {
+                return resultFile;
+            }
+        };
+        when(
+            resultStore.findByApplicationNameAndJobId(TEST_APP_NAME,
+                ApplicationPermissionEvaluator.NO_AUTHENTICATED_USERNAME, TEST_JOB_ID)).thenReturn(
+            persistedResult);
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE,
+            "bytes=10-", null, request);
+        assertThat(response.getStatus(), is(Status.PARTIAL_CONTENT.getStatusCode()));
+        assertThat(writeEntity(response), is(testResultPayload.substring(10).getBytes()));
+
+        final Response fullResponse = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE,
+            null, null, request);
+        assertThat(fullResponse.getStatus(), is(Status.OK.getStatusCode()));
+        assertThat(writeEntity(fullResponse), is(testResultPayload.getBytes()));
+    }
+
+    @Test
+    public void getResultMalformedRange() throws IOException
+    {
+        setupMockResultStore();
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE,
+            "bytes=0-1,4-5", null, request);
+        assertThat(response.getStatus(), is(Status.OK.getStatusCode()));
+        assertThat(writeEntity(response), is(testResultPayload.getBytes()));
+    }
+
+    @Test
+    public void getResultUnsatisfiableRange() throws IOException
+    {
+        setupMockResultStore();
+
+        try
+        {
+            resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, "bytes=1000-", null, request);
+            fail("An exception should have been raised");
+        }
+        catch (final WebApplicationException wae)
+        {
+            assertThat(wae.getResponse().getStatus(),
+                is(Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode()));
+            assertThat(wae.getResponse().getMetadata().getFirst(Constants.CONTENT_RANGE_HTTP_HEADER),
+                is((Object) ("bytes */" + testResultPayload.length())));
+        }
+    }
+
+    @Test
+    public void getResultNotModified() throws IOException
+    {
+        setupMockResultStore();
+        when(request.evaluatePreconditions(any(Date.class), any(EntityTag.class))).thenReturn(
+            Response.notModified());
+
+        final Response response = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE, null, null,
+            request);
+        assertThat(response.getStatus(), is(Status.NOT_MODIFIED.getStatusCode()));
+        assertThat(response.getEntity(), is(nullValue()));
+        assertThat(response.getMetadata().get(HttpHeaders.ETAG), notNullValue());
+    }
+
+    @Test
+    public void getResultRangeIfRange() throws IOException
+    {
+        final PersistedResult persistedResult = setupMockResultStore();
+        final String quotedEtag = "\"" + ResultResource.getEtag(persistedResult) + "\"";
+
+        final Response matchingResponse = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE,
+            "bytes=2-5", quotedEtag, request);
+        assertThat(matchingResponse.getStatus(), is(Status.PARTIAL_CONTENT.getStatusCode()));
+
+        final Response notMatchingResponse = resultResource.getResult(TEST_APP_NAME, TEST_RESULT_RESOURCE,
+            "bytes=2-5", "\"other\"", request);
+        assertThat(notMatchingResponse.getStatus(), is(Status.OK.getStatusCode()));
+        assertThat(writeEntity(notMatchingResponse), is(testResultPayload.getBytes()));
+    }
+
+    @Test
+    public void getEtagChangesWithResultData() throws IOException
+    {
+        final PersistedResult persistedResult = buildPersistedResult(testResultPayload);
+        final String etag = ResultResource.getEtag(persistedResult);
+
+        assertThat(ResultResource.getEtag(persistedResult), is(etag));
+        assertThat(ResultResource.getEtag(buildPersistedResult(testResultPayload + "more")), is(not(etag)));
+    }
+
+    @Test
+    public void getResultMetaNotModified() throws IOException
+    {
+        setupMockResultStore();
+        when(request.evaluatePreconditions(any(Date.class), any(EntityTag.class))).thenReturn(
+            Response.notModified());
+
+        final Response response = resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE, request);
+        assertThat(response.getStatus(), is(Status.NOT_MODIFIED.getStatusCode()));
+    }
+
     @Test(expected = WebApplicationException.class)
     public void getResultMetaNotFound() throws IOException
     {
-        resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE, request);
     }
 
     @Test
@@ -114,20 +280,29 @@ public class ResultResourceTestCase
     {
         setupMockResultStore();
 
-        final Response response = resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE);
+        final Response response = resultResource.getResultMeta(TEST_APP_NAME, TEST_RESULT_RESOURCE, request);
         assertThat(response.getStatus(), is(Status.NO_CONTENT.getStatusCode()));
 
         assertThat(response.getMetadata().get(HttpHeaders.CONTENT_LENGTH), notNullValue());
         assertThat(response.getMetadata().get(HttpHeaders.ETAG), notNullValue());
+        assertThat(response.getMetadata().getFirst(Constants.ACCEPT_RANGES_HTTP_HEADER), is((Object) "bytes"));
     }
 
-    private void setupMockResultStore()
+    private static byte[] writeEntity(final Response response) throws IOException
+    {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(baos);
+        return baos.toByteArray();
+    }
+
+    private PersistedResult setupMockResultStore()
     {
         final PersistedResult persistedResult = buildPersistedResult(testResultPayload);
         when(
             resultStore.findByApplicationNameAndJobId(TEST_APP_NAME,
                 ApplicationPermissionEvaluator.NO_AUTHENTICATED_USERNAME, TEST_JOB_ID)).thenReturn(
             persistedResult);
+        return persistedResult;
     }
 
     public static PersistedResult buildPersistedResult(final String resultPayload)
@@ -140,7 +315,7 @@ public class ResultResourceTestCase
             @Override
             public long getDataLength() throws IOException
             {
-                return 1;
+                return resultPayload.getBytes().length;
             }
 
             @Override
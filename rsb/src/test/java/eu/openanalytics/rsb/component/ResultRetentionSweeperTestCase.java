@@ -0,0 +1,154 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+
+package eu.openanalytics.rsb.component;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.config.Configuration.ResultRetentionConfiguration;
+import eu.openanalytics.rsb.data.ExpiringResultStore;
+import eu.openanalytics.rsb.data.IndexedResultStore;
+import eu.openanalytics.rsb.data.ReclaimedSpace;
+import eu.openanalytics.rsb.data.SecureResultStore;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ResultRetentionSweeperTestCase
+{
+    private ResultRetentionSweeper resultRetentionSweeper;
+
+    @Mock
+    private Configuration configuration;
+    @Mock
+    private ResultRetentionConfiguration resultRetentionConfiguration;
+
+    private SecureResultStore resultStore;
+
+    @Before
+    public void prepareTest()
+    {
+        resultStore = mock(SecureResultStore.class,
+            withSettings().extraInterfaces(ExpiringResultStore.class, IndexedResultStore.class));
+
+        resultRetentionSweeper = new ResultRetentionSweeper();
+        resultRetentionSweeper.setConfiguration(configuration);
+        resultRetentionSweeper.setResultStore(resultStore);
+    }
+
+    @Test
+    public void refreshResultIndexes()
+    {
+        resultRetentionSweeper.refreshResultIndexes();
+
+        verify((IndexedResultStore) resultStore).refreshIndexes();
+    }
+
+    @Test
+    public void sweepWithoutRetentionRules() throws Exception
+    {
+        resultRetentionSweeper.sweepExpiredResults();
+
+        verify((ExpiringResultStore) resultStore, never()).deleteExpiredResults(anyString(),
+            any(ResultRetentionConfiguration.class), anyInt());
+    }
+
+    @Test
+    public void sweepExpiredResults() throws Exception
+    {
+        final Map<String, ResultRetentionConfiguration> applicationResultRetentionConfiguration = new LinkedHashMap<String, ResultRetentionConfiguration>();
+        applicationResultRetentionConfiguration.put("app1", resultRetentionConfiguration);
+        applicationResultRetentionConfiguration.put("app2", resultRetentionConfiguration);
+        when(configuration.getApplicationResultRetentionConfiguration()).thenReturn(
+            applicationResultRetentionConfiguration);
+
+        when(
+            ((ExpiringResultStore) resultStore).deleteExpiredResults("app1", resultRetentionConfiguration,
+                ResultRetentionSweeper.MAXIMUM_DELETIONS_PER_SWEEP)).thenReturn(new ReclaimedSpace(10, 1000L));
+        when(
+            ((ExpiringResultStore) resultStore).deleteExpiredResults("app2", resultRetentionConfiguration,
+                ResultRetentionSweeper.MAXIMUM_DELETIONS_PER_SWEEP - 10)).thenReturn(new ReclaimedSpace(5, 200L));
+
+        resultRetentionSweeper.sweepExpiredResults();
+        resultRetentionSweeper.sweepExpiredResults();
+
+        assertThat(resultRetentionSweeper.getReclaimedFiles(), is(30L));
+        assertThat(resultRetentionSweeper.getReclaimedBytes(), is(2400L));
+    }
+
+    @Test
+    public void sweepStopsAtMaximumDeletions() throws Exception
+    {
+        final Map<String, ResultRetentionConfiguration> applicationResultRetentionConfiguration = new LinkedHashMap<String, ResultRetentionConfiguration>();
+        applicationResultRetentionConfiguration.put("app1", resultRetentionConfiguration);
+        applicationResultRetentionConfiguration.put("app2", resultRetentionConfiguration);
+        when(configuration.getApplicationResultRetentionConfiguration()).thenReturn(
+            applicationResultRetentionConfiguration);
+
+        when(
+            ((ExpiringResultStore) resultStore).deleteExpiredResults(eq("app1"),
+                any(ResultRetentionConfiguration.class), anyInt())).thenReturn(
+            new ReclaimedSpace(ResultRetentionSweeper.MAXIMUM_DELETIONS_PER_SWEEP, 1L));
+
+        resultRetentionSweeper.sweepExpiredResults();
+
+        verify((ExpiringResultStore) resultStore, never()).deleteExpiredResults(eq("app2"),
+            any(ResultRetentionConfiguration.class), anyInt());
+    }
+
+    @Test
+    public void sweepUnsupportedResultStore() throws Exception
+    {
+        when(configuration.getApplicationResultRetentionConfiguration()).thenReturn(
+            Collections.singletonMap("app", resultRetentionConfiguration));
+        resultRetentionSweeper.setResultStore(mock(SecureResultStore.class));
+
+        resultRetentionSweeper.sweepExpiredResults();
+
+        assertThat(resultRetentionSweeper.getReclaimedFiles(), is(0L));
+    }
+}
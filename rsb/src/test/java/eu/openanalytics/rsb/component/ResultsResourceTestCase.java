@@ -27,11 +27,19 @@ package eu.openanalytics.rsb.component;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.UUID;
 
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.core.HttpHeaders;
@@ -43,10 +51,13 @@ import org.apache.cxf.jaxrs.impl.UriBuilderImpl;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.data.PersistedResult;
+import eu.openanalytics.rsb.data.ResultCursor;
 import eu.openanalytics.rsb.data.SecureResultStore;
 import eu.openanalytics.rsb.rest.types.Result;
 import eu.openanalytics.rsb.rest.types.Results;
@@ -78,17 +89,57 @@ public class ResultsResourceTestCase
     @Test(expected = IllegalArgumentException.class)
     public void getAllResultsInvalidApplicationName() throws URISyntaxException
     {
-        resultsResource.getAllResults("I'm bad :)", httpHeaders, uriInfo);
+        resultsResource.getAllResults("I'm bad :)", null, null, null, httpHeaders, uriInfo);
     }
 
     @Test
     public void getAllResults() throws URISyntaxException
     {
-        final Results allResults = resultsResource.getAllResults(ResultResourceTestCase.TEST_APP_NAME,
-            httpHeaders, uriInfo);
+        final Results allResults = resultsResource.getAllResults(ResultResourceTestCase.TEST_APP_NAME, null,
+            null, null, httpHeaders, uriInfo);
         assertThat(allResults, is(notNullValue()));
     }
 
+    @Test
+    public void getResultsPage() throws URISyntaxException
+    {
+        when(uriInfo.getBaseUriBuilder()).thenReturn(new UriBuilderImpl());
+        final PersistedResult persistedResult = ResultResourceTestCase.buildPersistedResult("fake data");
+        final ResultCursor cursor = new ResultCursor(persistedResult.getResultTime().getTimeInMillis() + 1000L,
+            UUID.randomUUID());
+        when(
+            resultStore.findByApplicationName(eq(ResultResourceTestCase.TEST_APP_NAME), anyString(),
+                any(Calendar.class), any(ResultCursor.class), eq(3))).thenReturn(
+            Arrays.asList(persistedResult, persistedResult, persistedResult));
+
+        final Results results = resultsResource.getAllResults(ResultResourceTestCase.TEST_APP_NAME,
+            "2020-01-01T00:00:00Z", cursor.toString(), 2, httpHeaders, uriInfo);
+
+        assertThat(results.getContents().size(), is(2));
+        assertThat(results.getNextCursor(), is(new ResultCursor(persistedResult).toString()));
+        final ArgumentCaptor<Calendar> sinceCaptor = ArgumentCaptor.forClass(Calendar.class);
+        verify(resultStore).findByApplicationName(eq(ResultResourceTestCase.TEST_APP_NAME), anyString(),
+            sinceCaptor.capture(), any(ResultCursor.class), eq(3));
+        assertThat(sinceCaptor.getValue().getTimeInMillis(), is(1577836800000L));
+    }
+
+    @Test
+    public void getLastResultsPage() throws URISyntaxException
+    {
+        final Results results = resultsResource.getAllResults(ResultResourceTestCase.TEST_APP_NAME, null,
+            null, 10, httpHeaders, uriInfo);
+
+        assertThat(results.getContents().isEmpty(), is(true));
+        assertThat(results.getNextCursor(), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getResultsPageInvalidCursor() throws URISyntaxException
+    {
+        resultsResource.getAllResults(ResultResourceTestCase.TEST_APP_NAME, null, "bad", 10, httpHeaders,
+            uriInfo);
+    }
+
     @Test(expected = NotFoundException.class)
     public void getSingleResultNotFound() throws URISyntaxException, IOException
     {
@@ -31,10 +31,12 @@ import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.CountDownLatch;
 
 import javax.servlet.ServletContext;
 import javax.ws.rs.core.Response;
@@ -48,10 +50,15 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import eu.openanalytics.rsb.config.Configuration;
 import eu.openanalytics.rsb.rest.types.NodeInformation;
+import eu.openanalytics.rsb.rest.types.RServiPoolHealthType;
+import eu.openanalytics.rsb.rest.types.RServiPoolsHealth;
+import eu.openanalytics.rsb.rservi.RServiCircuitBreaker;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider;
 import eu.openanalytics.rsb.rservi.RServiInstanceProvider.PoolingStrategy;
 
@@ -68,6 +75,10 @@ public class SystemHealthResourceTestCase
     private Configuration configuration;
     @Mock
     private RServiInstanceProvider rServiInstanceProvider;
+    @Mock
+    private RServiCircuitBreaker rServiCircuitBreaker;
+
+    private URI defaultPoolUri;
 
     @Before
     public void prepareTest() throws URISyntaxException
@@ -75,8 +86,9 @@ public class SystemHealthResourceTestCase
         systemHealthResource = new SystemHealthResource();
         systemHealthResource.setConfiguration(configuration);
         systemHealthResource.setRServiInstanceProvider(rServiInstanceProvider);
+        systemHealthResource.setRServiCircuitBreaker(rServiCircuitBreaker);
 
-        final URI defaultPoolUri = new URI("fake://default");
+        defaultPoolUri = new URI("fake://default");
         when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
     }
 
@@ -117,6 +129,7 @@ public class SystemHealthResourceTestCase
         when(result.getData()).thenReturn((RStore) new RInteger32Store(new int[]{3}));
 
         systemHealthResource.verifyNodeHealth();
+        systemHealthResource.getRunningCheck(defaultPoolUri).get();
         final Response checkResult = systemHealthResource.check();
 
         assertThat(checkResult.getStatus(), is(200));
@@ -130,9 +143,74 @@ public class SystemHealthResourceTestCase
             new RuntimeException("simulated RServi provider issue"));
 
         systemHealthResource.verifyNodeHealth();
+        systemHealthResource.getRunningCheck(defaultPoolUri).get();
         final Response checkResult = systemHealthResource.check();
 
         assertThat(checkResult.getStatus(), is(500));
         assertThat(checkResult.getEntity().toString(), is("ERROR"));
     }
+
+    @Test
+    public void hungCheck() throws Exception
+    {
+        final CountDownLatch hungRServi = new CountDownLatch(1);
+        when(rServiInstanceProvider.getRServiInstance(anyString(), anyString(), eq(PoolingStrategy.NEVER))).thenAnswer(
+            new Answer<RServi>()
+            {
+                @Override
+                public RServi answer(final InvocationOnMock invocation) throws Exception
+                {
+                    hungRServi.await();
+                    throw new RuntimeException("simulated RServi provider issue");
+                }
+            });
+
+        try
+        {
+            systemHealthResource.verifyNodeHealth();
+            assertThat(systemHealthResource.check().getStatus(), is(200));
+
+            // the check still hanging at the next verification is recorded as failed at once
+            systemHealthResource.verifyNodeHealth();
+            assertThat(systemHealthResource.getRunningCheck(defaultPoolUri).isDone(), is(false));
+            assertThat(systemHealthResource.check().getStatus(), is(500));
+            verify(rServiCircuitBreaker).recordHealthCheck(defaultPoolUri, false);
+        }
+        finally
+        {
+            hungRServi.countDown();
+        }
+    }
+
+    @Test
+    public void warmingCheck() throws Exception
+    {
+        when(rServiInstanceProvider.isWarmingUp()).thenReturn(true);
+
+        final Response checkResult = systemHealthResource.check();
+
+        assertThat(checkResult.getStatus(), is(503));
+        assertThat(checkResult.getEntity().toString(), is("WARMING"));
+    }
+
+    @Test
+    public void getHealth() throws Exception
+    {
+        when(rServiInstanceProvider.getRServiInstance(anyString(), anyString(), eq(PoolingStrategy.NEVER))).thenThrow(
+            new RuntimeException("simulated RServi provider issue"));
+
+        systemHealthResource.verifyNodeHealth();
+        systemHealthResource.getRunningCheck(defaultPoolUri).get();
+        final RServiPoolsHealth health = systemHealthResource.getHealth();
+
+        assertThat(health.isHealthy(), is(false));
+        assertThat(health.getContents().size(), is(1));
+
+        final RServiPoolHealthType poolHealth = health.getContents().get(0);
+        assertThat(poolHealth.getPoolUri(), is(defaultPoolUri.toString()));
+        assertThat(poolHealth.isHealthy(), is(false));
+        assertThat(poolHealth.getCheckTime(), is(notNullValue()));
+
+        verify(rServiCircuitBreaker).recordHealthCheck(defaultPoolUri, false);
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.data;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.openanalytics.rsb.Util;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class FileClaimCheckStoreTestCase
+{
+    private File claimCheckDirectory;
+    private File workDirectory;
+
+    @Before
+    public void prepareTest() throws IOException
+    {
+        claimCheckDirectory = Util.createTemporaryDirectory("claim-check");
+        workDirectory = Util.createTemporaryDirectory("work");
+        FileUtils.writeStringToFile(new File(workDirectory, "script.R"), "1+1", StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void cleanupTest()
+    {
+        FileUtils.deleteQuietly(claimCheckDirectory);
+        FileUtils.deleteQuietly(workDirectory);
+    }
+
+    @Test
+    public void discardedFilesKeptForRedelivery() throws Exception
+    {
+        final FileClaimCheckStore claimCheckStore = new FileClaimCheckStore(claimCheckDirectory);
+        final String claimCheckId = claimCheckStore.checkIn(workDirectory);
+        claimCheckStore.discard(claimCheckId);
+
+        final File redeliveredDirectory = new File(workDirectory, "redelivered");
+        claimCheckStore.checkOut(claimCheckId, redeliveredDirectory);
+        assertThat(new File(redeliveredDirectory, "script.R").isFile(), is(true));
+    }
+
+    @Test
+    public void discardedFilesDeletedAfterGracePeriod() throws Exception
+    {
+        final FileClaimCheckStore claimCheckStore = new FileClaimCheckStore(claimCheckDirectory, 0L);
+        final String claimCheckId = claimCheckStore.checkIn(workDirectory);
+        assertThat(claimCheckDirectory.list().length, is(1));
+
+        claimCheckStore.discard(claimCheckId);
+        assertThat(claimCheckDirectory.list().length, is(0));
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.data;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.GregorianCalendar;
+import java.util.UUID;
+
+import javax.activation.MimeType;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.config.Configuration.ResultRetentionConfiguration;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class FileResultStoreTestCase
+{
+    private static final String TEST_APP_NAME = "test_app";
+    private static final String TEST_USER_NAME = "test_user";
+
+    @Mock
+    private Configuration configuration;
+    @Mock
+    private ResultRetentionConfiguration resultRetentionConfiguration;
+
+    private File resultsDirectory;
+    private FileResultStore fileResultStore;
+
+    @Before
+    public void prepareTest() throws IOException
+    {
+        resultsDirectory = Util.createTemporaryDirectory("results");
+        when(configuration.getResultsDirectory()).thenReturn(resultsDirectory);
+
+        fileResultStore = new FileResultStore();
+        fileResultStore.setConfiguration(configuration);
+    }
+
+    @After
+    public void cleanupTest()
+    {
+        FileUtils.deleteQuietly(resultsDirectory);
+    }
+
+    @Test
+    public void storeFindAndDelete() throws Exception
+    {
+        final UUID jobId = storeResult(true, "result");
+        storeResult(false, "error");
+
+        assertThat(fileResultStore.findByApplicationName(TEST_APP_NAME, TEST_USER_NAME).size(), is(2));
+        assertThat(fileResultStore.findByApplicationName(TEST_APP_NAME, null).isEmpty(), is(true));
+
+        final PersistedResult persistedResult = fileResultStore.findByApplicationNameAndJobId(TEST_APP_NAME,
+            TEST_USER_NAME, jobId);
+        assertThat(persistedResult, is(notNullValue()));
+        assertThat(persistedResult.isSuccess(), is(true));
+        assertThat(persistedResult.getDataLength(), is(6L));
+        try (final InputStream data = persistedResult.getData())
+        {
+            assertThat(IOUtils.toString(data, StandardCharsets.UTF_8), is("result"));
+        }
+
+        assertThat(fileResultStore.deleteByApplicationNameAndJobId(TEST_APP_NAME, TEST_USER_NAME, jobId), is(true));
+        assertThat(fileResultStore.deleteByApplicationNameAndJobId(TEST_APP_NAME, TEST_USER_NAME, jobId), is(false));
+        assertThat(fileResultStore.findByApplicationNameAndJobId(TEST_APP_NAME, TEST_USER_NAME, jobId),
+            is(nullValue()));
+        assertThat(fileResultStore.findByApplicationName(TEST_APP_NAME, TEST_USER_NAME).size(), is(1));
+    }
+
+    @Test
+    public void indexRefreshedOnDirectoryModification() throws Exception
+    {
+        storeResult(true, "result");
+        assertThat(fileResultStore.findByApplicationName(TEST_APP_NAME, TEST_USER_NAME).size(), is(1));
+
+        final File userResultsDirectory = writeResultBehindStore();
+        // no matter its time granularity, the directory looks modified
+        userResultsDirectory.setLastModified(userResultsDirectory.lastModified() - 10000L);
+
+        assertThat(fileResultStore.findByApplicationName(TEST_APP_NAME, TEST_USER_NAME).size(), is(2));
+    }
+
+    @Test
+    public void resultFoundBehindIndex() throws Exception
+    {
+        storeResult(true, "result");
+        assertThat(fileResultStore.findByApplicationName(TEST_APP_NAME, TEST_USER_NAME).size(), is(1));
+
+        final File userResultsDirectory = new File(new File(resultsDirectory, TEST_APP_NAME), TEST_USER_NAME);
+        final long directoryLastModified = userResultsDirectory.lastModified();
+        final UUID jobId = UUID.randomUUID();
+        FileUtils.writeStringToFile(new File(userResultsDirectory, jobId + ".err.txt"), "error",
+            StandardCharsets.UTF_8);
+        userResultsDirectory.setLastModified(directoryLastModified);
+
+        final PersistedResult persistedResult = fileResultStore.findByApplicationNameAndJobId(TEST_APP_NAME,
+            TEST_USER_NAME, jobId);
+        assertThat(persistedResult, is(notNullValue()));
+        assertThat(persistedResult.isSuccess(), is(false));
+    }
+
+    @Test
+    public void indexRefreshedInBackground() throws Exception
+    {
+        storeResult(true, "result");
+        assertThat(fileResultStore.findByApplicationName(TEST_APP_NAME, TEST_USER_NAME).size(), is(1));
+
+        // a write the directory modification time does not reveal
+        final File userResultsDirectory = new File(new File(resultsDirectory, TEST_APP_NAME), TEST_USER_NAME);
+        final long directoryLastModified = userResultsDirectory.lastModified();
+        writeResultBehindStore();
+        userResultsDirectory.setLastModified(directoryLastModified);
+
+        assertThat(fileResultStore.findByApplicationName(TEST_APP_NAME, TEST_USER_NAME).size(), is(1));
+
+        fileResultStore.refreshIndexes();
+        assertThat(fileResultStore.findByApplicationName(TEST_APP_NAME, TEST_USER_NAME).size(), is(2));
+    }
+
+    @Test
+    public void deleteExpiredResults() throws Exception
+    {
+        storeResult(true, "result");
+        storeResult(true, "result");
+        storeResult(true, "result");
+        when(resultRetentionConfiguration.getMaximumResultsPerUser()).thenReturn(1);
+
+        final ReclaimedSpace reclaimedSpace = fileResultStore.deleteExpiredResults(TEST_APP_NAME,
+            resultRetentionConfiguration, 1);
+
+        assertThat(reclaimedSpace.getFiles(), is(1));
+        assertThat(reclaimedSpace.getBytes(), is(6L));
+        assertThat(fileResultStore.findByApplicationName(TEST_APP_NAME, TEST_USER_NAME).size(), is(2));
+    }
+
+    private UUID storeResult(final boolean success, final String data) throws Exception
+    {
+        final UUID jobId = UUID.randomUUID();
+
+        fileResultStore.store(new PersistedResult(TEST_APP_NAME, TEST_USER_NAME, jobId,
+            (GregorianCalendar) GregorianCalendar.getInstance(), success, new MimeType("text/plain"))
+        {
+            @Override
+            public InputStream getData()
+            {
+                return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public long getDataLength()
+            {
+                return data.length();
+            }
+        });
+
+        return jobId;
+    }
+
+    private File writeResultBehindStore() throws IOException
+    {
+        // as another node sharing the results directory would do
+        final File userResultsDirectory = new File(new File(resultsDirectory, TEST_APP_NAME), TEST_USER_NAME);
+        FileUtils.writeStringToFile(new File(userResultsDirectory, UUID.randomUUID() + ".txt"), "other",
+            StandardCharsets.UTF_8);
+        return userResultsDirectory;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.message;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * Links two embedded brokers on localhost, the busy one forwarding its jobs to the idle one.
+ * 
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BrokerNetworkFactoryTestCase
+{
+    private static final long RECEIVE_TIMEOUT = 10000L;
+
+    @Mock
+    private Configuration configuration;
+
+    private BrokerService idleBroker;
+    private BrokerService busyBroker;
+    private Connection idleConnection;
+    private Connection busyConnection;
+
+    @Before
+    public void prepareTest() throws Exception
+    {
+        when(configuration.getActiveMqTransportConnectorUri()).thenReturn(new URI("tcp://localhost:0"));
+        idleBroker = newBroker("rsb-idle-broker");
+        idleBroker.setTransportConnectors(BrokerNetworkFactory.createTransportConnectors(configuration));
+        idleBroker.start();
+
+        final TransportConnector idleTransportConnector = idleBroker.getTransportConnectors().get(0);
+        when(configuration.getActiveMqNetworkConnectorUri()).thenReturn(
+            new URI("static:(" + idleTransportConnector.getConnectUri() + ")"));
+        busyBroker = newBroker("rsb-busy-broker");
+        busyBroker.setNetworkConnectors(BrokerNetworkFactory.createNetworkConnectors(configuration));
+        busyBroker.start();
+
+        idleConnection = new ActiveMQConnectionFactory("vm://rsb-idle-broker?create=false").createConnection();
+        idleConnection.start();
+        busyConnection = new ActiveMQConnectionFactory("vm://rsb-busy-broker?create=false").createConnection();
+        busyConnection.start();
+    }
+
+    @After
+    public void cleanupTest() throws Exception
+    {
+        idleConnection.close();
+        busyConnection.close();
+        busyBroker.stop();
+        idleBroker.stop();
+    }
+
+    @Test
+    public void noConnectorsByDefault() throws Exception
+    {
+        final Configuration defaultConfiguration = mock(Configuration.class);
+
+        assertThat(BrokerNetworkFactory.createTransportConnectors(defaultConfiguration).isEmpty(), is(true));
+        assertThat(BrokerNetworkFactory.createNetworkConnectors(defaultConfiguration).isEmpty(), is(true));
+    }
+
+    @Test
+    public void brokerNames() throws Exception
+    {
+        final Configuration standaloneConfiguration = mock(Configuration.class);
+        when(standaloneConfiguration.getNodeName()).thenReturn("node");
+        assertThat(BrokerNetworkFactory.getBrokerName(standaloneConfiguration), is("rsb-amq-broker"));
+
+        when(configuration.getNodeName()).thenReturn("Node1.example.com-1a2b");
+        assertThat(BrokerNetworkFactory.getBrokerName(configuration), is("rsb-amq-broker-node1-example-com-1a2b"));
+    }
+
+    @Test
+    public void asynchronousJobForwardedToIdleBroker() throws Exception
+    {
+        sendToBusyBroker("r.jobs.test");
+
+        assertThat(receiveFromIdleBroker("r.jobs.test", RECEIVE_TIMEOUT), is(notNullValue()));
+    }
+
+    @Test
+    public void synchronousJobNotForwarded() throws Exception
+    {
+        sendToBusyBroker("r.jobs.test.sync");
+
+        assertThat(receiveFromIdleBroker("r.jobs.test.sync", 2000L), is(nullValue()));
+    }
+
+    private static BrokerService newBroker(final String brokerName)
+    {
+        final BrokerService broker = new BrokerService();
+        broker.setBrokerName(brokerName);
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setUseShutdownHook(false);
+        return broker;
+    }
+
+    private void sendToBusyBroker(final String queueName) throws Exception
+    {
+        final Session session = busyConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        session.createProducer(session.createQueue(queueName)).send(session.createTextMessage("job"));
+        session.close();
+    }
+
+    private Object receiveFromIdleBroker(final String queueName, final long timeout) throws Exception
+    {
+        final Session session = idleConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final MessageConsumer consumer = session.createConsumer(session.createQueue(queueName));
+
+        try
+        {
+            return consumer.receive(timeout);
+        }
+        finally
+        {
+            session.close();
+        }
+    }
+}
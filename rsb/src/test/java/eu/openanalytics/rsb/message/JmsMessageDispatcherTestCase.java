@@ -25,26 +25,40 @@
 package eu.openanalytics.rsb.message;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.matches;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.UnknownHostException;
 import java.util.UUID;
 
+import javax.jms.Message;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.jms.UncategorizedJmsException;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessagePostProcessor;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
+import eu.openanalytics.rsb.Constants;
 import eu.openanalytics.rsb.config.Configuration;
 import eu.openanalytics.rsb.message.AbstractJob;
 import eu.openanalytics.rsb.message.AbstractResult;
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
 import eu.openanalytics.rsb.message.JmsMessageDispatcher;
 import eu.openanalytics.rsb.message.JmsMessageDispatcher.WorkItemMessagePostProcessor;
 
@@ -59,17 +73,24 @@ public class JmsMessageDispatcherTestCase {
     private Configuration configuration;
     @Mock
     private JmsTemplate jmsTemplate;
+    @Mock
+    private JmsTemplate nonPersistentJmsTemplate;
+    @Mock
+    private SynchronousResultHandler synchronousResultHandler;
 
     @Before
     public void prepareTest() throws UnknownHostException {
         jmsDispatcher = new JmsMessageDispatcher();
         jmsDispatcher.setConfiguration(configuration);
         jmsDispatcher.setJmsTemplate(jmsTemplate);
+        jmsDispatcher.setNonPersistentJmsTemplate(nonPersistentJmsTemplate);
+        jmsDispatcher.setSynchronousResultHandler(synchronousResultHandler);
     }
 
     @Test
     public void dispatchJob() {
         final AbstractJob job = mock(AbstractJob.class);
+        when(job.isPersistent()).thenReturn(true);
         jmsDispatcher.dispatch(job);
         verify(jmsTemplate).convertAndSend(matches("r\\.jobs\\..*"), any(AbstractJob.class), any(WorkItemMessagePostProcessor.class));
     }
@@ -77,18 +98,99 @@ public class JmsMessageDispatcherTestCase {
     @Test
     public void dispatchResult() {
         final AbstractResult<?> result = mock(AbstractResult.class);
+        when(result.isPersistent()).thenReturn(true);
         jmsDispatcher.dispatch(result);
         verify(jmsTemplate).convertAndSend(matches("r\\.results\\..*"), any(AbstractResult.class), any(WorkItemMessagePostProcessor.class));
     }
 
     @Test
-    public void process() {
+    public void dispatchSynchronousResult() {
+        final AbstractResult<?> result = mock(AbstractResult.class);
+        when(result.getReplyNodeName()).thenReturn("node.example.com");
+        jmsDispatcher.dispatch(result);
+        verify(nonPersistentJmsTemplate).convertAndSend(eq("r.results.sync.node_example_com"), eq(result), any(WorkItemMessagePostProcessor.class));
+    }
+
+    @Test
+    public void dispatchNonPersistentJob() {
+        final AbstractJob job = mock(AbstractJob.class);
+        jmsDispatcher.dispatch(job);
+        verify(nonPersistentJmsTemplate).convertAndSend(matches("r\\.jobs\\..*"), any(AbstractJob.class), any(WorkItemMessagePostProcessor.class));
+        verify(jmsTemplate, never()).convertAndSend(anyString(), any(AbstractJob.class), any(WorkItemMessagePostProcessor.class));
+    }
+
+    @Test
+    public void dispatchClaimCheckedJob() {
+        final AbstractJob job = mockClaimCheckedJob("00000000-0000-0000-0000-000000000001", null);
+        jmsDispatcher.dispatch(job);
+        verify(job).destroy();
+    }
+
+    @Test
+    public void dispatchClaimCheckedJobFailure() {
+        final String claimCheckId = "00000000-0000-0000-0000-000000000002";
+        final WorkItemMessageConverter messageConverter = mock(WorkItemMessageConverter.class);
+        when(jmsTemplate.getMessageConverter()).thenReturn(messageConverter);
+        final AbstractJob job = mockClaimCheckedJob(claimCheckId, new UncategorizedJmsException("test"));
+
+        try {
+            jmsDispatcher.dispatch(job);
+            fail("an exception should have been raised");
+        } catch (final UncategorizedJmsException uje) {
+            // expected
+        }
+
+        verify(messageConverter).discardClaimCheck(claimCheckId);
+        verify(job, never()).destroy();
+    }
+
+    private AbstractJob mockClaimCheckedJob(final String claimCheckId, final RuntimeException sendFailure) {
         final AbstractJob job = mock(AbstractJob.class);
+        when(job.isPersistent()).thenReturn(true);
+        when(job.getSource()).thenReturn(Source.REST);
         when(job.getJobId()).thenReturn(UUID.randomUUID());
+
+        doAnswer(new Answer<Void>() {
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                final Message message = mock(Message.class);
+                when(message.getStringProperty(Constants.CLAIM_CHECK_ID_MESSAGE_HEADER)).thenReturn(claimCheckId);
+                ((MessagePostProcessor) invocation.getArguments()[2]).postProcessMessage(message);
+                if (sendFailure != null) {
+                    throw sendFailure;
+                }
+                return null;
+            }
+        }).when(jmsTemplate).convertAndSend(anyString(), eq(job), any(WorkItemMessagePostProcessor.class));
+
+        return job;
+    }
+
+    @Test
+    public void process() {
+        final UUID jobId = UUID.randomUUID();
+        final AbstractJob job = mock(AbstractJob.class);
+        when(job.getJobId()).thenReturn(jobId);
         final AbstractResult<?> result = mock(AbstractResult.class);
-        when(jmsTemplate.receiveSelectedAndConvert(matches("r\\.results\\..*"), anyString())).thenReturn(result);
+        final SettableListenableFuture<AbstractResult<?>> pendingResult = new SettableListenableFuture<AbstractResult<?>>();
+        pendingResult.set(result);
+        when(synchronousResultHandler.register(jobId)).thenReturn(pendingResult);
+        when(configuration.getNodeName()).thenReturn("node");
 
         assertEquals(jmsDispatcher.process(job), result);
-        verify(jmsTemplate).convertAndSend(matches("r\\.jobs\\..*"), any(AbstractResult.class), any(WorkItemMessagePostProcessor.class));
+        verify(job).setReplyNodeName("node");
+        verify(nonPersistentJmsTemplate).convertAndSend(matches("r\\.jobs\\..*"), any(AbstractResult.class), any(WorkItemMessagePostProcessor.class));
+        verify(synchronousResultHandler).unregister(jobId);
+    }
+
+    @Test
+    public void processTimeOut() {
+        final UUID jobId = UUID.randomUUID();
+        final AbstractJob job = mock(AbstractJob.class);
+        when(job.getJobId()).thenReturn(jobId);
+        when(configuration.getJobTimeOut()).thenReturn(10);
+        when(synchronousResultHandler.register(jobId)).thenReturn(new SettableListenableFuture<AbstractResult<?>>());
+
+        assertNull(jmsDispatcher.process(job));
+        verify(synchronousResultHandler).unregister(jobId);
     }
 }
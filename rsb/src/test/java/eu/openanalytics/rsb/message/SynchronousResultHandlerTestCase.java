@@ -0,0 +1,153 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.message;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.GregorianCalendar;
+import java.util.UUID;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class SynchronousResultHandlerTestCase
+{
+    private SynchronousResultHandler synchronousResultHandler;
+
+    @Before
+    public void prepareTest()
+    {
+        synchronousResultHandler = new SynchronousResultHandler();
+    }
+
+    @Test
+    public void handleResult() throws Exception
+    {
+        final UUID jobId = UUID.randomUUID();
+        final SettableListenableFuture<AbstractResult<?>> pendingResult = synchronousResultHandler.register(jobId);
+
+        final AbstractResult<?> result = mock(AbstractResult.class);
+        when(result.getJobId()).thenReturn(jobId);
+        synchronousResultHandler.handleResult(result);
+
+        assertThat(pendingResult.isDone(), is(true));
+        assertThat((Object) pendingResult.get(), is(sameInstance((Object) result)));
+        assertThat(synchronousResultHandler.getPendingResultsCount(), is(0));
+    }
+
+    @Test
+    public void handleResultWithoutWaitingCaller()
+    {
+        final UUID jobId = UUID.randomUUID();
+        final SettableListenableFuture<AbstractResult<?>> pendingResult = synchronousResultHandler.register(jobId);
+        synchronousResultHandler.unregister(jobId);
+
+        final AbstractResult<?> result = mock(AbstractResult.class);
+        when(result.getJobId()).thenReturn(jobId);
+        synchronousResultHandler.handleResult(result);
+
+        assertThat(pendingResult.isDone(), is(false));
+    }
+
+    @Test
+    public void resultsRoutedToTheNodeWaitingForThem() throws Exception
+    {
+        final BrokerService broker = new BrokerService();
+        broker.setBrokerName("rsb-sync-test-broker");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setUseShutdownHook(false);
+        broker.start();
+
+        try
+        {
+            final JmsTemplate jmsTemplate = new JmsTemplate(new ActiveMQConnectionFactory(
+                "vm://rsb-sync-test-broker?create=false"));
+            jmsTemplate.setMessageConverter(new WorkItemMessageConverter());
+            jmsTemplate.setReceiveTimeout(2000L);
+
+            final Configuration nodeAConfiguration = mockNodeConfiguration("node-a.example.com");
+            final Configuration nodeBConfiguration = mockNodeConfiguration("node-b.example.com");
+            final SynchronousResultHandler nodeAHandler = new SynchronousResultHandler();
+            final SynchronousResultHandler nodeBHandler = new SynchronousResultHandler();
+
+            final XmlFunctionCallJob nodeAJob = newSynchronousJob("node-a.example.com");
+            final XmlFunctionCallJob nodeBJob = newSynchronousJob("node-b.example.com");
+            final SettableListenableFuture<AbstractResult<?>> nodeAPendingResult = nodeAHandler.register(nodeAJob.getJobId());
+            final SettableListenableFuture<AbstractResult<?>> nodeBPendingResult = nodeBHandler.register(nodeBJob.getJobId());
+
+            // the job processor of any node dispatches the results
+            final JmsMessageDispatcher jmsDispatcher = new JmsMessageDispatcher();
+            jmsDispatcher.setConfiguration(nodeAConfiguration);
+            jmsDispatcher.setJmsTemplate(jmsTemplate);
+            jmsDispatcher.setNonPersistentJmsTemplate(jmsTemplate);
+            jmsDispatcher.dispatch(nodeBJob.buildSuccessResult("<b/>"));
+            jmsDispatcher.dispatch(nodeAJob.buildSuccessResult("<a/>"));
+
+            // each node listener only sees the results of its own callers
+            final String nodeAQueueName = JmsMessageDispatcher.getSynchronousResultQueueName(nodeAConfiguration);
+            nodeAHandler.handleResult((AbstractResult<?>) jmsTemplate.receiveAndConvert(nodeAQueueName));
+            assertThat(jmsTemplate.receiveAndConvert(nodeAQueueName), is(nullValue()));
+            nodeBHandler.handleResult((AbstractResult<?>) jmsTemplate.receiveAndConvert(JmsMessageDispatcher.getSynchronousResultQueueName(nodeBConfiguration)));
+
+            assertThat(nodeAPendingResult.get().getJobId(), is(nodeAJob.getJobId()));
+            assertThat(nodeBPendingResult.get().getJobId(), is(nodeBJob.getJobId()));
+        }
+        finally
+        {
+            broker.stop();
+        }
+    }
+
+    private static Configuration mockNodeConfiguration(final String nodeName)
+    {
+        final Configuration configuration = mock(Configuration.class);
+        when(configuration.getNodeName()).thenReturn(nodeName);
+        return configuration;
+    }
+
+    private static XmlFunctionCallJob newSynchronousJob(final String replyNodeName)
+    {
+        final XmlFunctionCallJob job = new XmlFunctionCallJob(Source.SOAP, "app", "user", UUID.randomUUID(),
+            (GregorianCalendar) GregorianCalendar.getInstance(), "<arg/>");
+        job.setReplyNodeName(replyNodeName);
+        return job;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.message;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jms.support.converter.MessageConversionException;
+
+import eu.openanalytics.rsb.Constants;
+import eu.openanalytics.rsb.Util;
+import eu.openanalytics.rsb.data.FileClaimCheckStore;
+import eu.openanalytics.rsb.message.AbstractWorkItem.Source;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+public class WorkItemMessageConverterTestCase
+{
+    private GregorianCalendar submissionTime;
+
+    @Before
+    public void prepareTest()
+    {
+        submissionTime = new GregorianCalendar(TimeZone.getTimeZone("Europe/Brussels"));
+    }
+
+    @Test
+    public void encodeDecodeJob()
+    {
+        final UUID jobId = UUID.randomUUID();
+        // larger than what DataOutput.writeUTF supports
+        final String argument = StringUtils.repeat("<arg>é</arg>", 10000);
+        final XmlFunctionCallJob job = new XmlFunctionCallJob(Source.SOAP, "app", "user", jobId,
+            submissionTime, argument);
+        job.setReplyNodeName("node-a");
+
+        final AbstractWorkItem decoded = WorkItemMessageConverter.decode(WorkItemMessageConverter.encode(
+            (byte) 1, job));
+
+        assertThat(decoded, is(instanceOf(XmlFunctionCallJob.class)));
+        final XmlFunctionCallJob decodedJob = (XmlFunctionCallJob) decoded;
+        assertThat(decodedJob.getSource(), is(Source.SOAP));
+        assertThat(decodedJob.getApplicationName(), is("app"));
+        assertThat(decodedJob.getUserName(), is("user"));
+        assertThat(decodedJob.getJobId(), is(jobId));
+        assertThat(decodedJob.getSubmissionTime().getTimeInMillis(), is(submissionTime.getTimeInMillis()));
+        assertThat(decodedJob.getSubmissionTime().getTimeZone().getID(), is("Europe/Brussels"));
+        assertThat(decodedJob.getArgument(), is(argument));
+        assertThat(decodedJob.getReplyNodeName(), is("node-a"));
+    }
+
+    @Test
+    public void encodeDecodeResult()
+    {
+        final JsonFunctionCallResult result = new JsonFunctionCallResult(Source.REST, "app", null,
+            UUID.randomUUID(), submissionTime, false, "{\"error\":true}");
+
+        final AbstractWorkItem decoded = WorkItemMessageConverter.decode(WorkItemMessageConverter.encode(
+            (byte) 4, result));
+
+        assertThat(decoded, is(instanceOf(JsonFunctionCallResult.class)));
+        final JsonFunctionCallResult decodedResult = (JsonFunctionCallResult) decoded;
+        assertThat(decodedResult.getUserName(), is(nullValue()));
+        assertThat(decodedResult.getReplyNodeName(), is(nullValue()));
+        assertThat(decodedResult.isSuccess(), is(false));
+        assertThat(decodedResult.getPayload(), is("{\"error\":true}"));
+    }
+
+    @Test(expected = MessageConversionException.class)
+    public void decodeUnsupportedVersion()
+    {
+        WorkItemMessageConverter.decode(new byte[]{(byte) (WorkItemMessageConverter.FORMAT_VERSION + 1), 1});
+    }
+
+    @Test
+    public void toMessageFallsBackToSerialization() throws Exception
+    {
+        final MultiFilesJob job = mock(MultiFilesJob.class);
+        final Session session = mock(Session.class);
+        final ObjectMessage objectMessage = mock(ObjectMessage.class);
+        when(session.createObjectMessage(job)).thenReturn(objectMessage);
+
+        assertThat(new WorkItemMessageConverter().toMessage(job, session), is((Object) objectMessage));
+        verify(session).createObjectMessage(job);
+    }
+
+    @Test
+    public void claimCheckMultiFilesJob() throws Exception
+    {
+        final File claimCheckDirectory = Util.createTemporaryDirectory("claim-check");
+        final WorkItemMessageConverter converter = new WorkItemMessageConverter();
+        converter.setClaimCheckStore(new FileClaimCheckStore(claimCheckDirectory));
+
+        final MultiFilesJob job = new MultiFilesJob(Source.REST, "app", "user", UUID.randomUUID(),
+            submissionTime, new HashMap<String, Serializable>());
+        job.addFile("script.R", new ByteArrayInputStream("1+1".getBytes(StandardCharsets.UTF_8)));
+        final File submittingNodeDirectory = job.getTemporaryDirectory();
+
+        final Session session = mock(Session.class);
+        final ObjectMessage objectMessage = mock(ObjectMessage.class);
+        when(session.createObjectMessage(job)).thenReturn(objectMessage);
+
+        converter.toMessage(job, session);
+
+        final ArgumentCaptor<String> claimCheckIdCaptor = ArgumentCaptor.forClass(String.class);
+        verify(objectMessage).setStringProperty(eq(Constants.CLAIM_CHECK_ID_MESSAGE_HEADER),
+            claimCheckIdCaptor.capture());
+        // the local files are only destroyed once the message has been sent
+        assertThat(submittingNodeDirectory.exists(), is(true));
+        job.destroy();
+
+        when(objectMessage.getObject()).thenReturn(job);
+        when(objectMessage.getStringProperty(Constants.CLAIM_CHECK_ID_MESSAGE_HEADER)).thenReturn(
+            claimCheckIdCaptor.getValue());
+
+        final MultiFilesJob checkedOutJob = (MultiFilesJob) converter.fromMessage(objectMessage);
+        assertThat(checkedOutJob.getRScriptFile().isFile(), is(true));
+        assertThat(checkedOutJob.getFiles().length, is(1));
+
+        checkedOutJob.destroy();
+
+        // processed messages can be redelivered if their transaction rolls back
+        final MultiFilesJob redeliveredJob = (MultiFilesJob) converter.fromMessage(objectMessage);
+        assertThat(redeliveredJob.getRScriptFile().isFile(), is(true));
+        redeliveredJob.destroy();
+        FileUtils.deleteQuietly(claimCheckDirectory);
+    }
+}
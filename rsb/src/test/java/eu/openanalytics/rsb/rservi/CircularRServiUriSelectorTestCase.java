@@ -53,6 +53,8 @@ public class CircularRServiUriSelectorTestCase
 
     @Mock
     private Configuration configuration;
+    @Mock
+    private RServiCircuitBreaker rServiCircuitBreaker;
 
     private CircularRServiUriSelector selector;
     private URI defaultPoolUri;
@@ -62,6 +64,7 @@ public class CircularRServiUriSelectorTestCase
     {
         selector = new CircularRServiUriSelector();
         selector.setConfiguration(configuration);
+        selector.setRServiCircuitBreaker(rServiCircuitBreaker);
 
         defaultPoolUri = new URI("fake://default");
         when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
@@ -109,4 +112,20 @@ public class CircularRServiUriSelectorTestCase
         assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri1));
         assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
     }
+
+    @Test
+    public void getUriForApplicationSkipsOpenCircuit() throws URISyntaxException
+    {
+        final URI appSpecificPoolUri1 = new URI("fake://pool1");
+        final URI appSpecificPoolUri2 = new URI("fake://pool2");
+        when(configuration.getApplicationSpecificRserviPoolUris()).thenReturn(
+            Collections.singletonMap(TEST_APPLICATION_NAME,
+                (Set<URI>) new TreeSet<URI>(Arrays.asList(appSpecificPoolUri1, appSpecificPoolUri2))));
+        when(rServiCircuitBreaker.isOpen(appSpecificPoolUri1)).thenReturn(true);
+
+        selector.initialize();
+
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import eu.openanalytics.rsb.config.Configuration;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class LeastOutstandingRServiUriSelectorTestCase
+{
+    private static final String TEST_APPLICATION_NAME = "appname";
+
+    @Mock
+    private Configuration configuration;
+    @Mock
+    private RServiCircuitBreaker rServiCircuitBreaker;
+
+    private LeastOutstandingRServiUriSelector selector;
+    private URI defaultPoolUri;
+    private URI appSpecificPoolUri1;
+    private URI appSpecificPoolUri2;
+
+    @Before
+    public void setUp() throws URISyntaxException
+    {
+        selector = new LeastOutstandingRServiUriSelector();
+        selector.setConfiguration(configuration);
+        selector.setRServiCircuitBreaker(rServiCircuitBreaker);
+
+        defaultPoolUri = new URI("fake://default");
+        when(configuration.getDefaultRserviPoolUri()).thenReturn(defaultPoolUri);
+
+        appSpecificPoolUri1 = new URI("fake://pool1");
+        appSpecificPoolUri2 = new URI("fake://pool2");
+    }
+
+    @Test
+    public void getUriForApplicationDefaultOnly()
+    {
+        when(configuration.getApplicationSpecificRserviPoolUris()).thenReturn(null);
+        selector.initialize();
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(defaultPoolUri));
+    }
+
+    @Test
+    public void getUriForApplicationFewestJobsInFlight()
+    {
+        configureSeveralSpecificUris();
+
+        selector.jobStarted(appSpecificPoolUri1);
+
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
+
+        selector.jobStarted(appSpecificPoolUri2);
+        selector.jobStarted(appSpecificPoolUri2);
+
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri1));
+    }
+
+    @Test
+    public void getUriForApplicationWeightedByLatency()
+    {
+        configureSeveralSpecificUris();
+
+        selector.jobStarted(appSpecificPoolUri1);
+        selector.jobCompleted(appSpecificPoolUri1, 100L, true);
+        selector.jobStarted(appSpecificPoolUri2);
+        selector.jobCompleted(appSpecificPoolUri2, 1000L, true);
+
+        // one job in flight on a fast pool beats an idle slow pool
+        selector.jobStarted(appSpecificPoolUri1);
+
+        assertThat(selector.getUriLoad(appSpecificPoolUri1).getJobsInFlight(), is(1));
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri1));
+    }
+
+    @Test
+    public void getUriForApplicationPenalizesFailedJobs()
+    {
+        configureSeveralSpecificUris();
+
+        selector.jobStarted(appSpecificPoolUri1);
+        selector.jobCompleted(appSpecificPoolUri1, 1000L, true);
+
+        // a pool failing at once must not attract the jobs of the pools processing them
+        selector.jobStarted(appSpecificPoolUri2);
+        selector.jobCompleted(appSpecificPoolUri2, 5L, false);
+
+        assertThat(selector.getUriLoad(appSpecificPoolUri2).getJobsInFlight(), is(0));
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri1));
+    }
+
+    @Test
+    public void getUriForApplicationSkipsOpenCircuit()
+    {
+        configureSeveralSpecificUris();
+
+        selector.jobStarted(appSpecificPoolUri2);
+        when(rServiCircuitBreaker.isOpen(appSpecificPoolUri1)).thenReturn(true);
+
+        assertThat(selector.getUriForApplication(TEST_APPLICATION_NAME), is(appSpecificPoolUri2));
+    }
+
+    private void configureSeveralSpecificUris()
+    {
+        when(configuration.getApplicationSpecificRserviPoolUris()).thenReturn(
+            Collections.singletonMap(TEST_APPLICATION_NAME,
+                (Set<URI>) new TreeSet<URI>(Arrays.asList(appSpecificPoolUri1, appSpecificPoolUri2))));
+
+        selector.initialize();
+    }
+}
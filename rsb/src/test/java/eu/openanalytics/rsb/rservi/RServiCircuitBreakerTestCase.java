@@ -0,0 +1,180 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.statet.rj.data.impl.RInteger32Store;
+import org.eclipse.statet.rj.data.impl.RVectorImpl;
+import org.eclipse.statet.rj.servi.RServi;
+import org.eclipse.statet.rj.services.FunctionCall;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.rservi.RServiInstanceProvider.PoolingStrategy;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RServiCircuitBreakerTestCase
+{
+    @Mock
+    private Configuration configuration;
+    @Mock
+    private RServiInstanceProvider rServiInstanceProvider;
+
+    private RServiCircuitBreaker circuitBreaker;
+    private URI poolUri;
+
+    @Before
+    public void setUp() throws URISyntaxException
+    {
+        circuitBreaker = new RServiCircuitBreaker();
+        circuitBreaker.setConfiguration(configuration);
+        circuitBreaker.setRServiInstanceProvider(rServiInstanceProvider);
+
+        poolUri = new URI("fake://pool");
+    }
+
+    @After
+    public void tearDown()
+    {
+        circuitBreaker.destroy();
+    }
+
+    @Test
+    public void disabled()
+    {
+        circuitBreaker.recordFailure(poolUri);
+        circuitBreaker.recordFailure(poolUri);
+        circuitBreaker.recordHealthCheck(poolUri, false);
+
+        assertThat(circuitBreaker.isOpen(poolUri), is(false));
+    }
+
+    @Test
+    public void opensAfterFailedHealthCheck()
+    {
+        when(configuration.getCircuitBreakerFailureThreshold()).thenReturn(3);
+
+        circuitBreaker.recordHealthCheck(poolUri, false);
+        assertThat(circuitBreaker.isOpen(poolUri), is(true));
+
+        circuitBreaker.recordHealthCheck(poolUri, true);
+        assertThat(circuitBreaker.isOpen(poolUri), is(false));
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures()
+    {
+        when(configuration.getCircuitBreakerFailureThreshold()).thenReturn(2);
+
+        circuitBreaker.recordFailure(poolUri);
+        circuitBreaker.recordSuccess(poolUri);
+        circuitBreaker.recordFailure(poolUri);
+        assertThat(circuitBreaker.isOpen(poolUri), is(false));
+
+        circuitBreaker.recordFailure(poolUri);
+        assertThat(circuitBreaker.isOpen(poolUri), is(true));
+    }
+
+    @Test
+    public void closesAfterSuccessfulProbe() throws Exception
+    {
+        when(configuration.getCircuitBreakerFailureThreshold()).thenReturn(1);
+        when(rServiInstanceProvider.getRServiInstance(anyString(), anyString(), eq(PoolingStrategy.NEVER))).thenThrow(
+            new RuntimeException("simulated RServi provider issue"));
+
+        circuitBreaker.recordFailure(poolUri);
+        circuitBreaker.probeOpenUris();
+        circuitBreaker.getRunningProbe(poolUri).get();
+        assertThat(circuitBreaker.isOpen(poolUri), is(true));
+
+        final RServi rServi = mock(RServi.class);
+        final FunctionCall functionCall = mock(FunctionCall.class);
+        when(rServi.createFunctionCall("sum")).thenReturn(functionCall);
+        when(functionCall.evalData(null)).thenReturn(new RVectorImpl<>(new RInteger32Store(new int[]{3})));
+        doReturn(rServi).when(rServiInstanceProvider).getRServiInstance(anyString(), anyString(),
+            eq(PoolingStrategy.NEVER));
+
+        circuitBreaker.probeOpenUris();
+        circuitBreaker.getRunningProbe(poolUri).get();
+        assertThat(circuitBreaker.isOpen(poolUri), is(false));
+    }
+
+    @Test
+    public void hungProbeNotRepeated() throws Exception
+    {
+        when(configuration.getCircuitBreakerFailureThreshold()).thenReturn(1);
+        final CountDownLatch hungRServi = new CountDownLatch(1);
+        when(rServiInstanceProvider.getRServiInstance(anyString(), anyString(), eq(PoolingStrategy.NEVER))).thenAnswer(
+            new Answer<RServi>()
+            {
+                @Override
+                public RServi answer(final InvocationOnMock invocation) throws Exception
+                {
+                    hungRServi.await();
+                    throw new RuntimeException("simulated RServi provider issue");
+                }
+            });
+
+        try
+        {
+            circuitBreaker.recordFailure(poolUri);
+            circuitBreaker.probeOpenUris();
+            circuitBreaker.probeOpenUris();
+            assertThat(circuitBreaker.isOpen(poolUri), is(true));
+
+            // the probe runs in the background and never holds up the scheduler thread
+            verify(rServiInstanceProvider, timeout(1000L).times(1)).getRServiInstance(anyString(), anyString(),
+                eq(PoolingStrategy.NEVER));
+            assertThat(circuitBreaker.getRunningProbe(poolUri).isDone(), is(false));
+        }
+        finally
+        {
+            hungRServi.countDown();
+        }
+    }
+}
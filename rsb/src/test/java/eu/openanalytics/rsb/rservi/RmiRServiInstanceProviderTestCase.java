@@ -0,0 +1,174 @@
+/*
+ *   R Service Bus
+ *   
+ *   Copyright (c) Copyright of Open Analytics NV, 2010-2020
+ *
+ *   ===========================================================================
+ *
+ *   This file is part of R Service Bus.
+ *
+ *   R Service Bus is free software: you can redistribute it and/or modify
+ *   it under the terms of the Apache License as published by
+ *   The Apache Software Foundation, either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   Apache License for more details.
+ *
+ *   You should have received a copy of the Apache License
+ *   along with R Service Bus.  If not, see <http://www.apache.org/licenses/>.
+ *
+ */
+
+package eu.openanalytics.rsb.rservi;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.commons.pool2.KeyedObjectPool;
+import org.apache.commons.pool2.KeyedPooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.eclipse.statet.jcommons.status.ErrorStatus;
+import org.eclipse.statet.jcommons.status.ProgressMonitor;
+import org.eclipse.statet.jcommons.status.StatusException;
+import org.eclipse.statet.rj.data.RObject;
+import org.eclipse.statet.rj.data.RStore;
+import org.eclipse.statet.rj.data.impl.RInteger32Store;
+import org.eclipse.statet.rj.servi.RServi;
+import org.eclipse.statet.rj.services.FunctionCall;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.jmx.export.MBeanExportOperations;
+
+import eu.openanalytics.rsb.config.Configuration;
+import eu.openanalytics.rsb.config.Configuration.RServiClientPoolValidationStrategy;
+import eu.openanalytics.rsb.config.RServiPoolConfig;
+import eu.openanalytics.rsb.rservi.RmiRServiInstanceProvider.PooledRServiWrapper;
+import eu.openanalytics.rsb.rservi.RmiRServiInstanceProvider.RServiPoolKey;
+
+/**
+ * @author "Open Analytics &lt;rsb.development@openanalytics.eu&gt;"
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RmiRServiInstanceProviderTestCase
+{
+    private static final String TEST_ADDRESS = "rmi://127.0.0.1/rservi-pool";
+
+    @Mock
+    private Configuration configuration;
+    @Mock
+    private MBeanExportOperations mbeanExportOperations;
+    @Mock
+    private KeyedObjectPool<RServiPoolKey, PooledRServiWrapper> rServiPool;
+    @Mock
+    private RServi rServi;
+
+    private RmiRServiInstanceProvider rServiInstanceProvider;
+
+    @Before
+    public void prepareTest()
+    {
+        rServiInstanceProvider = new RmiRServiInstanceProvider();
+        rServiInstanceProvider.setConfiguration(configuration);
+        rServiInstanceProvider.setMbeanExportOperations(mbeanExportOperations);
+    }
+
+    @After
+    public void cleanupTest() throws Exception
+    {
+        rServiInstanceProvider.terminate();
+    }
+
+    @Test
+    public void failedWorkspaceResetInvalidatesInstance() throws Exception
+    {
+        final RServiPoolKey key = new RServiPoolKey(TEST_ADDRESS, "pooled-test", true);
+        final PooledRServiWrapper pooledRServi = new PooledRServiWrapper(rServiPool, key, rServi, false);
+        doThrow(new StatusException(new ErrorStatus("rsb", "simulated reset failure"))).when(rServi)
+            .evalVoid(anyString(), any(ProgressMonitor.class));
+
+        pooledRServi.markWorkspaceUsed();
+        pooledRServi.close();
+
+        verify(rServiPool).invalidateObject(key, pooledRServi);
+        verify(rServiPool, never()).returnObject(key, pooledRServi);
+        assertThat(pooledRServi.hasError(), is(true));
+    }
+
+    @Test
+    public void successfulWorkspaceResetReturnsInstance() throws Exception
+    {
+        final RServiPoolKey key = new RServiPoolKey(TEST_ADDRESS, "pooled-test", true);
+        final PooledRServiWrapper pooledRServi = new PooledRServiWrapper(rServiPool, key, rServi, false);
+
+        pooledRServi.markWorkspaceUsed();
+        pooledRServi.close();
+
+        verify(rServiPool).returnObject(key, pooledRServi);
+        verify(rServiPool, never()).invalidateObject(key, pooledRServi);
+        assertThat(pooledRServi.isWorkspaceClean(), is(true));
+    }
+
+    @Test
+    public void backgroundValidationConfiguresPool()
+    {
+        final RServiPoolConfig config = initializeWithBackgroundValidation();
+
+        assertThat(config.getTestOnBorrow(), is(false));
+        assertThat(config.getTestOnReturn(), is(false));
+        assertThat(config.getTestWhileIdle(), is(true));
+        assertThat(config.getTimeBetweenEvictionRunsMillis() > 0L, is(true));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    @Test
+    public void backgroundValidationValidatesIdleInstances() throws Exception
+    {
+        initializeWithBackgroundValidation();
+        final KeyedPooledObjectFactory<RServiPoolKey, PooledRServiWrapper> factory = ((GenericKeyedObjectPool<RServiPoolKey, PooledRServiWrapper>) rServiInstanceProvider.getRServiPool()).getFactory();
+
+        final RServiPoolKey key = new RServiPoolKey(TEST_ADDRESS, "pooled-test", false);
+        final PooledRServiWrapper pooledRServi = new PooledRServiWrapper(rServiPool, key, rServi, true);
+
+        final FunctionCall functionCall = mock(FunctionCall.class);
+        when(rServi.createFunctionCall("sum")).thenReturn(functionCall);
+        final RObject result = mock(RObject.class);
+        when(functionCall.evalData(null)).thenReturn(result);
+        when(result.getData()).thenReturn((RStore) new RInteger32Store(new int[]{3}));
+
+        assertThat(factory.validateObject(key, new DefaultPooledObject<PooledRServiWrapper>(pooledRServi)),
+            is(true));
+
+        // an idle instance whose R engine does not respond anymore is evicted
+        when(functionCall.evalData(null)).thenThrow(
+            new StatusException(new ErrorStatus("rsb", "simulated R failure")));
+
+        assertThat(factory.validateObject(key, new DefaultPooledObject<PooledRServiWrapper>(pooledRServi)),
+            is(false));
+    }
+
+    private RServiPoolConfig initializeWithBackgroundValidation()
+    {
+        final RServiPoolConfig config = new RServiPoolConfig();
+        when(configuration.getRServiClientPoolConfig()).thenReturn(config);
+        when(configuration.getRServiClientPoolValidationStrategy()).thenReturn(
+            RServiClientPoolValidationStrategy.BACKGROUND);
+
+        rServiInstanceProvider.initialize();
+        return config;
+    }
+}